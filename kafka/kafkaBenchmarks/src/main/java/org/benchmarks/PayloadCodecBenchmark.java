@@ -0,0 +1,51 @@
+package org.benchmarks;
+
+import org.kafkaShared.EmailPayload;
+import org.kafkaShared.EmailPayloadCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Producer-side encode and consumer-side decode of one record value, binary vs the old JSON format.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PayloadCodecBenchmark {
+
+    private EmailPayload payload;
+    private byte[] binary;
+    private byte[] json;
+
+    @Setup
+    public void setup() {
+        payload = new EmailPayload("user-12345@vip.com", "VIP Alert #12345",
+                "Please process immediately.", System.currentTimeMillis());
+        binary = EmailPayloadCodec.encode(payload);
+        json = EmailPayloadCodec.encodeJson(payload);
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return EmailPayloadCodec.encode(payload);
+    }
+
+    @Benchmark
+    public EmailPayload decodeBinary() {
+        return EmailPayloadCodec.decode(binary);
+    }
+
+    @Benchmark
+    public byte[] encodeJson() {
+        return EmailPayloadCodec.encodeJson(payload);
+    }
+
+    @Benchmark
+    public EmailPayload decodeJson() {
+        return EmailPayloadCodec.decodeJson(json);
+    }
+}
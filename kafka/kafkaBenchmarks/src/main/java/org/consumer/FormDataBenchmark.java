@@ -0,0 +1,49 @@
+package org.consumer;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The URL-encoding done once per message before every send: the old String-based
+ * EmailSender.buildFormData against MailRequestTemplate writing into one byte[].
+ * Lives in org.consumer because buildFormData and the sender's template are package-private.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FormDataBenchmark {
+
+    // Same shape as the producer's messages, plus a non-ASCII one that needs percent-encoding
+    @Param({"ascii", "unicode"})
+    public String content;
+
+    private String to;
+    private String subject;
+    private String body;
+
+    @Setup
+    public void setup() {
+        to = "user-12345@vip.com";
+        if (content.equals("ascii")) {
+            subject = "VIP Alert #12345";
+            body = "Please process immediately.";
+        } else {
+            subject = "VIP Uyarı #12345 – öncelikli";
+            body = "Lütfen hemen işleyin. Ödeme onayı bekleniyor.";
+        }
+    }
+
+    @Benchmark
+    public String buildFormData() {
+        return EmailSender.buildFormData(to, subject, body);
+    }
+
+    @Benchmark
+    public byte[] templateBody() {
+        return EmailSender.shards().all().get(0).template.formBody(to, subject, body);
+    }
+}
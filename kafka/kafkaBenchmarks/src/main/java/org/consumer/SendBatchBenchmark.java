@@ -0,0 +1,81 @@
+package org.consumer;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EmailSender.sendBatch end to end against an in-process HTTP stub that answers 200 like the WireMock mapping.
+ * Measures one whole batch per op, so compare ops across batch sizes per email, not per op.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SendBatchBenchmark {
+
+    private static final byte[] RESPONSE = "{\"message\": \"Queued\", \"id\": \"fake-123\"}".getBytes(StandardCharsets.UTF_8);
+
+    // HIGH and LOW batch limits from Main, plus a single send
+    @Param({"1", "50", "200"})
+    public int batchSize;
+
+    private HttpServer server;
+    private ExecutorService serverPool;
+    private List<EmailSender.EmailRequest> batch;
+    private AdaptiveConcurrencyLimiter limiter;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        serverPool = Executors.newFixedThreadPool(16);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.createContext("/v1/send-email", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, RESPONSE.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(RESPONSE);
+            }
+        });
+        server.setExecutor(serverPool);
+        server.start();
+
+        // Must be set before EmailSender is first touched, it reads the URL once
+        System.setProperty("consumer.mail.url", "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/send-email");
+
+        batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(new EmailSender.EmailRequest("user-" + i + "@vip.com", "VIP Alert #" + i,
+                    "Please process immediately.", System.currentTimeMillis(), "high-priority-mails", 0));
+        }
+        // Same settings as Main, so the limiter's own overhead is part of the number
+        limiter = new AdaptiveConcurrencyLimiter(100, 10, 800, 0.3, 250);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop(0);
+        serverPool.shutdownNow();
+    }
+
+    @Benchmark
+    public void sendBatch() {
+        EmailSender.sendBatch(batch);
+    }
+
+    @Benchmark
+    public void sendBatchWithLimiter() {
+        EmailSender.sendBatch(batch, limiter, AdaptiveConcurrencyLimiter.Priority.HIGH);
+    }
+}
@@ -0,0 +1,155 @@
+package org.consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AIMD limit on concurrent HTTP sends, shared by every consumer of both topics.
+ *
+ * The limit grows by one after a full window of fast, successful responses and is cut
+ * multiplicatively when a response is slower than the latency target or fails.
+ * A share of the limit is reserved for HIGH, so LOW can never take the last permits.
+ * Uses a ReentrantLock rather than synchronized/wait so waiting virtual threads do not pin their carrier.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+    public enum Priority { HIGH, LOW }
+
+    private static final double BACKOFF_RATIO = 0.75;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double highReservedShare;
+    private final long latencyTargetNanos;
+
+    private int limit;
+    private int inFlightHigh = 0;
+    private int inFlightLow = 0;
+    private int successesInWindow = 0;
+    private long lastDecreaseNanos = 0;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitFreed = lock.newCondition();
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit,
+                                      double highReservedShare, long latencyTargetMs) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.highReservedShare = highReservedShare;
+        this.latencyTargetNanos = TimeUnit.MILLISECONDS.toNanos(latencyTargetMs);
+    }
+
+    /** Blocks until a permit for this priority is free. */
+    public void acquire(Priority priority) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (available(priority) <= 0) permitFreed.await();
+            if (priority == Priority.HIGH) inFlightHigh++; else inFlightLow++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns the permit and feeds the observed latency back into the limit. */
+    public void release(Priority priority, long latencyNanos, boolean success) {
+        lock.lock();
+        try {
+            if (priority == Priority.HIGH) inFlightHigh--; else inFlightLow--;
+
+            long now = System.nanoTime();
+            if (!success || latencyNanos > latencyTargetNanos) {
+                // At most one cut per target-latency window, otherwise one slow burst collapses the limit
+                if (now - lastDecreaseNanos > latencyTargetNanos) {
+                    int previous = limit;
+                    limit = Math.max(minLimit, (int) (limit * BACKOFF_RATIO));
+                    lastDecreaseNanos = now;
+                    successesInWindow = 0;
+                    logger.debug("Limit {} -> {} (success: {}, latency: {}ms)",
+                            previous, limit, success, TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+                }
+            } else if ((inFlightHigh + inFlightLow) * 2 >= limit && ++successesInWindow >= limit) {
+                // Only grow while we actually use the limit
+                limit = Math.min(maxLimit, limit + 1);
+                successesInWindow = 0;
+            }
+            permitFreed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns the permit without a latency sample, for a send that never reached the provider. */
+    public void release(Priority priority) {
+        lock.lock();
+        try {
+            if (priority == Priority.HIGH) inFlightHigh--; else inFlightLow--;
+            permitFreed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** True when a new send of this priority would have to wait; consumers pause their partitions then. */
+    public boolean isSaturated(Priority priority) {
+        lock.lock();
+        try {
+            return available(priority) <= 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlightHigh + inFlightLow;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight(Priority priority) {
+        lock.lock();
+        try {
+            return priority == Priority.HIGH ? inFlightHigh : inFlightLow;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            return "limit=" + limit + " inFlight=" + (inFlightHigh + inFlightLow) + " (high=" + inFlightHigh + ", low=" + inFlightLow + ")";
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // HIGH may use the whole limit, LOW only what is left after the HIGH reservation
+    private int available(Priority priority) {
+        int used = inFlightHigh + inFlightLow;
+        if (priority == Priority.HIGH) return limit - used;
+
+        int reservedForHigh = (int) Math.ceil(limit * highReservedShare);
+        int lowCap = limit - reservedForHigh;
+        return Math.min(lowCap - inFlightLow, limit - used);
+    }
+}
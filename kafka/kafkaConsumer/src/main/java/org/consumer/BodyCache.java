@@ -0,0 +1,69 @@
+package org.consumer;
+
+import org.kafkaShared.BodyStore;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Resolves claim-check references to bodies, keeping the most recently used ones in memory.
+ *
+ * Keyed by content hash, so every email of a campaign shares one cached body however many
+ * references point at it. Bounded by the UTF-16 size of the bodies, least recently used go first.
+ * A miss reads the store outside the lock; two threads missing the same body both read it, which
+ * is cheaper than making every other lookup wait.
+ */
+class BodyCache {
+
+    private final BodyStore store;
+    private final long maxChars;
+    private final LinkedHashMap<String, String> bodies = new LinkedHashMap<>(1024, 0.75f, true);
+    private long chars; // under the lock
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    BodyCache(BodyStore store, long maxBytes) {
+        this.store = store;
+        this.maxChars = maxBytes / 2;
+    }
+
+    String resolve(String ref) {
+        String hash = BodyStore.hashOf(ref);
+        synchronized (this) {
+            String body = bodies.get(hash);
+            if (body != null) {
+                hits.increment();
+                return body;
+            }
+        }
+        misses.increment();
+        String body = store.get(ref);
+        if (body.length() <= maxChars) put(hash, body);
+        return body;
+    }
+
+    private synchronized void put(String hash, String body) {
+        String previous = bodies.put(hash, body);
+        chars += body.length() - (previous != null ? previous.length() : 0);
+        Iterator<Map.Entry<String, String>> eldest = bodies.entrySet().iterator();
+        while (chars > maxChars && eldest.hasNext()) {
+            chars -= eldest.next().getValue().length();
+            eldest.remove();
+        }
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    synchronized long cachedBytes() {
+        return chars * 2;
+    }
+}
@@ -0,0 +1,163 @@
+package org.consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-provider breaker over the last windowSize calls. Trips OPEN when, after at least minCalls,
+ * the share of failed calls or of calls slower than slowCallMs reaches its threshold. While OPEN
+ * sends fail fast (straight to the retry topic) instead of waiting for a sick provider's timeout.
+ * After openMs it lets halfOpenProbes calls through: all fine closes it again, any failure re-opens.
+ * Probes still unanswered openMs after it went HALF_OPEN re-open it too, so a lost probe can't
+ * keep it half-open for good.
+ *
+ * allowRequest() returns an Admission that the caller hands back to record(), or to release() when it
+ * never called the provider. Only the probes of the current HALF_OPEN round decide it: late answers of
+ * calls admitted while CLOSED, or of an earlier round's probes, can neither close it nor free a probe.
+ *
+ * allowRequest() on a CLOSED breaker is one volatile read; outcomes are recorded under a lock,
+ * which is noise next to the HTTP call they belong to.
+ */
+public class CircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    public record Settings(int windowSize, int minCalls, double failureRateThreshold,
+                           long slowCallMs, double slowCallRateThreshold, long openMs, int halfOpenProbes) { }
+
+    /** What allowRequest() granted. round identifies the HALF_OPEN round a probe belongs to. */
+    public record Admission(boolean allowed, boolean probe, int round) { }
+
+    private static final Admission REJECTED = new Admission(false, false, 0);
+    private static final Admission CALL = new Admission(true, false, 0);
+
+    private static final byte OK = 0, FAILED = 1, SLOW = 2;
+
+    private final String name;
+    private final Settings settings;
+    private final long slowCallNanos;
+
+    // Ring of the last outcomes, only touched under the lock
+    private final byte[] window;
+    private int next, calls, failures, slowCalls;
+
+    private volatile State state = State.CLOSED;
+    private volatile long openedAtMs;
+    private long halfOpenAtMs;
+    private int round; // HALF_OPEN rounds so far
+    private int probesIssued, probesSucceeded;
+
+    /** settings == null: never trips. */
+    public CircuitBreaker(String name, Settings settings) {
+        this.name = name;
+        this.settings = settings;
+        this.slowCallNanos = settings != null ? TimeUnit.MILLISECONDS.toNanos(settings.slowCallMs()) : Long.MAX_VALUE;
+        this.window = new byte[settings != null ? Math.max(1, settings.windowSize()) : 1];
+    }
+
+    /** Not allowed while OPEN: the caller should not contact the provider. HALF_OPEN admits probes only. */
+    public Admission allowRequest() {
+        if (state == State.CLOSED) return CALL;
+        synchronized (this) {
+            if (state == State.OPEN) {
+                if (System.currentTimeMillis() - openedAtMs < settings.openMs()) return REJECTED;
+                transition(State.HALF_OPEN, "open for " + settings.openMs() + "ms");
+            }
+            if (state == State.HALF_OPEN) {
+                if (probesIssued >= settings.halfOpenProbes()) {
+                    if (System.currentTimeMillis() - halfOpenAtMs >= settings.openMs()) {
+                        transition(State.OPEN, (probesIssued - probesSucceeded) + " probes unanswered for "
+                                + settings.openMs() + "ms");
+                    }
+                    return REJECTED;
+                }
+                probesIssued++;
+                return new Admission(true, true, round);
+            }
+            return CALL; // closed meanwhile
+        }
+    }
+
+    /** An admitted call that did not reach the provider: frees its probe slot, if it holds one. */
+    public synchronized void release(Admission admission) {
+        if (currentProbe(admission)) probesIssued--;
+    }
+
+    /** OPEN and not yet due for probing; consumers pause their partitions meanwhile. */
+    public boolean isOpen() {
+        return state == State.OPEN && System.currentTimeMillis() - openedAtMs < settings.openMs();
+    }
+
+    public State state() {
+        return state;
+    }
+
+    /** The outcome of a call admitted by allowRequest(). */
+    public void record(Admission admission, boolean success, long latencyNanos) {
+        if (settings == null) return;
+        byte outcome = !success ? FAILED : latencyNanos >= slowCallNanos ? SLOW : OK;
+
+        synchronized (this) {
+            switch (state) {
+                case HALF_OPEN -> {
+                    if (!currentProbe(admission)) return; // answer to a call from before this round
+                    if (outcome != OK) {
+                        transition(State.OPEN, "probe " + (outcome == FAILED ? "failed" : "slow"));
+                    } else if (++probesSucceeded >= settings.halfOpenProbes()) {
+                        transition(State.CLOSED, probesSucceeded + " probes fine");
+                    }
+                }
+                case CLOSED -> {
+                    add(outcome);
+                    if (calls < settings.minCalls()) return;
+                    double failureRate = (double) failures / calls;
+                    double slowRate = (double) slowCalls / calls;
+                    if (failureRate >= settings.failureRateThreshold()) {
+                        transition(State.OPEN, String.format("failure rate %.0f%% over %d calls", failureRate * 100, calls));
+                    } else if (slowRate >= settings.slowCallRateThreshold()) {
+                        transition(State.OPEN, String.format("%.0f%% of %d calls slower than %dms",
+                                slowRate * 100, calls, settings.slowCallMs()));
+                    }
+                }
+                case OPEN -> { } // late answers of calls started before it tripped
+            }
+        }
+    }
+
+    private boolean currentProbe(Admission admission) {
+        return admission.probe() && state == State.HALF_OPEN && admission.round() == round;
+    }
+
+    private void add(byte outcome) {
+        if (calls == window.length) {
+            byte evicted = window[next];
+            if (evicted == FAILED) failures--;
+            else if (evicted == SLOW) slowCalls--;
+        } else {
+            calls++;
+        }
+        window[next] = outcome;
+        next = (next + 1) % window.length;
+        if (outcome == FAILED) failures++;
+        else if (outcome == SLOW) slowCalls++;
+    }
+
+    private void transition(State to, String reason) {
+        logger.warn("Circuit {}: {} -> {} ({})", name, state, to, reason);
+        state = to;
+        if (to == State.OPEN) openedAtMs = System.currentTimeMillis();
+        if (to == State.HALF_OPEN) {
+            halfOpenAtMs = System.currentTimeMillis();
+            round++;
+            probesIssued = 0;
+            probesSucceeded = 0;
+        }
+        if (to == State.CLOSED) {
+            next = calls = failures = slowCalls = 0;
+        }
+    }
+}
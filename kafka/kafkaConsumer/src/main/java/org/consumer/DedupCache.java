@@ -0,0 +1,92 @@
+package org.consumer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ids of recently delivered emails, so a replayed record (crash or rebalance before the commit)
+ * is not sent twice.
+ *
+ * Time-windowed and bounded: ids live in GENERATIONS maps, new ids go into the newest one, and
+ * once it is older than window/GENERATIONS or holds its share of maxEntries the oldest map is
+ * dropped as a whole. An id is remembered for at least (GENERATIONS-1)/GENERATIONS of the window
+ * and, once writes continue, not much longer than the window.
+ * Lookups are lock-free; only the rotation is synchronized.
+ */
+public class DedupCache {
+
+    private static final int GENERATIONS = 4;
+
+    private final long generationMs;
+    private final int maxPerGeneration;
+    private volatile Map<String, Boolean>[] generations;
+    private volatile long generationStartMs;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public DedupCache(long windowMs, int maxEntries) {
+        this.generationMs = Math.max(1, windowMs / GENERATIONS);
+        this.maxPerGeneration = Math.max(1, maxEntries / GENERATIONS);
+        this.generations = new Map[GENERATIONS];
+        for (int i = 0; i < GENERATIONS; i++) generations[i] = new ConcurrentHashMap<>();
+        this.generationStartMs = System.currentTimeMillis();
+    }
+
+    /** True when this id was delivered within the window. Counts a hit or a miss. */
+    public boolean isDuplicate(String messageId) {
+        if (messageId == null) return false;
+        for (Map<String, Boolean> generation : generations) {
+            if (generation.containsKey(messageId)) {
+                hits.increment();
+                return true;
+            }
+        }
+        misses.increment();
+        return false;
+    }
+
+    /** Call only after the provider accepted the email, a failed send must stay retryable. */
+    public void markDelivered(String messageId) {
+        if (messageId == null) return;
+        Map<String, Boolean> newest = generations[0];
+        if (System.currentTimeMillis() - generationStartMs >= generationMs || newest.size() >= maxPerGeneration) {
+            newest = rotate();
+        }
+        newest.put(messageId, Boolean.TRUE);
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized Map<String, Boolean> rotate() {
+        Map<String, Boolean>[] current = generations;
+        // Another thread may have rotated while we waited for the lock
+        if (System.currentTimeMillis() - generationStartMs < generationMs && current[0].size() < maxPerGeneration) {
+            return current[0];
+        }
+        // After a quiet spell several generations may have expired at once
+        long now = System.currentTimeMillis();
+        int steps = (int) Math.min(GENERATIONS, Math.max(1, (now - generationStartMs) / generationMs));
+        Map<String, Boolean>[] next = new Map[GENERATIONS];
+        for (int i = 0; i < steps; i++) next[i] = new ConcurrentHashMap<>();
+        System.arraycopy(current, 0, next, steps, GENERATIONS - steps);
+        generationStartMs = now;
+        generations = next;
+        return next[0];
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Map<String, Boolean> generation : generations) size += generation.size();
+        return size;
+    }
+}
@@ -0,0 +1,144 @@
+package org.consumer;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process metrics per (topic, consumer), replacing "Created: | Sent:" log scraping.
+ *
+ * The hot path only touches HdrHistogram Recorders, LongAdders and an AtomicInteger, which are
+ * wait-free and do not allocate. MetricsExporter swaps out the interval histograms and writes CSVs.
+ */
+public final class EmailMetrics {
+
+    public static final class Stream {
+        public final String topic;
+        public final int consumer;
+
+        // Interval recorders, values in ms except providerMicros
+        final Recorder lagMs = new Recorder(3);
+        final Recorder providerMicros = new Recorder(3);
+        final Recorder queueWaitMs = new Recorder(3);
+        final Recorder batchSize = new Recorder(3);
+        final LongAdder sent = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final LongAdder dedupHits = new LongAdder();
+        final LongAdder dedupMisses = new LongAdder();
+        final LongAdder retried = new LongAdder();
+        final LongAdder deadLettered = new LongAdder();
+        final LongAdder circuitRejected = new LongAdder();
+        final LongAdder digested = new LongAdder();
+
+        // Last interval histograms, handed back to their recorder for reuse (exporter thread only)
+        Histogram lagInterval, providerInterval, queueWaitInterval, batchInterval;
+
+        // Whole-run lag, only touched by the exporter thread
+        final Histogram totalLagMs = new Histogram(3);
+        long totalSent;
+        long totalErrors;
+
+        Stream(String topic, int consumer) {
+            this.topic = topic;
+            this.consumer = consumer;
+        }
+
+        public void recordBatch(int size) {
+            batchSize.recordValue(size);
+        }
+
+        /** Record left the poll loop and is about to hit the provider. */
+        public void sendStarted(long queueWaitMillis) {
+            inFlight.incrementAndGet();
+            queueWaitMs.recordValue(Math.max(0, queueWaitMillis));
+        }
+
+        /** Already delivered (replayed record), skipped without a provider call. */
+        public void duplicateSkipped() {
+            dedupHits.increment();
+            finished.increment();
+        }
+
+        public void dedupMiss() {
+            dedupMisses.increment();
+        }
+
+        /** Breaker open, not sent; the email goes straight to the retry topic. */
+        public void circuitRejected() {
+            circuitRejected.increment();
+            finished.increment();
+        }
+
+        public void retried() {
+            retried.increment();
+        }
+
+        public void deadLettered() {
+            deadLettered.increment();
+        }
+
+        /** Went out inside another email's digest instead of as its own provider call. */
+        public void digested() {
+            digested.increment();
+        }
+
+        public void sendCompleted(boolean success, long providerNanos, long lagMillis) {
+            inFlight.decrementAndGet();
+            finished.increment();
+            providerMicros.recordValue(Math.max(0, providerNanos / 1000));
+            if (success) {
+                sent.increment();
+                lagMs.recordValue(Math.max(0, lagMillis));
+            } else {
+                errors.increment();
+            }
+        }
+    }
+
+    // Indexed by consumer id so lookups on the send path need no key object
+    private static final Map<String, Stream[]> streams = new ConcurrentHashMap<>();
+    // Sends that got an answer (or failed), across all streams; the load-test harness waits on it
+    private static final LongAdder finished = new LongAdder();
+
+    private EmailMetrics() { }
+
+    public static synchronized Stream register(String topic, int consumer) {
+        Stream[] byConsumer = streams.getOrDefault(topic, new Stream[0]);
+        if (consumer >= byConsumer.length) byConsumer = Arrays.copyOf(byConsumer, consumer + 1);
+        if (byConsumer[consumer] == null) byConsumer[consumer] = new Stream(topic, consumer);
+        streams.put(topic, byConsumer);
+        return byConsumer[consumer];
+    }
+
+    public static Stream stream(String topic, int consumer) {
+        Stream[] byConsumer = streams.get(topic);
+        if (byConsumer != null && consumer < byConsumer.length && byConsumer[consumer] != null) return byConsumer[consumer];
+        return register(topic, consumer);
+    }
+
+    public static long finishedCount() {
+        return finished.sum();
+    }
+
+    /** Drops all streams and counters. Only for back-to-back runs in one JVM, before any consumer is created. */
+    public static synchronized void reset() {
+        streams.clear();
+        finished.reset();
+    }
+
+    static List<Stream> all() {
+        List<Stream> all = new ArrayList<>();
+        for (Stream[] byConsumer : streams.values()) {
+            for (Stream stream : byConsumer) if (stream != null) all.add(stream);
+        }
+        return all;
+    }
+}
@@ -1,88 +1,499 @@
 package org.consumer;
 
+import org.kafkaShared.BodyStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import java.net.URI;
 import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 public class EmailSender {
 
     private static final Logger logger = LoggerFactory.getLogger(EmailSender.class);
-    private static final String WIREMOCK_URL = "http://localhost:8080/v1/send-email";
+    // Per-message success lines, kept for the log analyzer; set to WARN in logback.xml to rely on EmailMetrics only
+    private static final Logger deliveryLog = LoggerFactory.getLogger("org.consumer.delivery");
+    // -Dconsumer.mail.url points the sender at another stub (the benchmarks start their own)
+    private static final String WIREMOCK_URL = System.getProperty("consumer.mail.url", "http://localhost:8080/v1/send-email");
     private static final String API_KEY = "api:key-fake";
     private static final String FROM_EMAIL = "sender@example.com";
 
-    private static final HttpClient client = HttpClient.newBuilder()
-            .version(HttpClient.Version.HTTP_2)
-            .connectTimeout(Duration.ofSeconds(10))
-            .build();
+    private static final ExecutionMode EXECUTION_MODE = ExecutionMode.fromSystemProperty();
+    // One unlimited shard on the stub until Main installs its own; each shard has its own
+    // request template (URI, headers and encoded from= prefix, built once), clients and token bucket
+    private static volatile SendShards shards = new SendShards(
+            List.of(SendShards.Config.unlimited("default", WIREMOCK_URL)), API_KEY, FROM_EMAIL, () -> newClient(EXECUTION_MODE), null);
+    // Delivered message ids, replays after a crash or rebalance are skipped; null = no dedup
+    private static volatile DedupCache dedup;
+    // Failed sends go to the next retry topic or the DLT; null = failures are only logged
+    private static volatile RetryPublisher retries;
+    // STANDARD first attempts are coalesced per recipient into one email; null = every email on its own
+    private static volatile DigestBuffer<Digested> digest;
+    // Permits for the digests' provider calls (all STANDARD, so LOW); null = digests are not limited
+    private static volatile AdaptiveConcurrencyLimiter digestLimiter;
+    // Flushed digests are sent from here, never on the wheel's timer thread: a throttled shard would stall
+    // every later tick. Not the worker pools either, their sendBatch calls wait for these digests.
+    // Virtual in both modes, a digest send mostly waits for a permit or the shard's tokens
+    private static final ExecutorService DIGEST_SENDS =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("mail-digest-send-", 0).factory());
+    // Claim-checked bodies are read from here; null = a record with a body reference can't be sent
+    private static volatile BodyCache bodies;
+
+    // A digested email and the future its sender waits on, completed once the digest went out
+    private record Digested(EmailRequest email, CompletableFuture<Boolean> result) { }
+
+    public static void useDedup(DedupCache cache) {
+        dedup = cache;
+    }
+
+    public static void useRetries(RetryPublisher publisher) {
+        retries = publisher;
+    }
+
+    /**
+     * STANDARD emails to the same recipient within windowMs go out as one email listing them all
+     * (at most maxItems, maxRecipients digests open at once). windowMs <= 0 turns it off.
+     * Each digest's provider call takes a LOW permit from limiter, if not null.
+     */
+    public static void useDigest(long windowMs, long tickMs, int maxItems, int maxRecipients,
+                                 AdaptiveConcurrencyLimiter limiter) {
+        DigestBuffer<Digested> previous = digest;
+        digestLimiter = limiter;
+        digest = windowMs > 0 ? new DigestBuffer<>(windowMs, tickMs, maxItems, maxRecipients, EmailSender::flushDigest) : null;
+        if (previous != null) previous.close();
+    }
+
+    /** Reads claim-checked bodies from store, keeping up to cacheBytes of them in memory. */
+    public static void useBodyStore(BodyStore store, long cacheBytes) {
+        bodies = store != null ? new BodyCache(store, cacheBytes) : null;
+    }
+
+    static BodyCache bodyCache() {
+        return bodies;
+    }
+
+    /** Sends what the digest still holds, before the consumers' final commit. */
+    public static void flushDigests() {
+        DigestBuffer<Digested> digest = EmailSender.digest;
+        if (digest != null) digest.flushAll();
+    }
+
+    /** Goes into a digest instead of straight to the provider. Retries always go on their own. */
+    public static boolean digests(EmailRequest email, boolean vip) {
+        return digest != null && !vip && email.attempt == 0;
+    }
+
+    /** Replaces the shards; a config with an empty url sends to the stub. breaker == null: no circuit breakers. */
+    public static void useShards(List<SendShards.Config> configs, CircuitBreaker.Settings breaker) {
+        List<SendShards.Config> resolved = new ArrayList<>(configs.size());
+        for (SendShards.Config c : configs) {
+            resolved.add(c.url() == null || c.url().isEmpty()
+                    ? new SendShards.Config(c.name(), WIREMOCK_URL, c.domains(), c.ratePerSec(), c.burst(), c.vipReserve())
+                    : c);
+        }
+        shards = new SendShards(resolved, API_KEY, FROM_EMAIL, () -> newClient(EXECUTION_MODE), breaker);
+    }
+
+    public static SendShards shards() {
+        return shards;
+    }
+
+    /** Every provider's breaker is open: nothing can be sent right now, consumers pause their partitions. */
+    public static boolean providersDown() {
+        for (SendShards.Shard shard : shards.all()) {
+            if (!shard.breaker.isOpen()) return false;
+        }
+        return true;
+    }
+
+    // In virtual mode the client's response callbacks also run on virtual threads
+    private static HttpClient newClient(ExecutionMode mode) {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofSeconds(10));
+        if (mode == ExecutionMode.VIRTUAL) builder.executor(Executors.newVirtualThreadPerTaskExecutor());
+        return builder.build();
+    }
 
 
     public static class EmailRequest {
         public String to;
         public String subject;
         public String body;
+        public String bodyRef;     // claim check: body is null until the sender resolves it
         public long creationTime;
         public String topic;
         public int consumerId;
+        public long polledAtNanos; // when the consumer handed it over, for queue-wait time
+        public String messageId;   // dedup key, same on every replay of the record
+        // Where the email was first consumed and how often it failed, carried in retry-topic headers
+        public String originalTopic;
+        public int originalPartition = -1;
+        public long originalOffset = -1;
+        public int attempt;
+        public long firstFailureMs;
 
         public EmailRequest(String to, String subject, String body, long creationTime, String topic, int consumerId) {
+            this(to, subject, body, creationTime, topic, consumerId, null);
+        }
+
+        public EmailRequest(String to, String subject, String body, long creationTime, String topic, int consumerId,
+                            String messageId) {
+            this.messageId = messageId;
             this.to = to;
             this.subject = subject;
             this.body = body;
             this.creationTime = creationTime;
             this.topic = topic;
+            this.originalTopic = topic;
             this.consumerId = consumerId;
+            this.polledAtNanos = System.nanoTime();
         }
     }
 
     public static void sendBatch(List<EmailRequest> batch) {
         if (batch == null || batch.isEmpty()) return;
 
-        List<CompletableFuture<Void>> futures = batch.stream()
-                .map(email -> sendAsync(email))
+        List<CompletableFuture<Boolean>> futures = batch.stream()
+                .map(email -> sendAsync(email, false))
                 .collect(Collectors.toList());
 
         CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
     }
 
-    private static CompletableFuture<Void> sendAsync(EmailRequest email) {
-        String formData = buildFormData(email.to, email.subject, email.body);
+    /**
+     * Same as sendBatch, but every send first takes a permit from the shared limiter,
+     * so the batch trickles out at the rate the provider currently sustains.
+     */
+    public static void sendBatch(List<EmailRequest> batch, AdaptiveConcurrencyLimiter limiter,
+                                 AdaptiveConcurrencyLimiter.Priority priority) {
+        if (batch == null || batch.isEmpty()) return;
+        if (limiter == null) {
+            sendBatch(batch);
+            return;
+        }
+
+        boolean vip = priority == AdaptiveConcurrencyLimiter.Priority.HIGH;
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>(batch.size());
+        InterruptedException interrupted = null;
+        try {
+            for (EmailRequest email : batch) {
+                // Waiting for its digest must not hold a permit; the digest itself is one call
+                if (digests(email, vip)) {
+                    futures.add(sendAsync(email, false));
+                    continue;
+                }
+                limiter.acquire(priority);
+                futures.add(sendWithPermit(email, vip, new Permit(limiter, priority)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            interrupted = e;
+        }
+
+        CompletableFuture<Void> all = CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+        if (interrupted != null) {
+            // Let what is under way finish, then fail the batch: the rest was never sent and must not be committed
+            all.handle((ignored, ex) -> null).join();
+            throw new CompletionException("Interrupted while waiting for a send permit, " + futures.size() + " of "
+                    + batch.size() + " emails dispatched", interrupted);
+        }
+        all.join();
+    }
+
+    /**
+     * One email, for the key-ordered consumer: takes a limiter permit first (blocking, like sendBatch)
+     * and returns once the send is under way.
+     */
+    public static CompletableFuture<Boolean> send(EmailRequest email, AdaptiveConcurrencyLimiter limiter,
+                                                  AdaptiveConcurrencyLimiter.Priority priority) {
+        boolean vip = priority == AdaptiveConcurrencyLimiter.Priority.HIGH;
+        if (limiter == null || digests(email, vip)) return sendAsync(email, vip);
+        try {
+            limiter.acquire(priority);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        return sendWithPermit(email, vip, new Permit(limiter, priority));
+    }
+
+    /**
+     * A limiter permit held by one send. The limiter is fed the provider round trip only, timed after
+     * the shard's token bucket let the call through: a rate-limited shard is not a slow provider.
+     * A send that never reaches the provider (duplicate, open circuit, missing body) returns it unsampled.
+     */
+    private static final class Permit {
+        private final AdaptiveConcurrencyLimiter limiter;
+        private final AdaptiveConcurrencyLimiter.Priority priority;
+        private final AtomicBoolean released = new AtomicBoolean();
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(WIREMOCK_URL))
-                .header("Content-Type", "application/x-www-form-urlencoded")
-                .header("Authorization", "Basic " + java.util.Base64.getEncoder().encodeToString(API_KEY.getBytes()))
-                .POST(HttpRequest.BodyPublishers.ofString(formData))
-                .timeout(Duration.ofSeconds(10))
-                .build();
+        Permit(AdaptiveConcurrencyLimiter limiter, AdaptiveConcurrencyLimiter.Priority priority) {
+            this.limiter = limiter;
+            this.priority = priority;
+        }
+
+        void sample(long providerNanos, boolean success) {
+            if (released.compareAndSet(false, true)) limiter.release(priority, providerNanos, success);
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) limiter.release(priority);
+        }
+    }
 
-        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
-                .thenAccept(response -> {
-                    if (response.statusCode() == 200) {
+    // With a permit, it is sampled by the provider call or released once the send is done either way
+    private static CompletableFuture<Boolean> sendWithPermit(EmailRequest email, boolean vip, Permit permit) {
+        CompletableFuture<Boolean> sent;
+        try {
+            sent = sendAsync(email, vip, permit);
+        } catch (RuntimeException e) {
+            permit.release();
+            throw e;
+        }
+        return sent.whenComplete((success, ex) -> permit.release());
+    }
+
+    private static CompletableFuture<Boolean> sendAsync(EmailRequest email, boolean vip) {
+        return sendAsync(email, vip, null);
+    }
+
+    /** vip picks the shard's priority lane: its own client and first call on the shard's tokens. */
+    private static CompletableFuture<Boolean> sendAsync(EmailRequest email, boolean vip, Permit permit) {
+        EmailMetrics.Stream metrics = EmailMetrics.stream(email.topic, email.consumerId);
+        DedupCache dedup = EmailSender.dedup;
+        if (dedup != null) {
+            if (dedup.isDuplicate(email.messageId)) {
+                metrics.duplicateSkipped();
+                logger.debug("Duplicate skipped: {} ({})", email.to, email.messageId);
+                return CompletableFuture.completedFuture(true);
+            }
+            metrics.dedupMiss();
+        }
+
+        DigestBuffer<Digested> digest = EmailSender.digest;
+        if (digest != null && !vip && email.attempt == 0) {
+            Digested pending = new Digested(email, new CompletableFuture<>());
+            digest.submit(email.to, pending);
+            return pending.result();
+        }
+        return deliver(email, List.of(email), vip, permit);
+    }
+
+    // Called on the wheel's thread: only hands the digest over
+    private static void flushDigest(List<Digested> pending) {
+        try {
+            DIGEST_SENDS.execute(() -> sendDigest(pending));
+        } catch (RejectedExecutionException e) {
+            for (Digested d : pending) d.result().completeExceptionally(e);
+        }
+    }
+
+    // One provider call for the digest, every email in it is delivered, retried and counted on its own
+    private static void sendDigest(List<Digested> pending) {
+        List<EmailRequest> items = new ArrayList<>(pending.size());
+        for (Digested d : pending) items.add(d.email());
+        EmailRequest first = items.get(0);
+
+        CompletableFuture<Boolean> sent;
+        Permit permit = null;
+        try {
+            EmailRequest mail;
+            try {
+                mail = items.size() == 1 ? first : combine(items);
+            } catch (BodyUnavailableException e) {
+                logger.error("Digest for {} not sent: {}", first.to, e.getMessage());
+                mail = null;
+            }
+            if (mail == null) {
+                sent = retryAll(items, "body unavailable");
+            } else {
+                AdaptiveConcurrencyLimiter limiter = digestLimiter;
+                if (limiter != null) {
+                    limiter.acquire(AdaptiveConcurrencyLimiter.Priority.LOW);
+                    permit = new Permit(limiter, AdaptiveConcurrencyLimiter.Priority.LOW);
+                }
+                sent = deliver(mail, items, false, permit);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sent = CompletableFuture.failedFuture(e);
+        } catch (RuntimeException e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+        Permit held = permit;
+        sent.whenComplete((ok, ex) -> {
+            if (held != null) held.release();
+            for (Digested d : pending) {
+                if (ex != null) d.result().completeExceptionally(ex);
+                else d.result().complete(ok);
+            }
+        });
+    }
+
+    // Subject and body listing every item, oldest first; timing fields are the oldest item's
+    private static EmailRequest combine(List<EmailRequest> items) {
+        EmailRequest first = items.get(0);
+        StringBuilder body = new StringBuilder(64 * items.size());
+        long created = first.creationTime;
+        long polledAt = first.polledAtNanos;
+        for (EmailRequest item : items) {
+            body.append("- ").append(item.subject).append('\n').append(bodyOf(item)).append("\n\n");
+            created = Math.min(created, item.creationTime);
+            polledAt = Math.min(polledAt, item.polledAtNanos);
+        }
+        String subject = items.size() + " updates: " + first.subject + " and " + (items.size() - 1) + " more";
+        EmailRequest mail = new EmailRequest(first.to, subject, body.toString(), created, first.topic, first.consumerId);
+        mail.polledAtNanos = polledAt;
+        return mail;
+    }
+
+    /**
+     * mail goes to the provider; items are the emails it carries (just mail itself unless it is a digest).
+     * permit, if any, gets the provider round trip as its latency sample.
+     */
+    private static CompletableFuture<Boolean> deliver(EmailRequest mail, List<EmailRequest> items, boolean vip,
+                                                      Permit permit) {
+        SendShards.Shard shard = shards.route(mail.to);
+        // Before the breaker: a half-open breaker's probe has to end in a call to the provider
+        String body;
+        try {
+            body = bodyOf(mail);
+        } catch (BodyUnavailableException e) {
+            // The store may be back by the time the retry topic redelivers
+            logger.error("Error sending to {}: {}", mail.to, e.getMessage());
+            return retryAll(items, e.getMessage());
+        }
+        CircuitBreaker.Admission admission = shard.breaker.allowRequest();
+        if (!admission.allowed()) {
+            // Provider is failing or too slow: don't wait for its timeout, hand the emails to the retry topic
+            for (EmailRequest item : items) EmailMetrics.stream(item.topic, item.consumerId).circuitRejected();
+            return retryAll(items, "circuit open for shard " + shard.name);
+        }
+        HttpClient client;
+        HttpRequest request;
+        try {
+            MailRequestTemplate template = shard.template;
+            request = template.request(template.formBody(mail.to, mail.subject, body));
+            // Blocks this worker while the shard is over its rate, counted as queue wait below
+            client = shard.acquire(vip);
+        } catch (RuntimeException e) {
+            shard.breaker.release(admission);
+            throw e;
+        }
+
+        long start = System.nanoTime();
+        for (EmailRequest item : items) {
+            EmailMetrics.Stream metrics = EmailMetrics.stream(item.topic, item.consumerId);
+            metrics.sendStarted((start - item.polledAtNanos) / 1_000_000);
+            if (item != items.get(0)) metrics.digested();
+        }
+
+        // Completes with null on success or the failure reason, which sends the emails on to a retry topic
+        DedupCache dedup = EmailSender.dedup;
+        CompletableFuture<HttpResponse<String>> call;
+        try {
+            call = client.sendAsync(request, MailRequestTemplate.BODY_ON_ERROR);
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e); // recorded as a failed call like an async one
+        }
+        return call
+                .handle((response, ex) -> {
+                    long providerNanos = System.nanoTime() - start;
+                    boolean success = ex == null && response.statusCode() == 200;
+                    shard.completed(vip, success);
+                    shard.breaker.record(admission, success, providerNanos);
+                    if (permit != null) permit.sample(providerNanos, success);
+
+                    if (success) {
                         long sentTime = System.currentTimeMillis();
+                        for (EmailRequest item : items) {
+                            if (dedup != null) dedup.markDelivered(item.messageId);
+                            EmailMetrics.stream(item.topic, item.consumerId)
+                                    .sendCompleted(true, providerNanos, sentTime - item.creationTime);
 
-                        logger.info("Topic: {} | Consumer: {} | Sent to: {} | Created: {} | Sent: {}",
-                                email.topic, email.consumerId, email.to, email.creationTime, sentTime);
-                    } else {
-                        logger.error("Failed: {} | Status: {}", email.to, response.statusCode());
+                            deliveryLog.info("Topic: {} | Consumer: {} | Sent to: {} | Created: {} | Sent: {}",
+                                    item.topic, item.consumerId, item.to, item.creationTime, sentTime);
+                        }
+                        return null;
                     }
+                    for (EmailRequest item : items) {
+                        EmailMetrics.stream(item.topic, item.consumerId).sendCompleted(false, providerNanos, 0);
+                    }
+                    if (ex != null) {
+                        logger.error("Error sending to {}: {}", mail.to, ex.getMessage());
+                        return "network: " + ex.getMessage();
+                    }
+                    logger.error("Failed: {} | Status: {} | Body: {}", mail.to, response.statusCode(), response.body());
+                    return "HTTP " + response.statusCode();
                 })
-                .exceptionally(ex -> {
-                    logger.error("Error sending to {}: {}", email.to, ex.getMessage());
-                    return null;
-                });
+                .thenCompose(error -> error == null ? CompletableFuture.completedFuture(true) : retryAll(items, error));
+    }
+
+    private static String bodyOf(EmailRequest email) {
+        if (email.bodyRef == null) return email.body;
+        BodyCache bodies = EmailSender.bodies;
+        if (bodies == null) throw new BodyUnavailableException("no body store for reference " + email.bodyRef);
+        try {
+            return bodies.resolve(email.bodyRef);
+        } catch (RuntimeException e) {
+            throw new BodyUnavailableException("body " + email.bodyRef + ": " + e.getMessage());
+        }
+    }
+
+    private static final class BodyUnavailableException extends RuntimeException {
+        BodyUnavailableException(String message) {
+            super(message);
+        }
+    }
+
+    // Each email of a failed digest gets its own retry record, and is retried on its own
+    private static CompletableFuture<Boolean> retryAll(List<EmailRequest> items, String error) {
+        if (items.size() == 1) {
+            EmailRequest only = items.get(0);
+            return retry(only, EmailMetrics.stream(only.topic, only.consumerId), error);
+        }
+        CompletableFuture<?>[] published = new CompletableFuture[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            EmailRequest item = items.get(i);
+            published[i] = retry(item, EmailMetrics.stream(item.topic, item.consumerId), error);
+        }
+        return CompletableFuture.allOf(published).thenApply(ignored -> false);
+    }
+
+    // Completes once the retry record is acknowledged, so the source offset is only committed after that.
+    // A publish that fails fails the send too: the consumer leaves the source record uncommitted and reads it again
+    private static CompletableFuture<Boolean> retry(EmailRequest email, EmailMetrics.Stream metrics, String error) {
+        RetryPublisher retries = EmailSender.retries;
+        if (retries == null) return CompletableFuture.completedFuture(false);
+
+        return retries.publish(email, error).handle((deadLettered, ex) -> {
+            if (ex != null) {
+                logger.error("Retry publish failed for {}, its record will be read again: {}", email.to, ex.getMessage());
+                throw new CompletionException(ex);
+            }
+            if (deadLettered) {
+                metrics.deadLettered();
+            } else {
+                metrics.retried();
+            }
+            return false;
+        });
     }
 
-    private static String buildFormData(String to, String subject, String body) {
+    // The String-based encoding the template replaced, kept as the baseline in FormDataBenchmark
+    static String buildFormData(String to, String subject, String body) {
         return "from=" + encode(FROM_EMAIL) +
                 "&to=" + encode(to) +
                 "&subject=" + encode(subject) +
@@ -0,0 +1,36 @@
+package org.consumer;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * How email workers run, picked with -Dconsumer.execution=platform|virtual.
+ *
+ * PLATFORM: fixed pools, concurrency = pool size (the setup every TEST-N used).
+ * VIRTUAL:  one virtual thread per task, concurrency = explicit permit count,
+ *           so a worker blocked on join() or a limiter permit does not hold an OS thread.
+ */
+public enum ExecutionMode {
+    PLATFORM,
+    VIRTUAL;
+
+    public static final String PROPERTY = "consumer.execution";
+
+    public static ExecutionMode fromSystemProperty() {
+        return valueOf(System.getProperty(PROPERTY, "platform").trim().toUpperCase());
+    }
+
+    public ExecutorService newWorkerPool(int platformThreads, int virtualPermits) {
+        if (this == VIRTUAL) {
+            return new PermitBoundedExecutor(Executors.newVirtualThreadPerTaskExecutor(), virtualPermits);
+        }
+        return Executors.newFixedThreadPool(platformThreads);
+    }
+
+    public ThreadFactory threadFactory(String namePrefix) {
+        return this == VIRTUAL
+                ? Thread.ofVirtual().name(namePrefix, 0).factory()
+                : Thread.ofPlatform().name(namePrefix, 0).factory();
+    }
+}
@@ -1,19 +1,28 @@
 package org.consumer;
 
 import org.apache.kafka.clients.consumer.*;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.RebalanceInProgressException;
 import org.apache.kafka.common.errors.WakeupException;
 import org.apache.kafka.common.serialization.StringDeserializer;
-import org.json.JSONException;
-import org.json.JSONObject;
+import org.kafkaShared.EmailPayload;
+import org.kafkaShared.EmailPayloadDeserializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -21,17 +30,52 @@ public class KafkaEmailConsumer implements Runnable {
 
     private static final Logger logger = LoggerFactory.getLogger(KafkaEmailConsumer.class);
 
+    // A partition whose records failed without reaching a retry topic is read again after this pause
+    private static final long REPLAY_BACKOFF_MS = 1000;
+
     private final String topic;
     private final String groupId;
     private final int consumerIndex;
     private final ExecutorService emailExecutor;
+    private final EmailMetrics.Stream metrics;
+
+    // Configurable Settings, changed at runtime by TuningControl. A new batch size reopens the
+    // KafkaConsumer (max.poll.records is fixed per instance), the poll wait applies on the next poll
+    private volatile int batchSize;
+    private volatile long pollDurationMs;
+    private int openedBatchSize;
+
+    // Pipelined mode: keep polling while earlier batches are still sending (off unless enabled)
+    private boolean pipelined = false;
+    private int maxInFlightRecords;
+    private long commitIntervalMs;
+    private int commitEveryRecords;
+    private final OffsetTracker offsetTracker = new OffsetTracker();
+    // Key-ordered mode (on top of pipelining): every record is its own send, in order per key only
+    private KeyOrderedDispatcher keyed;
+    private boolean orderByRecipient;
+    // Shared send limiter, partitions are paused while it has no permits for our priority
+    private AdaptiveConcurrencyLimiter limiter;
+    private AdaptiveConcurrencyLimiter.Priority priority;
+
+    // Retry-topic mode: records wait for their not-before header, their partition is paused until then
+    private boolean retryDelay = false;
+    private final Map<TopicPartition, Long> delayedUntil = new HashMap<>();
 
-    // Configurable Settings
-    private final int batchSize;
-    private final long pollDurationMs;
+    private boolean paused = false;
+    private long lastCommitMs = System.currentTimeMillis();
+
+    private String bootstrapServers = "localhost:9092";
+    // Static membership: a restart within the session timeout gets its partitions back without a rebalance
+    private String groupInstanceId;
+    private int sessionTimeoutMs;
+    // How long a revoke or shutdown waits for in-flight sends before committing what finished
+    private long drainTimeoutMs = 15_000;
 
     private final AtomicBoolean running = new AtomicBoolean(true);
-    private KafkaConsumer<String, String> consumer;
+    // Removed for good (not just stopping with the process): leave the group so the partitions move now
+    private volatile boolean leaveOnClose = false;
+    private volatile KafkaConsumer<String, EmailPayload> consumer;
 
     public KafkaEmailConsumer(String topic, String groupId, int consumerIndex,
                               ExecutorService emailExecutor, int batchSize, long pollDurationMs) {
@@ -41,75 +85,455 @@ public class KafkaEmailConsumer implements Runnable {
         this.emailExecutor = emailExecutor;
         this.batchSize = batchSize;
         this.pollDurationMs = pollDurationMs; // Store the custom wait time
+        this.metrics = EmailMetrics.register(topic, consumerIndex);
+    }
+
+    /**
+     * Switches to the pipelined loop. At most maxInFlightRecords records are sending at once
+     * (partitions are paused above that), offsets are committed async every commitIntervalMs
+     * or after commitEveryRecords completions, whichever comes first.
+     */
+    public KafkaEmailConsumer withPipelining(int maxInFlightRecords, long commitIntervalMs, int commitEveryRecords) {
+        this.pipelined = true;
+        this.maxInFlightRecords = maxInFlightRecords;
+        this.commitIntervalMs = commitIntervalMs;
+        this.commitEveryRecords = commitEveryRecords;
+        return this;
+    }
+
+    /**
+     * Fans records out one by one instead of as poll batches: sends for the same key (recipient, or
+     * the record key when orderByRecipient is false) run one after another in offset order, different
+     * keys run concurrently. Offsets still commit only up to the lowest unfinished record of each
+     * partition. Needs withPipelining, whose maxInFlightRecords then bounds the concurrent sends.
+     */
+    public KafkaEmailConsumer withKeyOrdering(boolean orderByRecipient) {
+        if (!pipelined) throw new IllegalStateException("Key ordering needs withPipelining first");
+        this.keyed = new KeyOrderedDispatcher(emailExecutor);
+        this.orderByRecipient = orderByRecipient;
+        return this;
+    }
+
+    public KafkaEmailConsumer withLimiter(AdaptiveConcurrencyLimiter limiter, AdaptiveConcurrencyLimiter.Priority priority) {
+        this.limiter = limiter;
+        this.priority = priority;
+        return this;
+    }
+
+    /**
+     * Consumes a retry topic: a record is only sent once its not-before time has passed. Until then
+     * its partition is paused and rewound to it; later records on it were scheduled later still.
+     */
+    public KafkaEmailConsumer withRetryDelay() {
+        this.retryDelay = true;
+        return this;
+    }
+
+    /**
+     * Joins as a static member. instanceId must be unique in the group and the same across restarts
+     * of this consumer; the group only rebalances if it is gone longer than sessionTimeoutMs.
+     */
+    public KafkaEmailConsumer withStaticMembership(String instanceId, int sessionTimeoutMs) {
+        this.groupInstanceId = instanceId;
+        this.sessionTimeoutMs = sessionTimeoutMs;
+        return this;
+    }
+
+    public KafkaEmailConsumer withDrainTimeout(long drainTimeoutMs) {
+        this.drainTimeoutMs = drainTimeoutMs;
+        return this;
+    }
+
+    /** Broker to connect to, the load-test harness points this at its embedded broker. */
+    public KafkaEmailConsumer withBootstrapServers(String bootstrapServers) {
+        this.bootstrapServers = bootstrapServers;
+        return this;
     }
 
     public void shutdown() {
         running.set(false);
-        if (consumer != null) consumer.wakeup();
+        KafkaConsumer<String, EmailPayload> current = consumer;
+        if (current != null) current.wakeup();
+    }
+
+    /**
+     * Stops this consumer for good while the others keep running: it drains and commits like on
+     * shutdown, then leaves the group, so a static member's partitions go to the rest right away
+     * instead of after the session timeout.
+     */
+    public void retire() {
+        leaveOnClose = true;
+        shutdown();
+    }
+
+    /** max.poll.records; the consumer finishes its in-flight records and rejoins with it on the next loop. */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setPollDurationMs(long pollDurationMs) {
+        this.pollDurationMs = pollDurationMs;
+    }
+
+    public int getConsumerIndex() {
+        return consumerIndex;
     }
 
     @Override
     public void run() {
-        Properties props = new Properties();
-        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092");
-        props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
-        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
-        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
-        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
-        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(batchSize));
-
         try {
-            consumer = new KafkaConsumer<>(props);
-            consumer.subscribe(Arrays.asList(topic));
-            logger.info("Started Consumer {} | Topic: {} | Batch: {} | Wait: {}ms",
-                    consumerIndex, topic, batchSize, pollDurationMs);
+            open();
+            logger.info("Started Consumer {} | Topic: {} | Batch: {} | Wait: {}ms | Pipelined: {} | Key-ordered: {} | Retry delay: {}",
+                    consumerIndex, topic, batchSize, pollDurationMs, pipelined,
+                    keyed == null ? "no" : orderByRecipient ? "by recipient" : "by record key", retryDelay);
 
             while (running.get()) {
-                ConsumerRecords<String, String> records;
+                if (batchSize != openedBatchSize) reopen();
+                if (pipelined) replayFailed();
+                resumeDelayed();
+                applyBackpressure();
+
+                ConsumerRecords<String, EmailPayload> records;
                 try {
                     // USE DYNAMIC WAIT TIME HERE
                     records = consumer.poll(Duration.ofMillis(pollDurationMs));
                 } catch (WakeupException e) { continue; }
 
+                if (pipelined) maybeCommitAsync();
                 if (records.isEmpty()) continue;
 
+                List<ConsumerRecord<String, EmailPayload>> due = retryDelay ? takeDue(records) : null;
+                Iterable<ConsumerRecord<String, EmailPayload>> batchRecords = due != null ? due : records;
+
                 List<EmailSender.EmailRequest> emailBatch = new ArrayList<>();
-                for (ConsumerRecord<String, String> record : records) {
-                    try {
-                        JSONObject json = new JSONObject(record.value());
-
-                        // Extract creation time from Producer
-                        long createdAt = json.has("createdAt") ? json.getLong("createdAt") : System.currentTimeMillis();
-
-                        emailBatch.add(new EmailSender.EmailRequest(
-                                json.getString("to"),
-                                json.getString("subject"),
-                                json.getString("body"),
-                                createdAt,
-                                this.topic,
-                                this.consumerIndex
-                        ));
-                    } catch (JSONException e) {
-                        logger.error("Skipping bad JSON");
+                List<ConsumerRecord<String, EmailPayload>> sources = keyed != null ? new ArrayList<>() : null;
+                for (ConsumerRecord<String, EmailPayload> record : batchRecords) {
+                    EmailPayload payload = record.value();
+                    if (payload == null) {
+                        logger.error("Skipping bad payload");
+                        continue;
                     }
+
+                    EmailSender.EmailRequest request = new EmailSender.EmailRequest(
+                            payload.to,
+                            payload.subject,
+                            payload.body,
+                            payload.createdAt,
+                            this.topic,
+                            this.consumerIndex,
+                            // Old producers send no id, the record position is just as stable across replays
+                            payload.messageId != null ? payload.messageId
+                                    : record.topic() + "-" + record.partition() + "@" + record.offset()
+                    );
+                    request.bodyRef = payload.bodyRef;
+                    RetryPublisher.readOrigin(record, request);
+                    emailBatch.add(request);
+                    if (sources != null) sources.add(record);
+                }
+
+                metrics.recordBatch(emailBatch.size());
+
+                if (keyed != null) {
+                    dispatchByKey(sources, emailBatch);
+                    continue;
+                }
+                if (pipelined) {
+                    dispatch(batchRecords, emailBatch);
+                    continue;
                 }
 
                 if (emailBatch.isEmpty()) {
-                    consumer.commitSync();
+                    commitProcessed();
                     continue;
                 }
 
-                CompletableFuture.runAsync(() -> {
-                    EmailSender.sendBatch(emailBatch);
-                }, emailExecutor).join();
+                try {
+                    CompletableFuture.runAsync(() -> {
+                        EmailSender.sendBatch(emailBatch, limiter, priority);
+                    }, emailExecutor).join();
+                } catch (CompletionException e) {
+                    // Nothing of the batch is committed, it is read again (dedup skips what went out)
+                    logger.error("Batch failed on consumer {}, it will be read again", consumerIndex, e.getCause());
+                    replay(batchRecords);
+                    continue;
+                }
 
-                consumer.commitSync();
+                commitProcessed();
             }
+            if (pipelined) drainAndCommit();
         } catch (Exception e) {
             logger.error("Consumer Error", e);
         } finally {
-            if (consumer != null) consumer.close();
+            if (consumer != null) {
+                consumer.close(CloseOptions.groupMembershipOperation(leaveOnClose
+                        ? CloseOptions.GroupMembershipOperation.LEAVE_GROUP
+                        : CloseOptions.GroupMembershipOperation.DEFAULT));
+            }
+        }
+    }
+
+    private void open() {
+        Properties props = new Properties();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+        // Decodes binary payloads and falls back to JSON for older records
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, EmailPayloadDeserializer.class.getName());
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(batchSize));
+        // Incremental rebalances: only the partitions that move are revoked, the rest keep sending
+        props.put(ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, CooperativeStickyAssignor.class.getName());
+        if (groupInstanceId != null) {
+            props.put(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG, groupInstanceId);
+            props.put(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, String.valueOf(sessionTimeoutMs));
+        }
+
+        openedBatchSize = batchSize;
+        consumer = new KafkaConsumer<>(props);
+        consumer.subscribe(Arrays.asList(topic), new ConsumerRebalanceListener() {
+            @Override
+            public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+                if (partitions.isEmpty()) return;
+                delayedUntil.keySet().removeAll(partitions);
+                if (pipelined) drainRevoked(partitions);
+                else commitPositions(partitions);
+            }
+
+            @Override
+            public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+                if (!partitions.isEmpty()) logger.info("Consumer {} assigned {}", consumerIndex, partitions);
+            }
+
+            // Already owned by someone else (session expired): committing would be fenced, just drop them
+            @Override
+            public void onPartitionsLost(Collection<TopicPartition> partitions) {
+                logger.warn("Consumer {} lost {}, their in-flight records will be redelivered", consumerIndex, partitions);
+                delayedUntil.keySet().removeAll(partitions);
+                offsetTracker.forget(partitions);
+            }
+        });
+    }
+
+    // max.poll.records can't change on a live KafkaConsumer: let what is in flight finish, commit it
+    // and rejoin with the new size. A static member gets its partitions straight back, a dynamic one
+    // gives them up in a cooperative rebalance and usually gets the same ones again
+    private void reopen() throws InterruptedException {
+        int previous = openedBatchSize;
+        if (pipelined) drainAndCommit(); // the blocking loop commits after every batch
+        offsetTracker.forget(consumer.assignment());
+        delayedUntil.clear();
+        consumer.close();
+        paused = false;
+        open();
+        logger.info("Consumer {} reopened on {} | Batch: {} -> {}", consumerIndex, topic, previous, openedBatchSize);
+    }
+
+    // Hands the batch to the worker pool and returns immediately; offsets count as done once it finishes.
+    // A failed batch is not committed but read again, see replayFailed
+    private void dispatch(Iterable<ConsumerRecord<String, EmailPayload>> records, List<EmailSender.EmailRequest> emailBatch) {
+        offsetTracker.begin(records);
+        CompletableFuture.runAsync(() -> EmailSender.sendBatch(emailBatch, limiter, priority), emailExecutor)
+                .whenComplete((ignored, ex) -> {
+                    if (ex == null) {
+                        offsetTracker.complete(records);
+                        return;
+                    }
+                    logger.error("Batch failed on consumer {}, it will be read again", consumerIndex, ex);
+                    offsetTracker.fail(records);
+                });
+    }
+
+    // One send per record through the dispatcher; each record's offset completes (or fails) on its own.
+    // A digested email is in order once it joined its digest, so the key moves on right away
+    private void dispatchByKey(List<ConsumerRecord<String, EmailPayload>> sources, List<EmailSender.EmailRequest> emailBatch) {
+        offsetTracker.begin(sources);
+        boolean vip = priority == AdaptiveConcurrencyLimiter.Priority.HIGH;
+        for (int i = 0; i < sources.size(); i++) {
+            ConsumerRecord<String, EmailPayload> record = sources.get(i);
+            EmailSender.EmailRequest email = emailBatch.get(i);
+            String key = orderByRecipient || record.key() == null ? email.to : record.key();
+            keyed.submit(key, () -> {
+                CompletableFuture<Boolean> sent = offsetTracker.settle(record, () -> EmailSender.send(email, limiter, priority));
+                return EmailSender.digests(email, vip) ? CompletableFuture.completedFuture(null) : sent;
+            });
+        }
+    }
+
+    // Records that are due, in partition order. At the first one that is not, its partition is
+    // rewound to it and paused; the rest of that partition is fetched again after the resume
+    private List<ConsumerRecord<String, EmailPayload>> takeDue(ConsumerRecords<String, EmailPayload> records) {
+        long now = System.currentTimeMillis();
+        List<ConsumerRecord<String, EmailPayload>> due = new ArrayList<>(records.count());
+        for (TopicPartition tp : records.partitions()) {
+            for (ConsumerRecord<String, EmailPayload> record : records.records(tp)) {
+                long notBefore = RetryPublisher.notBefore(record);
+                if (notBefore > now) {
+                    consumer.seek(tp, record.offset());
+                    consumer.pause(List.of(tp));
+                    delayedUntil.put(tp, notBefore);
+                    break;
+                }
+                due.add(record);
+            }
+        }
+        return due;
+    }
+
+    // Pipelined: seek back to records that failed, so they are sent again instead of committed.
+    // Later records of the partition come again too, dedup skips the ones already delivered
+    private void replayFailed() {
+        Map<TopicPartition, Long> replays = offsetTracker.takeReplays();
+        if (replays.isEmpty()) return;
+        long until = System.currentTimeMillis() + REPLAY_BACKOFF_MS;
+        Set<TopicPartition> owned = consumer.assignment();
+        for (Map.Entry<TopicPartition, Long> entry : replays.entrySet()) {
+            if (owned.contains(entry.getKey())) seekBack(entry.getKey(), entry.getValue(), until);
+        }
+    }
+
+    // Blocking mode: every partition of the failed batch goes back to its first record in it
+    private void replay(Iterable<ConsumerRecord<String, EmailPayload>> records) {
+        Map<TopicPartition, Long> first = new HashMap<>();
+        for (ConsumerRecord<String, EmailPayload> record : records) {
+            first.merge(new TopicPartition(record.topic(), record.partition()), record.offset(), Math::min);
+        }
+        long until = System.currentTimeMillis() + REPLAY_BACKOFF_MS;
+        first.forEach((tp, offset) -> seekBack(tp, offset, until));
+    }
+
+    // Paused like a retry record that is not due yet, so a failing retry topic is not hammered in a loop
+    private void seekBack(TopicPartition tp, long offset, long until) {
+        logger.warn("Consumer {} reading {} again from offset {}", consumerIndex, tp, offset);
+        consumer.seek(tp, offset);
+        consumer.pause(List.of(tp));
+        delayedUntil.merge(tp, until, Math::max);
+    }
+
+    private void resumeDelayed() {
+        if (delayedUntil.isEmpty()) return;
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<TopicPartition, Long>> it = delayedUntil.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<TopicPartition, Long> entry = it.next();
+            if (entry.getValue() > now) continue;
+            it.remove();
+            if (!paused) consumer.resume(List.of(entry.getKey())); // otherwise applyBackpressure resumes it
+        }
+    }
+
+    // Stop fetching while the in-flight window is full, the limiter is saturated or every provider's
+    // circuit is open; poll keeps heartbeats going
+    private void applyBackpressure() {
+        boolean full = (pipelined && offsetTracker.pendingCount() >= maxInFlightRecords)
+                || (limiter != null && limiter.isSaturated(priority))
+                || EmailSender.providersDown();
+        if (full && !paused) {
+            consumer.pause(consumer.assignment());
+            paused = true;
+        } else if (!full && paused) {
+            Set<TopicPartition> resume = new HashSet<>(consumer.paused());
+            resume.removeAll(delayedUntil.keySet()); // still waiting for their retry time
+            consumer.resume(resume);
+            paused = false;
+        } else if (full) {
+            consumer.pause(consumer.assignment()); // partitions assigned after the last rebalance
+        }
+    }
+
+    private void maybeCommitAsync() {
+        long now = System.currentTimeMillis();
+        if (now - lastCommitMs < commitIntervalMs && offsetTracker.completedSinceCommit() < commitEveryRecords) return;
+
+        lastCommitMs = now;
+        Map<TopicPartition, OffsetAndMetadata> offsets = offsetTracker.committable();
+        if (offsets.isEmpty()) return;
+
+        consumer.commitAsync(offsets, (committed, ex) -> {
+            // A later commit carries higher offsets, so a failed one is only logged
+            if (ex != null) logger.warn("Async commit failed on consumer {}: {}", consumerIndex, ex.getMessage());
+        });
+    }
+
+    // Lets the sends of partitions we give up finish first (others keep going), then commits
+    // exactly what completed so the next owner starts right after it instead of replaying
+    private void drainRevoked(Collection<TopicPartition> revoked) {
+        long start = System.currentTimeMillis();
+        try {
+            if (!offsetTracker.awaitIdle(revoked, drainTimeoutMs)) {
+                logger.warn("Consumer {} revoking {} with {} records still in flight, they will be redelivered",
+                        consumerIndex, revoked, offsetTracker.pendingIn(revoked));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Map<TopicPartition, OffsetAndMetadata> offsets = offsetTracker.completedOffsets(revoked);
+        try {
+            if (!offsets.isEmpty()) commitSync(offsets);
+        } catch (Exception e) {
+            logger.warn("Commit on revoke failed on consumer {}: {}", consumerIndex, e.getMessage());
+        }
+        offsetTracker.forget(revoked);
+        logger.info("Consumer {} revoked {} after {}ms drain, committed {}",
+                consumerIndex, revoked, System.currentTimeMillis() - start, offsets.size());
+    }
+
+    private void drainAndCommit() throws InterruptedException {
+        if (!offsetTracker.awaitIdle(drainTimeoutMs)) {
+            logger.warn("Consumer {} closing with {} records still in flight", consumerIndex, offsetTracker.pendingCount());
+        }
+        long deadline = System.currentTimeMillis() + drainTimeoutMs;
+        while (true) {
+            Map<TopicPartition, OffsetAndMetadata> offsets = offsetTracker.completedOffsets(null);
+            offsets.keySet().retainAll(consumer.assignment());
+            if (offsets.isEmpty()) return;
+            try {
+                commitSync(offsets);
+                return;
+            } catch (RebalanceInProgressException | CommitFailedException e) {
+                if (System.currentTimeMillis() >= deadline) break;
+                // A rebalance started while draining: let poll finish it (the revoke callback commits what
+                // we give up, nothing new is fetched while paused) and commit the rest afterwards
+                consumer.pause(consumer.assignment());
+                consumer.poll(Duration.ofMillis(100));
+            }
+        }
+        logger.warn("Consumer {} could not commit before closing, finished records will be redelivered", consumerIndex);
+    }
+
+    // Non-pipelined batch finished: everything up to the current positions is sent
+    private void commitProcessed() {
+        try {
+            commitSync(null);
+        } catch (RebalanceInProgressException e) {
+            // The next poll completes the rebalance: revoked partitions are committed in the callback,
+            // the others with the next batch
+            logger.debug("Consumer {} commit deferred by rebalance", consumerIndex);
+        }
+    }
+
+    // Non-pipelined revoke: nothing is in flight between polls, so the positions are exactly what was sent
+    private void commitPositions(Collection<TopicPartition> revoked) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (TopicPartition tp : revoked) offsets.put(tp, new OffsetAndMetadata(consumer.position(tp)));
+        try {
+            commitSync(offsets);
+        } catch (Exception e) {
+            logger.warn("Commit on revoke failed on consumer {}: {}", consumerIndex, e.getMessage());
+        }
+    }
+
+    // shutdown() may wake the consumer while a commit is running; wakeup fires once, so retrying
+    // makes sure the offsets of everything that finished are still written
+    private void commitSync(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                if (offsets == null) consumer.commitSync();
+                else consumer.commitSync(offsets);
+                return;
+            } catch (WakeupException e) {
+                if (attempt > 0) throw e;
+            }
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,79 @@
+package org.consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Runs sends concurrently across keys but one at a time, in submit order, per key.
+ *
+ * A key with a send in flight has an entry in busy; sends submitted for it meanwhile wait in that
+ * entry's queue and the next one starts when the previous completes. Keys without an entry start
+ * right away on the executor, so a single consumer can keep as many sends going as there are
+ * distinct keys, independent of the partition count.
+ */
+class KeyOrderedDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeyOrderedDispatcher.class);
+
+    private final Executor executor;
+    private final Map<String, ArrayDeque<Supplier<CompletableFuture<?>>>> busy = new HashMap<>();
+
+    KeyOrderedDispatcher(Executor executor) {
+        this.executor = executor;
+    }
+
+    /** send is called on the executor and returns once the send is under way; its future marks the end. */
+    void submit(String key, Supplier<CompletableFuture<?>> send) {
+        synchronized (this) {
+            ArrayDeque<Supplier<CompletableFuture<?>>> waiting = busy.get(key);
+            if (waiting != null) {
+                waiting.add(send);
+                return;
+            }
+            busy.put(key, new ArrayDeque<>(2));
+        }
+        start(key, send);
+    }
+
+    private void start(String key, Supplier<CompletableFuture<?>> send) {
+        try {
+            CompletableFuture.supplyAsync(send, executor)
+                    .thenCompose(f -> f)
+                    .whenComplete((ignored, ex) -> {
+                        if (ex != null) logger.error("Send for key {} failed", key, ex);
+                        startNext(key);
+                    });
+        } catch (RejectedExecutionException e) {
+            // Shutting down: the key's sends stay unfinished, their offsets uncommitted, and are replayed
+            logger.warn("Executor closed, {} send(s) for key {} not started", queued(key) + 1, key);
+        }
+    }
+
+    private void startNext(String key) {
+        Supplier<CompletableFuture<?>> next;
+        synchronized (this) {
+            ArrayDeque<Supplier<CompletableFuture<?>>> waiting = busy.get(key);
+            next = waiting.poll();
+            if (next == null) busy.remove(key);
+        }
+        if (next != null) start(key, next);
+    }
+
+    private synchronized int queued(String key) {
+        ArrayDeque<Supplier<CompletableFuture<?>>> waiting = busy.get(key);
+        return waiting != null ? waiting.size() : 0;
+    }
+
+    /** Keys with a send in flight. */
+    synchronized int activeKeys() {
+        return busy.size();
+    }
+}
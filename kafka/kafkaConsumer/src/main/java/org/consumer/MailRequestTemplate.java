@@ -0,0 +1,118 @@
+package org.consumer;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+
+/**
+ * The parts of a provider call that never change, built once per sender: URI, headers, timeout
+ * and the form-encoded "from=...&to=" prefix.
+ *
+ * Per message only to/subject/text are form-encoded, measured first and then written straight into
+ * one exact-size byte[] that becomes the request body. No intermediate Strings, no StringBuilder.
+ * The array is not reused because the client reads it asynchronously after sendAsync returns.
+ * Encoding matches URLEncoder (UTF-8): letters, digits and ".-*_" as they are, space as '+',
+ * everything else %XX.
+ */
+public class MailRequestTemplate {
+
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SUBJECT = "&subject=".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TEXT = "&text=".getBytes(StandardCharsets.US_ASCII);
+
+    /** Skips the body of a 200 response, reads it only when the call failed and it is worth logging. */
+    public static final HttpResponse.BodyHandler<String> BODY_ON_ERROR = info -> info.statusCode() == 200
+            ? HttpResponse.BodySubscribers.replacing(null)
+            : HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8);
+
+    private final HttpRequest.Builder base;
+    private final byte[] fromPrefix;
+
+    public MailRequestTemplate(String url, String apiKey, String from, Duration timeout) {
+        this.base = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .header("Authorization", "Basic " + Base64.getEncoder().encodeToString(apiKey.getBytes(StandardCharsets.UTF_8)))
+                .timeout(timeout);
+
+        byte[] prefix = new byte[5 + encodedLength(from) + 4];
+        int pos = put("from=".getBytes(StandardCharsets.US_ASCII), prefix, 0);
+        pos = writeEncoded(from, prefix, pos);
+        put("&to=".getBytes(StandardCharsets.US_ASCII), prefix, pos);
+        this.fromPrefix = prefix;
+    }
+
+    /** copy() reuses the already validated URI and headers, only the body is new. */
+    public HttpRequest request(byte[] body) {
+        return base.copy().POST(HttpRequest.BodyPublishers.ofByteArray(body)).build();
+    }
+
+    public byte[] formBody(String to, String subject, String text) {
+        byte[] body = new byte[fromPrefix.length + encodedLength(to)
+                + SUBJECT.length + encodedLength(subject) + TEXT.length + encodedLength(text)];
+        int pos = put(fromPrefix, body, 0);
+        pos = writeEncoded(to, body, pos);
+        pos = put(SUBJECT, body, pos);
+        pos = writeEncoded(subject, body, pos);
+        pos = put(TEXT, body, pos);
+        writeEncoded(text, body, pos);
+        return body;
+    }
+
+    private static int put(byte[] constant, byte[] out, int pos) {
+        System.arraycopy(constant, 0, out, pos, constant.length);
+        return pos + constant.length;
+    }
+
+    static int encodedLength(String value) {
+        if (!isAscii(value)) {
+            int length = 0;
+            for (byte b : value.getBytes(StandardCharsets.UTF_8)) length += isUnreserved(b) || b == ' ' ? 1 : 3;
+            return length;
+        }
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            length += isUnreserved(c) || c == ' ' ? 1 : 3;
+        }
+        return length;
+    }
+
+    static int writeEncoded(String value, byte[] out, int pos) {
+        if (!isAscii(value)) {
+            // Rare here, pay for the UTF-8 bytes only then
+            for (byte b : value.getBytes(StandardCharsets.UTF_8)) pos = writeByte(b, out, pos);
+            return pos;
+        }
+        for (int i = 0; i < value.length(); i++) pos = writeByte((byte) value.charAt(i), out, pos);
+        return pos;
+    }
+
+    private static int writeByte(byte b, byte[] out, int pos) {
+        if (isUnreserved(b)) {
+            out[pos++] = b;
+        } else if (b == ' ') {
+            out[pos++] = '+';
+        } else {
+            out[pos++] = '%';
+            out[pos++] = HEX[(b >> 4) & 0xF];
+            out[pos++] = HEX[b & 0xF];
+        }
+        return pos;
+    }
+
+    private static boolean isUnreserved(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '.' || c == '-' || c == '*' || c == '_';
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) return false;
+        }
+        return true;
+    }
+}
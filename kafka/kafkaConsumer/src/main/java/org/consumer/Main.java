@@ -1,12 +1,16 @@
 package org.consumer;
 
+import org.kafkaShared.BodyStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 public class Main {
@@ -26,70 +30,310 @@ public class Main {
     private static final int LOW_BATCH_LIMIT  = 200;
     private static final long LOW_WAIT_MS     = 10000; // Low consumers querry frequency to kafka
 
+    // --- PIPELINING (poll next batch while earlier ones are still sending) ---
+    private static final boolean PIPELINED          = true;
+    private static final int MAX_IN_FLIGHT_RECORDS  = 1000; // per consumer, partitions pause above this
+    private static final long COMMIT_INTERVAL_MS    = 1000; // commitAsync at least this often
+    private static final int COMMIT_EVERY_RECORDS   = 500;  // ...or after this many completed records
+
+    // --- KEY-ORDERED PARALLEL MODE (one consumer per topic fans single records out to the workers) ---
+    // Same-key records are sent in offset order, other keys concurrently; throughput no longer needs
+    // one consumer per partition. Needs PIPELINED. Off by default: it changes the consumer topology the
+    // earlier TEST-N results were measured with
+    private static final boolean KEY_ORDERED       = false;
+    private static final boolean ORDER_BY_RECIPIENT = true; // false: by record key (key-i)
+    private static final int KEYED_BATCH_LIMIT     = 500;  // max.poll.records of the single consumer
+    private static final int KEYED_MAX_IN_FLIGHT   = 5000; // records sending or waiting for their key, per consumer
+
+    // --- ADAPTIVE SEND LIMITER (shared by all consumers, AIMD on response latency) ---
+    private static final int LIMIT_INITIAL            = 100;
+    private static final int LIMIT_MIN                = 10;
+    private static final int LIMIT_MAX                = 800;  // stay below the ~1000 open sockets limit
+    private static final double HIGH_RESERVED_SHARE   = 0.3;  // part of the limit LOW can never use
+    private static final long LATENCY_TARGET_MS       = 250;
+
+    // --- GROUP MEMBERSHIP (cooperative-sticky assignment is always on) ---
+    // Static group.instance.id per consumer: <instance>-<topic>-<index>. Give every process its own
+    // -Dconsumer.instance.id (defaults to the host name); a restart within SESSION_TIMEOUT_MS keeps its partitions
+    private static final boolean STATIC_MEMBERSHIP = true;
+    private static final String INSTANCE_ID       = System.getProperty("consumer.instance.id", hostName());
+    private static final int SESSION_TIMEOUT_MS   = 30_000;
+    private static final long DRAIN_TIMEOUT_MS    = 15_000; // in-flight sends a revoke or shutdown waits for
+
     // --- CONSUMER COUNTS ---
     private static final int HIGH_WORKERS = 6;
     private static final int LOW_WORKERS  = 1;
-    private static final int CONSUMER_POOL  = HIGH_WORKERS + LOW_WORKERS;
+
+    // --- EXECUTION MODE (-Dconsumer.execution=platform|virtual) ---
+    // Virtual mode limits concurrent batches by permits instead of pool size
+    private static final ExecutionMode EXECUTION_MODE = ExecutionMode.fromSystemProperty();
+    private static final int HIGH_VIRTUAL_PERMITS = Integer.getInteger("consumer.virtual.highPermits", 64);
+    private static final int LOW_VIRTUAL_PERMITS  = Integer.getInteger("consumer.virtual.lowPermits", 16);
+
+    // --- SHARED SCHEDULER (one worker pool for both topics instead of a static pool each) ---
+    private static final boolean SHARED_SCHEDULER = true;
+    // topic, priority level (lower first), weight, reserved minimum workers, maximum share of workers
+    private static final PriorityWorkerScheduler.TopicPolicy HIGH_POLICY =
+            new PriorityWorkerScheduler.TopicPolicy(HIGH_TOPIC, 0, 3, 2, 1.0);
+    private static final PriorityWorkerScheduler.TopicPolicy LOW_POLICY =
+            new PriorityWorkerScheduler.TopicPolicy(LOW_TOPIC, 1, 1, 1, 0.7);
+
+    // --- DEDUP (skip replayed records that were already delivered) ---
+    private static final boolean DEDUP_ENABLED    = true;
+    private static final long DEDUP_WINDOW_MS     = TimeUnit.MINUTES.toMillis(30);
+    private static final int DEDUP_MAX_ENTRIES    = 2_000_000; // ~100 bytes each
+
+    // --- SEND SHARDS (per provider endpoint / recipient domain: own clients, token bucket, VIP lane) ---
+    // name, provider url ("" = the stub), recipient domains (none = everything else), rate/s (0 = unlimited),
+    // burst, share of the burst only VIP may use
+    private static final List<SendShards.Config> SEND_SHARDS = List.of(
+            new SendShards.Config("default", "", List.of(), 5000, 500, 0.3),
+            new SendShards.Config("bulk-domains", "", List.of("standard.com"), 2000, 200, 0.3));
+
+    // --- RETRIES (failed sends go to <topic>.<tier>, then <topic>.dlt, instead of being dropped) ---
+    private static final boolean RETRY_TOPICS_ENABLED = true;
+    private static final List<RetryPublisher.Tier> RETRY_TIERS = List.of(
+            new RetryPublisher.Tier("retry-5s", 5_000),
+            new RetryPublisher.Tier("retry-1m", 60_000));
+    private static final int RETRY_BATCH_LIMIT = 100;
+    private static final long RETRY_WAIT_MS    = 500; // also how often a waiting retry partition is checked
+
+    // --- CIRCUIT BREAKER (per send shard: fail fast to the retry topic, pause partitions when all are open) ---
+    // window of calls, min calls, failure rate, slow call ms, slow call rate, open ms, half-open probes
+    private static final CircuitBreaker.Settings BREAKER =
+            new CircuitBreaker.Settings(200, 50, 0.5, 2_000, 0.8, 10_000, 10);
+
+    // --- DIGEST (STANDARD mail to one recipient within a window goes out as one email; VIP never waits) ---
+    // Records are committed once their digest is sent. Pays off with recipients that repeat
+    // (-Dproducer.recipients on the producer) and needs PIPELINED, a blocking batch would wait a window per poll
+    private static final boolean DIGEST_ENABLED      = false;
+    private static final long DIGEST_WINDOW_MS       = 2_000;
+    private static final long DIGEST_TICK_MS         = 100;     // time wheel resolution
+    private static final int DIGEST_MAX_ITEMS        = 50;      // a fuller digest goes out right away
+    private static final int DIGEST_MAX_RECIPIENTS   = 100_000; // open digests; past it the oldest go early
+
+    // --- CLAIM CHECK (-Dclaimcheck.dir, the producer's directory: large bodies are read from there) ---
+    private static final String CLAIM_CHECK_DIR      = System.getProperty("claimcheck.dir");
+    private static final long BODY_CACHE_BYTES       = 256L * 1024 * 1024; // campaign bodies repeat, most reads hit
+
+    // --- METRICS (histograms exported to metrics/*.csv instead of scraping the log) ---
+    private static final long METRICS_INTERVAL_MS = 5000;
+    private static final Path METRICS_DIR = Path.of("metrics");
+
+    // --- RUNTIME TUNING (-Dconsumer.admin.port=8091 turns it on, off by default) ---
+    // The batch limits, waits, worker and consumer counts above are starting values: change them while
+    // running with curl -d highBatchLimit=200 http://127.0.0.1:8091/tuning. Changes go to metrics/tuning_changes.csv
+    private static final int ADMIN_PORT = Integer.getInteger("consumer.admin.port", 0);
+    private static final int MAX_CONSUMERS_PER_TOPIC = 64;
+    private static final int MAX_WORKERS = 2000;
 
     // --- THREAD POOLS (Based on previous calculation) ---
-    private static final ExecutorService highWorkers = Executors.newFixedThreadPool(HIGH_WORKERS);
-    private static final ExecutorService lowWorkers  = Executors.newFixedThreadPool(LOW_WORKERS);
+    private static final PriorityWorkerScheduler sharedScheduler = SHARED_SCHEDULER ? newSharedScheduler() : null;
+    private static final ExecutorService highWorkers = SHARED_SCHEDULER
+            ? sharedScheduler.executorFor(HIGH_TOPIC)
+            : EXECUTION_MODE.newWorkerPool(HIGH_WORKERS, HIGH_VIRTUAL_PERMITS);
+    private static final ExecutorService lowWorkers  = SHARED_SCHEDULER
+            ? sharedScheduler.executorFor(LOW_TOPIC)
+            : EXECUTION_MODE.newWorkerPool(LOW_WORKERS, LOW_VIRTUAL_PERMITS);
+
+    // Worker threads (platform) or permits (virtual) per topic, changed by the tuning endpoint
+    private static volatile int highWorkerCount = EXECUTION_MODE == ExecutionMode.VIRTUAL ? HIGH_VIRTUAL_PERMITS : HIGH_WORKERS;
+    private static volatile int lowWorkerCount  = EXECUTION_MODE == ExecutionMode.VIRTUAL ? LOW_VIRTUAL_PERMITS : LOW_WORKERS;
 
-    private static final ExecutorService consumerRunnerPool = Executors.newFixedThreadPool(CONSUMER_POOL);
-    private static final List<KafkaEmailConsumer> activeConsumers = new ArrayList<>();
+    // Poll loops stay on platform threads in both modes: one long-lived thread per consumer, and
+    // KafkaConsumer blocks in its network selector, which would pin a virtual thread's carrier anyway.
+    // Not a fixed pool, consumers can be added at runtime
+    private static final ExecutorService consumerRunnerPool = Executors.newCachedThreadPool();
+    private static final List<KafkaEmailConsumer> activeConsumers = new ArrayList<>(); // retry topics
+
+    private static final AdaptiveConcurrencyLimiter sendLimiter = new AdaptiveConcurrencyLimiter(
+            LIMIT_INITIAL, LIMIT_MIN, LIMIT_MAX, HIGH_RESERVED_SHARE, LATENCY_TARGET_MS);
+
+    private static final MetricsExporter metricsExporter = new MetricsExporter(METRICS_DIR, METRICS_INTERVAL_MS, sendLimiter);
 
     public static void main(String[] args) throws Exception {
         configureWireMock();
-
-        // Ensure to one consumer per worker thread
-        for (int i = 0; i < HIGH_WORKERS; i++) {
-            KafkaEmailConsumer consumer = new KafkaEmailConsumer(
-                    HIGH_TOPIC, HIGH_GROUP, i, highWorkers,
-                    HIGH_BATCH_LIMIT, HIGH_WAIT_MS // 5 emails, 75ms wait
-            );
-            activeConsumers.add(consumer);
-            consumerRunnerPool.submit(consumer);
+        logger.info("Execution mode: {}", EXECUTION_MODE);
+        metricsExporter.start();
+        if (DEDUP_ENABLED) EmailSender.useDedup(new DedupCache(DEDUP_WINDOW_MS, DEDUP_MAX_ENTRIES));
+        EmailSender.useShards(SEND_SHARDS, BREAKER);
+        RetryPublisher retryPublisher = RETRY_TOPICS_ENABLED ? new RetryPublisher("localhost:9092", RETRY_TIERS) : null;
+        EmailSender.useRetries(retryPublisher);
+        if (DIGEST_ENABLED) {
+            EmailSender.useDigest(DIGEST_WINDOW_MS, DIGEST_TICK_MS, DIGEST_MAX_ITEMS, DIGEST_MAX_RECIPIENTS, sendLimiter);
         }
+        if (CLAIM_CHECK_DIR != null) {
+            EmailSender.useBodyStore(BodyStore.open(Path.of(CLAIM_CHECK_DIR), 64 * 1024 * 1024), BODY_CACHE_BYTES);
+        }
+
+        boolean keyOrdered = KEY_ORDERED && PIPELINED;
+
+        TopicConsumers highConsumers = new TopicConsumers(HIGH_TOPIC,
+                keyOrdered ? KEYED_BATCH_LIMIT : HIGH_BATCH_LIMIT, HIGH_WAIT_MS, consumerRunnerPool, DRAIN_TIMEOUT_MS + 5_000,
+                i -> {
+                    KafkaEmailConsumer consumer = new KafkaEmailConsumer(
+                            HIGH_TOPIC, HIGH_GROUP, i, highWorkers,
+                            keyOrdered ? KEYED_BATCH_LIMIT : HIGH_BATCH_LIMIT, HIGH_WAIT_MS // 5 emails, 75ms wait
+                    );
+                    consumer.withLimiter(sendLimiter, AdaptiveConcurrencyLimiter.Priority.HIGH);
+                    configurePipelining(consumer, keyOrdered);
+                    configureMembership(consumer, HIGH_TOPIC, i);
+                    return consumer;
+                });
+        TopicConsumers lowConsumers = new TopicConsumers(LOW_TOPIC,
+                keyOrdered ? KEYED_BATCH_LIMIT : LOW_BATCH_LIMIT, LOW_WAIT_MS, consumerRunnerPool, DRAIN_TIMEOUT_MS + 5_000,
+                i -> {
+                    KafkaEmailConsumer consumer = new KafkaEmailConsumer(
+                            LOW_TOPIC, LOW_GROUP, i, lowWorkers,
+                            keyOrdered ? KEYED_BATCH_LIMIT : LOW_BATCH_LIMIT, LOW_WAIT_MS // 30 emails, 200ms wait
+                    );
+                    consumer.withLimiter(sendLimiter, AdaptiveConcurrencyLimiter.Priority.LOW);
+                    configurePipelining(consumer, keyOrdered);
+                    configureMembership(consumer, LOW_TOPIC, i);
+                    return consumer;
+                });
 
-        for (int i = 0; i < LOW_WORKERS; i++) {
-            KafkaEmailConsumer consumer = new KafkaEmailConsumer(
-                    LOW_TOPIC, LOW_GROUP, i, lowWorkers,
-                    LOW_BATCH_LIMIT, LOW_WAIT_MS // 30 emails, 200ms wait
-            );
-            activeConsumers.add(consumer);
-            consumerRunnerPool.submit(consumer);
+        // Ensure to one consumer per worker thread (a single one in key-ordered mode)
+        highConsumers.resize(keyOrdered ? 1 : HIGH_WORKERS);
+        lowConsumers.resize(keyOrdered ? 1 : LOW_WORKERS);
+
+        // Retries run on the LOW workers and LOW permits, so they never take capacity from fresh VIP mail
+        if (RETRY_TOPICS_ENABLED) {
+            for (String topic : List.of(HIGH_TOPIC, LOW_TOPIC)) {
+                for (RetryPublisher.Tier tier : RETRY_TIERS) {
+                    String retryTopic = RetryPublisher.tierTopic(topic, tier);
+                    KafkaEmailConsumer consumer = new KafkaEmailConsumer(
+                            retryTopic, retryTopic + "-group", 0, lowWorkers, RETRY_BATCH_LIMIT, RETRY_WAIT_MS)
+                            .withRetryDelay()
+                            .withLimiter(sendLimiter, AdaptiveConcurrencyLimiter.Priority.LOW);
+                    configureMembership(consumer, retryTopic, 0);
+                    activeConsumers.add(consumer);
+                    consumerRunnerPool.submit(consumer);
+                }
+            }
         }
 
 
+        TuningControl tuning = tuningControl(highConsumers, lowConsumers, keyOrdered);
+        if (ADMIN_PORT > 0) {
+            try {
+                tuning.start(ADMIN_PORT);
+            } catch (IOException e) {
+                logger.warn("Tuning endpoint not started on port {}: {}", ADMIN_PORT, e.getMessage());
+            }
+        }
+
         // --- Graceful Shutdown ---
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             logger.info("Shutting down...");
+            tuning.stop();
 
             // 1. Signal all consumers to stop looping
+            highConsumers.shutdown();
+            lowConsumers.shutdown();
             for (KafkaEmailConsumer c : activeConsumers) c.shutdown();
-
-            // 2. Shut down the pools (stop accepting NEW tasks)
-            consumerRunnerPool.shutdown();
-            highWorkers.shutdown();
-            lowWorkers.shutdown();
+            // Open digests go now instead of at the end of their window, the drain waits for them
+            EmailSender.flushDigests();
 
             try {
-                // 3. Wait long enough for CURRENT tasks (HTTP requests) to finish.
-                if (!highWorkers.awaitTermination(15, TimeUnit.SECONDS)) highWorkers.shutdownNow();
-                if (!lowWorkers.awaitTermination(15, TimeUnit.SECONDS)) lowWorkers.shutdownNow();
+                // 2. Let every consumer drain its in-flight sends and commit them before it closes.
+                //    The worker pools keep running meanwhile, later sends of a key still need them
+                consumerRunnerPool.shutdown();
+                if (!consumerRunnerPool.awaitTermination(DRAIN_TIMEOUT_MS + 5_000, TimeUnit.MILLISECONDS)) {
+                    consumerRunnerPool.shutdownNow();
+                }
 
-                // Shutdown Consumer Runners too!
-                if (!consumerRunnerPool.awaitTermination(5, TimeUnit.SECONDS)) consumerRunnerPool.shutdownNow();
+                // 3. Nothing is dispatched anymore, stop the workers
+                highWorkers.shutdown();
+                lowWorkers.shutdown();
+                if (!highWorkers.awaitTermination(5, TimeUnit.SECONDS)) highWorkers.shutdownNow();
+                if (!lowWorkers.awaitTermination(5, TimeUnit.SECONDS)) lowWorkers.shutdownNow();
 
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
             }
+            // 4. Retry records of the last failures are flushed by close()
+            if (retryPublisher != null) retryPublisher.close();
+
+            // 5. Last export after the drain, so the final report covers every sent email
+            metricsExporter.stop();
+            BodyCache bodies = EmailSender.bodyCache();
+            if (bodies != null) {
+                logger.info("Body cache: {} hits, {} misses, {} KB cached", bodies.hits(), bodies.misses(),
+                        bodies.cachedBytes() / 1024);
+            }
             logger.info("Shutdown complete.");
         }));
 
         Thread.currentThread().join();
     }
 
+    private static TuningControl tuningControl(TopicConsumers high, TopicConsumers low, boolean keyOrdered) {
+        TuningControl tuning = new TuningControl(METRICS_DIR.resolve("tuning_changes.csv"));
+        for (TopicConsumers topic : List.of(high, low)) {
+            String prefix = topic == high ? "high" : "low";
+            tuning.register(prefix + "BatchLimit", 1, 100_000, topic::getBatchSize, v -> topic.setBatchSize((int) v))
+                    .register(prefix + "WaitMs", 0, 60_000, topic::getPollDurationMs, topic::setPollDurationMs)
+                    .register(prefix + "Workers", 1, MAX_WORKERS,
+                            () -> topic == high ? highWorkerCount : lowWorkerCount,
+                            v -> resizeWorkers(topic == high, (int) v))
+                    .register(prefix + "Consumers", 0, MAX_CONSUMERS_PER_TOPIC, topic::size, v -> {
+                        // Records of one recipient can sit on partitions of different consumers
+                        if (keyOrdered && v > 1) logger.warn("{} key-ordered consumers: recipient order now only holds per consumer", v);
+                        topic.resize((int) v);
+                    });
+        }
+        return tuning;
+    }
+
+    // Shared scheduler: its total follows the sum. Own pools: threads, or permits in virtual mode
+    private static void resizeWorkers(boolean high, int count) {
+        if (high) highWorkerCount = count;
+        else lowWorkerCount = count;
+        if (sharedScheduler != null) {
+            sharedScheduler.resize(highWorkerCount + lowWorkerCount);
+        } else if ((high ? highWorkers : lowWorkers) instanceof PermitBoundedExecutor permits) {
+            permits.resize(count);
+        } else if ((high ? highWorkers : lowWorkers) instanceof ThreadPoolExecutor pool) {
+            // core may never exceed max, so the order depends on the direction
+            if (count > pool.getMaximumPoolSize()) {
+                pool.setMaximumPoolSize(count);
+                pool.setCorePoolSize(count);
+            } else {
+                pool.setCorePoolSize(count);
+                pool.setMaximumPoolSize(count);
+            }
+        }
+    }
+
+    private static void configureMembership(KafkaEmailConsumer consumer, String topic, int index) {
+        consumer.withDrainTimeout(DRAIN_TIMEOUT_MS);
+        if (STATIC_MEMBERSHIP) consumer.withStaticMembership(INSTANCE_ID + "-" + topic + "-" + index, SESSION_TIMEOUT_MS);
+    }
+
+    private static String hostName() {
+        try {
+            return java.net.InetAddress.getLocalHost().getHostName();
+        } catch (java.net.UnknownHostException e) {
+            return "consumer";
+        }
+    }
+
+    private static void configurePipelining(KafkaEmailConsumer consumer, boolean keyOrdered) {
+        if (!PIPELINED) return;
+        consumer.withPipelining(keyOrdered ? KEYED_MAX_IN_FLIGHT : MAX_IN_FLIGHT_RECORDS, COMMIT_INTERVAL_MS, COMMIT_EVERY_RECORDS);
+        if (keyOrdered) consumer.withKeyOrdering(ORDER_BY_RECIPIENT);
+    }
+
+    // Same total capacity as the two static pools (or permit counts in virtual mode), now shared
+    private static PriorityWorkerScheduler newSharedScheduler() {
+        int workers = EXECUTION_MODE == ExecutionMode.VIRTUAL
+                ? HIGH_VIRTUAL_PERMITS + LOW_VIRTUAL_PERMITS
+                : HIGH_WORKERS + LOW_WORKERS;
+        return new PriorityWorkerScheduler(workers, EXECUTION_MODE.threadFactory("email-worker-"),
+                List.of(HIGH_POLICY, LOW_POLICY));
+    }
+
     // WireMock stubbing
     private static void configureWireMock() {
         try {
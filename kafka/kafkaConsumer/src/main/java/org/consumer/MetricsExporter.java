@@ -0,0 +1,167 @@
+package org.consumer;
+
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * Periodically drains EmailMetrics into two CSVs under the metrics directory:
+ *
+ *  - log_report.csv: this run so far, one row per (topic, consumer), same leading columns as
+ *    log-analyzer/log_report.csv (so visualize.py reads it) plus lag percentiles.
+ *  - metrics_timeseries.csv: one row per stream per interval with throughput, lag/provider/queue-wait
+ *    percentiles, batch size, in-flight and error rate.
+ *  - shards_timeseries.csv: one row per send shard per interval with VIP/STANDARD sends, errors,
+ *    time spent waiting for the shard's token bucket, in-flight requests and circuit breaker state.
+ */
+public class MetricsExporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetricsExporter.class);
+
+    private static final String REPORT_HEADER = "report_id,topic,consumer,total_mails,average_execution_time_(s),"
+            + "max_execution_time_(s),grand_total_mails,total_errors,p50_(s),p90_(s),p99_(s),p999_(s)";
+    private static final String SERIES_HEADER = "timestamp,topic,consumer,sent,errors,error_rate,throughput_(msg/s),"
+            + "lag_p50_(ms),lag_p99_(ms),lag_max_(ms),provider_p50_(ms),provider_p99_(ms),queue_wait_p99_(ms),"
+            + "avg_batch_size,in_flight,limiter_limit,limiter_in_flight,dedup_hits,dedup_misses,"
+            + "retried,dead_lettered,circuit_rejected,digested";
+    private static final String SHARD_HEADER = "timestamp,shard,rate_limit_(msg/s),vip_sent,standard_sent,errors,"
+            + "throughput_(msg/s),throttled_(ms),in_flight,breaker_state";
+
+    private final Path directory;
+    private final long intervalMs;
+    private final long reportId = System.currentTimeMillis() / 1000;
+    private final IntSupplier limiterLimit;
+    private final IntSupplier limiterInFlight;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "metrics-exporter");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private long lastExportMs = System.currentTimeMillis();
+
+    public MetricsExporter(Path directory, long intervalMs, AdaptiveConcurrencyLimiter limiter) {
+        this.directory = directory;
+        this.intervalMs = intervalMs;
+        this.limiterLimit = limiter != null ? limiter::getLimit : () -> -1;
+        this.limiterInFlight = limiter != null ? limiter::getInFlight : () -> -1;
+    }
+
+    public void start() {
+        scheduler.scheduleAtFixedRate(this::exportQuietly, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        logger.info("Metrics export every {}ms to {}", intervalMs, directory.toAbsolutePath());
+    }
+
+    /** Final export on shutdown, after consumers have drained. */
+    public void stop() {
+        scheduler.shutdown();
+        exportQuietly();
+    }
+
+    private void exportQuietly() {
+        try {
+            export();
+        } catch (Exception e) {
+            logger.warn("Metrics export failed: {}", e.getMessage());
+        }
+    }
+
+    private synchronized void export() throws IOException {
+        Files.createDirectories(directory);
+        long now = System.currentTimeMillis();
+        double seconds = Math.max(1, now - lastExportMs) / 1000.0;
+        lastExportMs = now;
+
+        List<EmailMetrics.Stream> streams = EmailMetrics.all();
+        Path series = directory.resolve("metrics_timeseries.csv");
+        boolean newSeries = !Files.exists(series);
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(series,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+            if (newSeries) out.println(SERIES_HEADER);
+
+            for (EmailMetrics.Stream s : streams) {
+                Histogram lag = s.lagInterval = s.lagMs.getIntervalHistogram(s.lagInterval);
+                Histogram provider = s.providerInterval = s.providerMicros.getIntervalHistogram(s.providerInterval);
+                Histogram queueWait = s.queueWaitInterval = s.queueWaitMs.getIntervalHistogram(s.queueWaitInterval);
+                Histogram batch = s.batchInterval = s.batchSize.getIntervalHistogram(s.batchInterval);
+                long sent = s.sent.sumThenReset();
+                long errors = s.errors.sumThenReset();
+
+                s.totalLagMs.add(lag);
+                s.totalSent += sent;
+                s.totalErrors += errors;
+
+                out.println(String.format(Locale.ROOT, "%d,%s,%d,%d,%d,%.4f,%.1f,%d,%d,%d,%.2f,%.2f,%d,%.1f,%d,%d,%d,%d,%d,%d,%d,%d,%d",
+                        now, s.topic, s.consumer, sent, errors,
+                        sent + errors == 0 ? 0.0 : (double) errors / (sent + errors),
+                        sent / seconds,
+                        lag.getValueAtPercentile(50), lag.getValueAtPercentile(99), lag.getMaxValue(),
+                        provider.getValueAtPercentile(50) / 1000.0, provider.getValueAtPercentile(99) / 1000.0,
+                        queueWait.getValueAtPercentile(99),
+                        batch.getTotalCount() == 0 ? 0.0 : batch.getMean(),
+                        s.inFlight.get(), limiterLimit.getAsInt(), limiterInFlight.getAsInt(),
+                        s.dedupHits.sumThenReset(), s.dedupMisses.sumThenReset(),
+                        s.retried.sumThenReset(), s.deadLettered.sumThenReset(), s.circuitRejected.sumThenReset(),
+                        s.digested.sumThenReset()));
+            }
+        }
+
+        writeShardSeries(now, seconds);
+        writeRunReport(streams);
+    }
+
+    private void writeShardSeries(long now, double seconds) throws IOException {
+        Path series = directory.resolve("shards_timeseries.csv");
+        boolean newSeries = !Files.exists(series);
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(series,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+            if (newSeries) out.println(SHARD_HEADER);
+
+            for (SendShards.Shard shard : EmailSender.shards().all()) {
+                long vip = shard.vipSent.sumThenReset();
+                long standard = shard.standardSent.sumThenReset();
+                out.println(String.format(Locale.ROOT, "%d,%s,%.0f,%d,%d,%d,%.1f,%d,%d,%s",
+                        now, shard.name, shard.ratePerSec(), vip, standard, shard.errors.sumThenReset(),
+                        (vip + standard) / seconds, TimeUnit.NANOSECONDS.toMillis(shard.throttledNanos.sumThenReset()),
+                        shard.inFlight.get(), shard.breakerState()));
+            }
+        }
+    }
+
+    // Rewritten every interval, renamed into place so a reader never sees half a file
+    private void writeRunReport(List<EmailMetrics.Stream> streams) throws IOException {
+        long grandTotal = 0;
+        for (EmailMetrics.Stream s : streams) grandTotal += s.totalSent;
+
+        Path tmp = directory.resolve("log_report.csv.tmp");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(tmp))) {
+            out.println(REPORT_HEADER);
+            for (EmailMetrics.Stream s : streams) {
+                Histogram h = s.totalLagMs;
+                if (h.getTotalCount() == 0 && s.totalErrors == 0) continue;
+
+                out.println(String.format(Locale.ROOT, "%d,%s,%d,%d,%.2f,%.2f,%d,%d,%.2f,%.2f,%.2f,%.2f",
+                        reportId, s.topic, s.consumer, s.totalSent,
+                        h.getMean() / 1000.0, h.getMaxValue() / 1000.0, grandTotal, s.totalErrors,
+                        h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(90) / 1000.0,
+                        h.getValueAtPercentile(99) / 1000.0, h.getValueAtPercentile(99.9) / 1000.0));
+            }
+        }
+        Files.move(tmp, directory.resolve("log_report.csv"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
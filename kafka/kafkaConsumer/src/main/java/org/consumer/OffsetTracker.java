@@ -0,0 +1,182 @@
+package org.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Tracks dispatched-but-unfinished offsets per partition so a pipelined consumer
+ * only ever commits the highest offset below which every record has completed.
+ * Batches may finish out of order; a slow batch holds back the commit for its partitions only.
+ * A failed record is no longer in flight, but nothing from its offset on is committed until the
+ * consumer has seeked back to it (takeReplays) and fetched it again, so it is sent again instead of lost.
+ */
+public class OffsetTracker {
+
+    private static class PartitionState {
+        final TreeSet<Long> pending = new TreeSet<>();
+        long highestCompleted = -1;   // highest offset that finished sending
+        long lastCommitted = -1;      // last "next offset" handed out for commit
+        long replayFrom = -1;         // lowest failed offset not fetched again yet, commits stop there
+        boolean seekPending;          // replayFrom not handed to the consumer yet
+    }
+
+    private final Map<TopicPartition, PartitionState> partitions = new HashMap<>();
+    private int pendingCount = 0;
+    private int completedSinceCommit = 0;
+
+    public synchronized void begin(Iterable<? extends ConsumerRecord<?, ?>> records) {
+        for (ConsumerRecord<?, ?> record : records) {
+            TopicPartition tp = new TopicPartition(record.topic(), record.partition());
+            PartitionState state = partitions.computeIfAbsent(tp, k -> new PartitionState());
+            if (state.pending.add(record.offset())) pendingCount++;
+            // Fetched again after the seek: pending holds it back from here on
+            if (state.replayFrom >= 0 && record.offset() <= state.replayFrom && !state.seekPending) state.replayFrom = -1;
+        }
+    }
+
+    public synchronized void complete(Iterable<? extends ConsumerRecord<?, ?>> records) {
+        for (ConsumerRecord<?, ?> record : records) {
+            PartitionState state = partitions.get(new TopicPartition(record.topic(), record.partition()));
+            if (state == null || !state.pending.remove(record.offset())) continue; // partition was revoked meanwhile
+
+            state.highestCompleted = Math.max(state.highestCompleted, record.offset());
+            pendingCount--;
+            completedSinceCommit++;
+        }
+        notifyAll();
+    }
+
+    /** Records whose send failed without being handed on (e.g. to a retry topic): they have to be read again. */
+    public synchronized void fail(Iterable<? extends ConsumerRecord<?, ?>> records) {
+        for (ConsumerRecord<?, ?> record : records) {
+            PartitionState state = partitions.get(new TopicPartition(record.topic(), record.partition()));
+            if (state == null || !state.pending.remove(record.offset())) continue;
+
+            pendingCount--;
+            if (state.replayFrom < 0 || record.offset() < state.replayFrom) state.replayFrom = record.offset();
+            state.seekPending = true;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Starts one record's send and settles its offset by the outcome: complete on success, fail when the
+     * future fails or send throws before returning one. Either way the partition's commits move on.
+     */
+    public <T> CompletableFuture<T> settle(ConsumerRecord<?, ?> record, Supplier<CompletableFuture<T>> send) {
+        CompletableFuture<T> sent;
+        try {
+            sent = send.get();
+        } catch (RuntimeException e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+        sent.whenComplete((ignored, ex) -> {
+            if (ex == null) complete(List.of(record));
+            else fail(List.of(record));
+        });
+        return sent;
+    }
+
+    /** Where each partition with failed records has to be read again from; each is handed out once. */
+    public synchronized Map<TopicPartition, Long> takeReplays() {
+        Map<TopicPartition, Long> replays = new HashMap<>();
+        for (Map.Entry<TopicPartition, PartitionState> entry : partitions.entrySet()) {
+            PartitionState state = entry.getValue();
+            if (!state.seekPending) continue;
+            state.seekPending = false;
+            replays.put(entry.getKey(), state.replayFrom);
+        }
+        return replays;
+    }
+
+    public synchronized int pendingCount() {
+        return pendingCount;
+    }
+
+    public synchronized int completedSinceCommit() {
+        return completedSinceCommit;
+    }
+
+    /**
+     * Offsets that moved forward since the last call. Kafka expects the NEXT offset to read,
+     * so everything below the lowest pending offset (or past the highest completed one) is safe.
+     */
+    public synchronized Map<TopicPartition, OffsetAndMetadata> committable() {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (Map.Entry<TopicPartition, PartitionState> entry : partitions.entrySet()) {
+            PartitionState state = entry.getValue();
+            long next = nextOffset(state);
+
+            if (next > state.lastCommitted && next > 0 && state.highestCompleted >= 0) {
+                state.lastCommitted = next;
+                offsets.put(entry.getKey(), new OffsetAndMetadata(next));
+            }
+        }
+        completedSinceCommit = 0;
+        return offsets;
+    }
+
+    /** Current safe offsets for the given partitions (all partitions when null), whether or not they changed. */
+    public synchronized Map<TopicPartition, OffsetAndMetadata> completedOffsets(Collection<TopicPartition> only) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (Map.Entry<TopicPartition, PartitionState> entry : partitions.entrySet()) {
+            if (only != null && !only.contains(entry.getKey())) continue;
+
+            PartitionState state = entry.getValue();
+            if (state.highestCompleted < 0) continue;
+            long next = nextOffset(state);
+            if (next <= 0) continue;
+            offsets.put(entry.getKey(), new OffsetAndMetadata(next));
+        }
+        return offsets;
+    }
+
+    private static long nextOffset(PartitionState state) {
+        long next = state.pending.isEmpty() ? state.highestCompleted + 1 : state.pending.first();
+        return state.replayFrom >= 0 ? Math.min(next, state.replayFrom) : next;
+    }
+
+    /** Drops state for partitions we no longer own; late completions for them are ignored. */
+    public synchronized void forget(Collection<TopicPartition> revoked) {
+        for (TopicPartition tp : revoked) {
+            PartitionState state = partitions.remove(tp);
+            if (state != null) pendingCount -= state.pending.size();
+        }
+        notifyAll();
+    }
+
+    /** Blocks until nothing is in flight or the timeout passes. Returns true when idle. */
+    public synchronized boolean awaitIdle(long timeoutMs) throws InterruptedException {
+        return awaitIdle(null, timeoutMs);
+    }
+
+    /** Same, for the given partitions only (all when null); a revoke drains just what it gives up. */
+    public synchronized boolean awaitIdle(Collection<TopicPartition> only, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (pendingIn(only) > 0) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) return false;
+            wait(remaining);
+        }
+        return true;
+    }
+
+    public synchronized int pendingIn(Collection<TopicPartition> only) {
+        if (only == null) return pendingCount;
+        int pending = 0;
+        for (TopicPartition tp : only) {
+            PartitionState state = partitions.get(tp);
+            if (state != null) pending += state.pending.size();
+        }
+        return pending;
+    }
+}
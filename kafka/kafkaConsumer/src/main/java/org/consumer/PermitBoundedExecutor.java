@@ -0,0 +1,93 @@
+package org.consumer;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps how many tasks of a thread-per-task executor run at once. Tasks take a permit
+ * inside their own (virtual) thread, so submitting never blocks the poll loop.
+ * The cap can change at runtime; lowering it lets running tasks finish and holds back new ones.
+ */
+public class PermitBoundedExecutor extends AbstractExecutorService {
+
+    // reducePermits is protected on Semaphore
+    private static class ResizableSemaphore extends Semaphore {
+        ResizableSemaphore(int permits) {
+            super(permits);
+        }
+
+        void reduce(int by) {
+            reducePermits(by);
+        }
+    }
+
+    private final ExecutorService delegate;
+    private final ResizableSemaphore permits;
+    private int maxPermits;
+
+    public PermitBoundedExecutor(ExecutorService delegate, int permits) {
+        this.delegate = delegate;
+        this.permits = new ResizableSemaphore(permits);
+        this.maxPermits = permits;
+    }
+
+    /** Available permits may go negative while more tasks than the new cap are still running. */
+    public synchronized void resize(int newPermits) {
+        if (newPermits < 1) throw new IllegalArgumentException("permits must be at least 1");
+        if (newPermits > maxPermits) permits.release(newPermits - maxPermits);
+        else if (newPermits < maxPermits) permits.reduce(maxPermits - newPermits);
+        maxPermits = newPermits;
+    }
+
+    public synchronized int getMaxPermits() {
+        return maxPermits;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        delegate.execute(() -> {
+            permits.acquireUninterruptibly();
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    public synchronized int getRunning() {
+        return maxPermits - permits.availablePermits();
+    }
+
+    public int getWaiting() {
+        return permits.getQueueLength();
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
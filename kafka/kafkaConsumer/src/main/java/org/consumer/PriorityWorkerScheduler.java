@@ -0,0 +1,329 @@
+package org.consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One worker pool for every topic instead of a static pool per topic.
+ *
+ * Each topic has its own run queue. All workers pull from all queues, so an idle worker takes
+ * whatever backlog exists (idle VIP capacity drains STANDARD and the other way round).
+ * The next task is picked in this order:
+ *   1. a topic below its reserved minimum of running tasks (no starvation),
+ *   2. the highest priority level with queued work (VIP always goes before STANDARD),
+ *   3. within a level, the topic with the fewest running tasks per unit of weight.
+ * A topic never runs on more than its maximum share of the workers.
+ *
+ * The worker count can change at runtime (resize): new workers start right away, surplus ones
+ * finish their current task and exit.
+ */
+public class PriorityWorkerScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(PriorityWorkerScheduler.class);
+
+    /** Per-topic scheduling policy. Lower priority value = more important. */
+    public static class TopicPolicy {
+        final String topic;
+        final int priority;
+        final int weight;
+        final int reservedMin;
+        final double maxShare;
+
+        public TopicPolicy(String topic, int priority, int weight, int reservedMin, double maxShare) {
+            this.topic = topic;
+            this.priority = priority;
+            this.weight = weight;
+            this.reservedMin = reservedMin;
+            this.maxShare = maxShare;
+        }
+    }
+
+    private static class Lane {
+        final TopicPolicy policy;
+        int maxWorkers;
+        final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+        int running = 0;
+
+        Lane(TopicPolicy policy, int workerCount) {
+            this.policy = policy;
+            size(workerCount);
+        }
+
+        void size(int workerCount) {
+            maxWorkers = Math.max(1, (int) (policy.maxShare * workerCount));
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final Condition terminated = lock.newCondition();
+
+    private final Map<String, Lane> lanes = new LinkedHashMap<>();
+    private final List<Lane> byPriority;
+    private final List<Thread> workers = new ArrayList<>();
+    private final ThreadFactory threadFactory;
+    private int liveWorkers;
+    private int targetWorkers;
+    private boolean shutdown = false;
+
+    public PriorityWorkerScheduler(int workerCount, ThreadFactory threadFactory, List<TopicPolicy> policies) {
+        for (TopicPolicy policy : policies) lanes.put(policy.topic, new Lane(policy, workerCount));
+        byPriority = new ArrayList<>(lanes.values());
+        byPriority.sort(Comparator.comparingInt(l -> l.policy.priority));
+        this.threadFactory = threadFactory;
+
+        lock.lock();
+        try {
+            targetWorkers = workerCount;
+            startWorkers(workerCount);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Changes the worker count; the lanes' share caps follow it. */
+    public void resize(int workerCount) {
+        if (workerCount < 1) throw new IllegalArgumentException("workerCount must be at least 1");
+        lock.lock();
+        try {
+            if (shutdown) return;
+            targetWorkers = workerCount;
+            for (Lane lane : byPriority) lane.size(workerCount);
+            if (workerCount > liveWorkers) startWorkers(workerCount - liveWorkers);
+            workAvailable.signalAll(); // idle surplus workers exit, raised caps may let a lane run
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getWorkerCount() {
+        lock.lock();
+        try {
+            return targetWorkers;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called with the lock held
+    private void startWorkers(int count) {
+        for (int i = 0; i < count; i++) {
+            Thread worker = threadFactory.newThread(this::workLoop);
+            workers.add(worker);
+            liveWorkers++;
+            worker.start();
+        }
+    }
+
+    /** ExecutorService view for one topic, drop-in for the old per-topic pools. */
+    public ExecutorService executorFor(String topic) {
+        Lane lane = lanes.get(topic);
+        if (lane == null) throw new IllegalArgumentException("No scheduling policy for topic " + topic);
+        return new LaneExecutor(lane);
+    }
+
+    public int getQueued(String topic) {
+        lock.lock();
+        try {
+            return lanes.get(topic).queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getRunning(String topic) {
+        lock.lock();
+        try {
+            return lanes.get(topic).running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueue(Lane lane, Runnable task) {
+        lock.lock();
+        try {
+            if (shutdown) throw new RejectedExecutionException("Scheduler is shut down");
+            lane.queue.addLast(task);
+            workAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called with the lock held
+    private Lane pickNext() {
+        for (Lane lane : byPriority) {
+            if (!lane.queue.isEmpty() && lane.running < lane.policy.reservedMin) return lane;
+        }
+
+        Lane best = null;
+        for (Lane lane : byPriority) {
+            if (best != null && lane.policy.priority > best.policy.priority) break; // lower levels wait
+            if (lane.queue.isEmpty() || lane.running >= lane.maxWorkers) continue;
+
+            if (best == null || (double) lane.running / lane.policy.weight < (double) best.running / best.policy.weight) {
+                best = lane;
+            }
+        }
+        return best;
+    }
+
+    private boolean allQueuesEmpty() {
+        for (Lane lane : byPriority) if (!lane.queue.isEmpty()) return false;
+        return true;
+    }
+
+    private void workLoop() {
+        while (true) {
+            Lane lane;
+            Runnable task;
+
+            lock.lock();
+            try {
+                while (true) {
+                    if (liveWorkers > targetWorkers && !shutdown) {
+                        liveWorkers--;
+                        workers.remove(Thread.currentThread());
+                        return;
+                    }
+                    if ((lane = pickNext()) != null) break;
+                    if (shutdown && allQueuesEmpty()) {
+                        if (--liveWorkers == 0) terminated.signalAll();
+                        workAvailable.signalAll();
+                        return;
+                    }
+                    workAvailable.awaitUninterruptibly();
+                }
+                task = lane.queue.pollFirst();
+                lane.running++;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                task.run();
+            } catch (Throwable t) {
+                logger.error("Task failed on topic {}", lane.policy.topic, t);
+            } finally {
+                lock.lock();
+                try {
+                    lane.running--;
+                    workAvailable.signalAll(); // a share cap may have opened for a waiting lane
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (liveWorkers > 0) {
+                if (nanos <= 0) return false;
+                nanos = terminated.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public List<Runnable> shutdownNow() {
+        List<Runnable> dropped = new ArrayList<>();
+        List<Thread> running;
+        lock.lock();
+        try {
+            shutdown = true;
+            for (Lane lane : byPriority) {
+                dropped.addAll(lane.queue);
+                lane.queue.clear();
+            }
+            running = new ArrayList<>(workers);
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (Thread worker : running) worker.interrupt();
+        return dropped;
+    }
+
+    private boolean isTerminated() {
+        lock.lock();
+        try {
+            return liveWorkers == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private class LaneExecutor extends AbstractExecutorService {
+        private final Lane lane;
+
+        LaneExecutor(Lane lane) {
+            this.lane = lane;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            enqueue(lane, command);
+        }
+
+        // Lifecycle calls act on the whole scheduler, so shutting down either view stops both
+        @Override
+        public void shutdown() {
+            PriorityWorkerScheduler.this.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return PriorityWorkerScheduler.this.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            lock.lock();
+            try {
+                return shutdown;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return PriorityWorkerScheduler.this.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return PriorityWorkerScheduler.this.awaitTermination(timeout, unit);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.kafkaShared.EmailPayload;
+import org.kafkaShared.EmailPayloadSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Moves failed emails on instead of dropping them: attempt n goes to "<topic>.<tier n>" with a
+ * not-before time of now + that tier's delay, after the last tier to "<topic>.dlt".
+ * The original topic/partition/offset, attempt count, first failure time and last error travel
+ * as headers, so the retry consumers (KafkaEmailConsumer.withRetryDelay) and whoever reads the
+ * DLT see where an email came from. The source record is committed as usual once the retry
+ * record is acknowledged, so a failing email never blocks its partition. A publish that fails
+ * leaves the source record uncommitted, and the consumer reads it again.
+ */
+public class RetryPublisher {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetryPublisher.class);
+
+    public static final String HEADER_ORIGINAL_TOPIC = "email-original-topic";
+    public static final String HEADER_ORIGINAL_PARTITION = "email-original-partition";
+    public static final String HEADER_ORIGINAL_OFFSET = "email-original-offset";
+    public static final String HEADER_ATTEMPT = "email-attempt";
+    public static final String HEADER_FIRST_FAILURE_MS = "email-first-failure-ms";
+    public static final String HEADER_ERROR = "email-error";
+    public static final String HEADER_NOT_BEFORE_MS = "email-not-before-ms";
+
+    public record Tier(String name, long delayMs) { }
+
+    private final Producer<String, EmailPayload> producer;
+    private final List<Tier> tiers;
+
+    public RetryPublisher(String bootstrapServers, List<Tier> tiers) {
+        this(new KafkaProducer<>(producerProps(bootstrapServers)), tiers);
+    }
+
+    // Tests hand in a MockProducer
+    RetryPublisher(Producer<String, EmailPayload> producer, List<Tier> tiers) {
+        this.producer = producer;
+        this.tiers = tiers;
+    }
+
+    private static Properties producerProps(String bootstrapServers) {
+        Properties props = new Properties();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, EmailPayloadSerializer.class.getName());
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.LINGER_MS_CONFIG, "5");
+        return props;
+    }
+
+    public static String tierTopic(String topic, Tier tier) {
+        return topic + "." + tier.name();
+    }
+
+    public static String deadLetterTopic(String topic) {
+        return topic + ".dlt";
+    }
+
+    /** Completes with true when the email went to the DLT, false when it was scheduled for another try. */
+    public CompletableFuture<Boolean> publish(EmailSender.EmailRequest email, String error) {
+        boolean dead = email.attempt >= tiers.size();
+        long now = System.currentTimeMillis();
+        String target = dead ? deadLetterTopic(email.originalTopic) : tierTopic(email.originalTopic, tiers.get(email.attempt));
+
+        Headers headers = new RecordHeaders();
+        put(headers, HEADER_ORIGINAL_TOPIC, email.originalTopic);
+        put(headers, HEADER_ORIGINAL_PARTITION, String.valueOf(email.originalPartition));
+        put(headers, HEADER_ORIGINAL_OFFSET, String.valueOf(email.originalOffset));
+        put(headers, HEADER_ATTEMPT, String.valueOf(email.attempt + 1));
+        put(headers, HEADER_FIRST_FAILURE_MS, String.valueOf(email.firstFailureMs > 0 ? email.firstFailureMs : now));
+        put(headers, HEADER_ERROR, error.length() > 500 ? error.substring(0, 500) : error);
+        if (!dead) put(headers, HEADER_NOT_BEFORE_MS, String.valueOf(now + tiers.get(email.attempt).delayMs()));
+
+        EmailPayload payload = new EmailPayload(email.to, email.subject, email.body, email.creationTime, email.messageId);
+        payload.bodyRef = email.bodyRef; // the retry carries the reference, not the body
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        try {
+            producer.send(new ProducerRecord<>(target, null, email.messageId, payload, headers), (metadata, ex) -> {
+                if (ex != null) {
+                    result.completeExceptionally(ex);
+                    return;
+                }
+                if (dead) {
+                    logger.error("Dead-lettered: {} | Attempts: {} | Origin: {}-{}@{} | Last error: {}", email.to,
+                            email.attempt + 1, email.originalTopic, email.originalPartition, email.originalOffset, error);
+                }
+                result.complete(dead);
+            });
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e); // buffer full past max.block.ms, producer closed
+        }
+        return result;
+    }
+
+    public void close() {
+        producer.close();
+    }
+
+    /** Fills the origin fields from the retry headers, or from the record itself on a first attempt. */
+    static void readOrigin(ConsumerRecord<?, ?> record, EmailSender.EmailRequest email) {
+        Headers headers = record.headers();
+        String originalTopic = header(headers, HEADER_ORIGINAL_TOPIC);
+        if (originalTopic == null) {
+            email.originalTopic = record.topic();
+            email.originalPartition = record.partition();
+            email.originalOffset = record.offset();
+            return;
+        }
+        email.originalTopic = originalTopic;
+        email.originalPartition = Integer.parseInt(header(headers, HEADER_ORIGINAL_PARTITION));
+        email.originalOffset = Long.parseLong(header(headers, HEADER_ORIGINAL_OFFSET));
+        email.attempt = Integer.parseInt(header(headers, HEADER_ATTEMPT));
+        email.firstFailureMs = Long.parseLong(header(headers, HEADER_FIRST_FAILURE_MS));
+    }
+
+    /** When a retry record may be sent, 0 for records without the header. */
+    static long notBefore(ConsumerRecord<?, ?> record) {
+        String value = header(record.headers(), HEADER_NOT_BEFORE_MS);
+        return value != null ? Long.parseLong(value) : 0;
+    }
+
+    private static void put(Headers headers, String key, String value) {
+        headers.add(key, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String header(Headers headers, String key) {
+        Header header = headers.lastHeader(key);
+        return header != null ? new String(header.value(), StandardCharsets.UTF_8) : null;
+    }
+}
@@ -0,0 +1,104 @@
+package org.consumer;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Routes every send to a shard by recipient domain. A shard is one provider endpoint with its own
+ * request template, token bucket, circuit breaker and two HttpClients (so two connection pools):
+ * one for VIP mail and one for STANDARD, so a STANDARD burst never holds the connections VIP needs.
+ * Domains that no shard lists go to the shard with no domains (the first one if none is empty).
+ */
+public class SendShards {
+
+    /** ratePerSec <= 0 = unlimited; vipReserve is the part of the burst STANDARD can not use. */
+    public record Config(String name, String url, List<String> domains, double ratePerSec, int burst, double vipReserve) {
+
+        public static Config unlimited(String name, String url) {
+            return new Config(name, url, List.of(), 0, 1, 0);
+        }
+    }
+
+    public static class Shard {
+        public final String name;
+        final MailRequestTemplate template;
+        final CircuitBreaker breaker;
+        private final TokenBucket bucket;
+        private final HttpClient vipClient;
+        private final HttpClient standardClient;
+
+        // Lock-free per-shard usage, drained by MetricsExporter
+        public final LongAdder vipSent = new LongAdder();
+        public final LongAdder standardSent = new LongAdder();
+        public final LongAdder errors = new LongAdder();
+        public final LongAdder throttledNanos = new LongAdder();
+        public final AtomicInteger inFlight = new AtomicInteger();
+
+        Shard(Config config, String apiKey, String from, Supplier<HttpClient> clients, CircuitBreaker.Settings breaker) {
+            this.name = config.name();
+            this.template = new MailRequestTemplate(config.url(), apiKey, from, Duration.ofSeconds(10));
+            this.breaker = new CircuitBreaker(config.name(), breaker);
+            this.bucket = new TokenBucket(config.ratePerSec(), config.burst(), config.vipReserve());
+            this.vipClient = clients.get();
+            this.standardClient = clients.get();
+        }
+
+        /** Waits for a token of this shard's bucket and returns the client of the lane. */
+        HttpClient acquire(boolean vip) {
+            throttledNanos.add(bucket.acquire(vip));
+            inFlight.incrementAndGet();
+            return vip ? vipClient : standardClient;
+        }
+
+        void completed(boolean vip, boolean success) {
+            inFlight.decrementAndGet();
+            if (!success) errors.increment();
+            else if (vip) vipSent.increment();
+            else standardSent.increment();
+        }
+
+        public double ratePerSec() {
+            return bucket.ratePerSec();
+        }
+
+        public CircuitBreaker.State breakerState() {
+            return breaker.state();
+        }
+    }
+
+    private final List<Shard> shards = new ArrayList<>();
+    private final Map<String, Shard> byDomain = new HashMap<>();
+    private final Shard fallback;
+
+    public SendShards(List<Config> configs, String apiKey, String from, Supplier<HttpClient> clients,
+                      CircuitBreaker.Settings breaker) {
+        if (configs.isEmpty()) throw new IllegalArgumentException("At least one send shard is needed");
+        Shard fallback = null;
+        for (Config config : configs) {
+            Shard shard = new Shard(config, apiKey, from, clients, breaker);
+            shards.add(shard);
+            for (String domain : config.domains()) byDomain.put(domain.toLowerCase(Locale.ROOT), shard);
+            if (fallback == null && config.domains().isEmpty()) fallback = shard;
+        }
+        this.fallback = fallback != null ? fallback : shards.get(0);
+    }
+
+    Shard route(String to) {
+        if (byDomain.isEmpty() || to == null) return fallback;
+        int at = to.lastIndexOf('@');
+        if (at < 0) return fallback;
+        return byDomain.getOrDefault(to.substring(at + 1).toLowerCase(Locale.ROOT), fallback);
+    }
+
+    public List<Shard> all() {
+        return shards;
+    }
+}
@@ -0,0 +1,80 @@
+package org.consumer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Rate limit for one send shard, lock-free: the whole state is one AtomicLong (GCRA, the
+ * "theoretical arrival time" form of a token bucket) updated by CAS.
+ *
+ * A full bucket holds burst tokens and refills at ratePerSec. VIP sends may empty it and, once it
+ * is empty, book the next refill slots ahead of everyone (they wait their turn, in order).
+ * STANDARD sends only take tokens while more than vipReserve of the burst is left, and never book
+ * ahead, so a STANDARD backlog can not push VIP mail behind it: the priority lane.
+ */
+public class TokenBucket {
+
+    private final long intervalNanos;        // time to refill one token
+    private final long vipToleranceNanos;    // how far ahead of "now" VIP may use up tokens
+    private final long standardToleranceNanos;
+    private final AtomicLong theoreticalArrival = new AtomicLong(System.nanoTime());
+
+    /** ratePerSec <= 0 means unlimited, acquire() then never waits. */
+    public TokenBucket(double ratePerSec, int burst, double vipReserve) {
+        this.intervalNanos = ratePerSec > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSec) : 0;
+        int tokens = Math.max(1, burst);
+        int standardTokens = Math.max(1, (int) Math.floor(tokens * (1 - vipReserve)));
+        this.vipToleranceNanos = (tokens - 1) * intervalNanos;
+        this.standardToleranceNanos = (standardTokens - 1) * intervalNanos;
+    }
+
+    /** Takes one token, waiting for it if needed. Returns how long it waited, in nanos. */
+    public long acquire(boolean vip) {
+        if (intervalNanos == 0) return 0;
+        long start = System.nanoTime();
+        if (vip) {
+            long sendAt = reserve();
+            parkUntil(sendAt);
+        } else {
+            while (!tryTakeStandard()) {
+                // Retry once the bucket could be back above the VIP reserve, VIP may have taken it again by then
+                long readyAt = theoreticalArrival.get() - standardToleranceNanos;
+                parkUntil(Math.max(readyAt, System.nanoTime() + 1000));
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    // VIP: book the earliest slot the bucket allows, possibly in the future
+    private long reserve() {
+        while (true) {
+            long now = System.nanoTime();
+            long tat = theoreticalArrival.get();
+            long sendAt = Math.max(now, tat - vipToleranceNanos);
+            if (theoreticalArrival.compareAndSet(tat, Math.max(tat, sendAt) + intervalNanos)) return sendAt;
+        }
+    }
+
+    // STANDARD: only a token that is available right now, above the VIP reserve
+    private boolean tryTakeStandard() {
+        while (true) {
+            long now = System.nanoTime();
+            long tat = theoreticalArrival.get();
+            if (tat - standardToleranceNanos > now) return false;
+            if (theoreticalArrival.compareAndSet(tat, Math.max(tat, now) + intervalNanos)) return true;
+        }
+    }
+
+    private static void parkUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    /** Configured rate, 0 when unlimited. */
+    public double ratePerSec() {
+        return intervalNanos == 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / (double) intervalNanos;
+    }
+}
@@ -0,0 +1,104 @@
+package org.consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.IntFunction;
+
+/**
+ * The consumers of one topic, so their count, batch size and poll wait can change while running.
+ * New consumers get the next index (and with it the next static instance id); removing one retires
+ * the highest ones, which drain their in-flight batches, commit and leave the group before this
+ * returns, so the indexes can be reused right away.
+ */
+public class TopicConsumers {
+
+    private static final Logger logger = LoggerFactory.getLogger(TopicConsumers.class);
+
+    private record Running(KafkaEmailConsumer consumer, Future<?> loop) { }
+
+    private final String topic;
+    private final IntFunction<KafkaEmailConsumer> factory; // index -> configured consumer, not started
+    private final ExecutorService runnerPool;
+    private final long closeTimeoutMs;
+    private final List<Running> consumers = new ArrayList<>();
+
+    private int batchSize;
+    private long pollDurationMs;
+
+    public TopicConsumers(String topic, int batchSize, long pollDurationMs, ExecutorService runnerPool,
+                          long closeTimeoutMs, IntFunction<KafkaEmailConsumer> factory) {
+        this.topic = topic;
+        this.batchSize = batchSize;
+        this.pollDurationMs = pollDurationMs;
+        this.runnerPool = runnerPool;
+        this.closeTimeoutMs = closeTimeoutMs;
+        this.factory = factory;
+    }
+
+    public synchronized void resize(int count) {
+        if (count < 0) throw new IllegalArgumentException("count must not be negative");
+        while (consumers.size() < count) {
+            KafkaEmailConsumer consumer = factory.apply(consumers.size());
+            consumer.setBatchSize(batchSize);
+            consumer.setPollDurationMs(pollDurationMs);
+            consumers.add(new Running(consumer, runnerPool.submit(consumer)));
+        }
+        // Retire all of them first so their drains overlap, then wait for each against one deadline
+        List<Running> removed = new ArrayList<>();
+        while (consumers.size() > count) {
+            Running last = consumers.remove(consumers.size() - 1);
+            last.consumer().retire();
+            removed.add(last);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(closeTimeoutMs);
+        for (Running running : removed) {
+            try {
+                running.loop().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                logger.warn("Consumer {} on {} did not close within {}ms", running.consumer().getConsumerIndex(), topic,
+                        closeTimeoutMs);
+            } catch (ExecutionException e) {
+                logger.warn("Consumer {} on {} failed while closing", running.consumer().getConsumerIndex(), topic,
+                        e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public synchronized void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        for (Running running : consumers) running.consumer().setBatchSize(batchSize);
+    }
+
+    public synchronized void setPollDurationMs(long pollDurationMs) {
+        this.pollDurationMs = pollDurationMs;
+        for (Running running : consumers) running.consumer().setPollDurationMs(pollDurationMs);
+    }
+
+    public synchronized int size() {
+        return consumers.size();
+    }
+
+    public synchronized int getBatchSize() {
+        return batchSize;
+    }
+
+    public synchronized long getPollDurationMs() {
+        return pollDurationMs;
+    }
+
+    /** Stops every consumer without waiting, the runner pool's shutdown waits for their drain. */
+    public synchronized void shutdown() {
+        for (Running running : consumers) running.consumer().shutdown();
+    }
+}
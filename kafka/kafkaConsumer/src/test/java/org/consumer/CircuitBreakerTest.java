@@ -0,0 +1,99 @@
+package org.consumer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    private static final long OPEN_MS = 50;
+    private static final long FAST = 1_000_000; // 1ms
+
+    // window 10, trips at 50% failures after 4 calls, 2 probes
+    private final CircuitBreaker breaker = new CircuitBreaker("test",
+            new CircuitBreaker.Settings(10, 4, 0.5, 1_000, 0.8, OPEN_MS, 2));
+
+    @Test
+    void tripsOpenAndRejectsCalls() {
+        trip();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.allowRequest().allowed());
+    }
+
+    @Test
+    void closesWhenEveryProbeSucceeds() throws InterruptedException {
+        trip();
+        Thread.sleep(OPEN_MS + 10);
+
+        CircuitBreaker.Admission first = breaker.allowRequest();
+        CircuitBreaker.Admission second = breaker.allowRequest();
+        assertTrue(first.probe() && second.probe());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertFalse(breaker.allowRequest().allowed()); // no probe left
+
+        breaker.record(first, true, FAST);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        breaker.record(second, true, FAST);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertFalse(breaker.allowRequest().probe());
+    }
+
+    @Test
+    void failedProbeReopens() throws InterruptedException {
+        trip();
+        Thread.sleep(OPEN_MS + 10);
+
+        CircuitBreaker.Admission probe = breaker.allowRequest();
+        breaker.record(probe, false, FAST);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.allowRequest().allowed());
+    }
+
+    @Test
+    void lateAnswersFromClosedCallsDoNotCount() throws InterruptedException {
+        // Admitted while CLOSED, answered only after the breaker went HALF_OPEN
+        CircuitBreaker.Admission late1 = breaker.allowRequest();
+        CircuitBreaker.Admission late2 = breaker.allowRequest();
+        trip();
+        Thread.sleep(OPEN_MS + 10);
+        CircuitBreaker.Admission probe = breaker.allowRequest();
+
+        breaker.record(late1, true, FAST);
+        breaker.record(late2, true, FAST);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+
+        // Releasing a non-probe frees no probe slot: one probe is left, not three
+        breaker.release(late1);
+        assertTrue(breaker.allowRequest().probe());
+        assertFalse(breaker.allowRequest().allowed());
+
+        breaker.release(probe);
+        assertTrue(breaker.allowRequest().probe());
+    }
+
+    @Test
+    void probesFromAnEarlierRoundDoNotCount() throws InterruptedException {
+        trip();
+        Thread.sleep(OPEN_MS + 10);
+        CircuitBreaker.Admission stale1 = breaker.allowRequest();
+        CircuitBreaker.Admission stale2 = breaker.allowRequest();
+
+        // Unanswered for openMs: back to OPEN, then a new round
+        Thread.sleep(OPEN_MS + 10);
+        assertFalse(breaker.allowRequest().allowed());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        Thread.sleep(OPEN_MS + 10);
+        assertTrue(breaker.allowRequest().probe());
+
+        breaker.record(stale1, true, FAST);
+        breaker.record(stale2, true, FAST);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+    }
+
+    private void trip() {
+        for (int i = 0; i < 4; i++) breaker.record(breaker.allowRequest(), i % 2 == 0, FAST);
+    }
+}
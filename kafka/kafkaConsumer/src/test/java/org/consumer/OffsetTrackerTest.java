@@ -0,0 +1,98 @@
+package org.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffsetTrackerTest {
+
+    private static final String TOPIC = "high-priority-mails";
+    private static final TopicPartition TP = new TopicPartition(TOPIC, 0);
+
+    @Test
+    void commitsOnlyUpToTheLowestUnfinishedOffset() {
+        OffsetTracker tracker = new OffsetTracker();
+        tracker.begin(records(0, 5));
+
+        tracker.complete(List.of(record(0), record(1), record(3)));
+        assertEquals(2, committed(tracker));
+
+        tracker.complete(List.of(record(2)));
+        assertEquals(4, committed(tracker));
+
+        tracker.complete(List.of(record(4)));
+        assertEquals(5, committed(tracker));
+        assertEquals(0, tracker.pendingCount());
+    }
+
+    @Test
+    void failedRecordHoldsBackCommitsUntilItIsReadAgain() {
+        OffsetTracker tracker = new OffsetTracker();
+        tracker.begin(records(0, 5));
+        tracker.complete(List.of(record(0), record(1)));
+        tracker.fail(List.of(record(2)));
+        tracker.complete(List.of(record(3), record(4)));
+
+        // Nothing is in flight anymore, but the commit stops at the failed record
+        assertEquals(0, tracker.pendingCount());
+        assertEquals(2, committed(tracker));
+        assertEquals(Map.of(TP, 2L), tracker.takeReplays());
+        assertTrue(tracker.takeReplays().isEmpty());
+        assertEquals(2, tracker.completedOffsets(null).get(TP).offset());
+
+        // The consumer seeked back and fetched 2..4 again
+        tracker.begin(records(2, 5));
+        assertEquals(2, tracker.completedOffsets(null).get(TP).offset());
+        tracker.complete(records(2, 5));
+        assertEquals(5, committed(tracker));
+    }
+
+    @Test
+    void keyedSendThatThrowsStillSettlesItsOffset() {
+        OffsetTracker tracker = new OffsetTracker();
+        KeyOrderedDispatcher dispatcher = new KeyOrderedDispatcher(Runnable::run);
+        tracker.begin(records(0, 3));
+
+        List<Long> sent = new ArrayList<>();
+        for (ConsumerRecord<String, String> record : records(0, 3)) {
+            dispatcher.submit("a@example.com", () -> tracker.settle(record, () -> {
+                // A synchronous throw before any future exists, e.g. from the HTTP client or template code
+                if (record.offset() == 1) throw new IllegalStateException("send failed before starting");
+                sent.add(record.offset());
+                return CompletableFuture.completedFuture(true);
+            }));
+        }
+
+        // The key moved on to record 2, and record 1 is not committed but read again
+        assertEquals(List.of(0L, 2L), sent);
+        assertEquals(0, dispatcher.activeKeys());
+        assertEquals(0, tracker.pendingCount());
+        assertEquals(1, committed(tracker));
+        assertEquals(Map.of(TP, 1L), tracker.takeReplays());
+    }
+
+    private static long committed(OffsetTracker tracker) {
+        tracker.committable();
+        Map<TopicPartition, OffsetAndMetadata> offsets = tracker.completedOffsets(null);
+        return offsets.containsKey(TP) ? offsets.get(TP).offset() : -1;
+    }
+
+    private static ConsumerRecord<String, String> record(long offset) {
+        return new ConsumerRecord<>(TOPIC, 0, offset, "key-" + offset, "mail-" + offset);
+    }
+
+    private static List<ConsumerRecord<String, String>> records(long from, long to) {
+        List<ConsumerRecord<String, String>> records = new ArrayList<>();
+        for (long offset = from; offset < to; offset++) records.add(record(offset));
+        return records;
+    }
+}
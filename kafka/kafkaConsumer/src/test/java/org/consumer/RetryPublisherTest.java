@@ -0,0 +1,118 @@
+package org.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.kafkaShared.EmailPayload;
+import org.kafkaShared.EmailPayloadSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryPublisherTest {
+
+    private static final String TOPIC = "low-priority-mails";
+    private static final List<RetryPublisher.Tier> TIERS = List.of(
+            new RetryPublisher.Tier("retry-5s", 5_000),
+            new RetryPublisher.Tier("retry-1m", 60_000));
+
+    @AfterEach
+    void resetSender() {
+        EmailSender.useRetries(null);
+        EmailSender.useShards(List.of(SendShards.Config.unlimited("default", "")), null);
+    }
+
+    @Test
+    void routesThroughTheTiersThenToTheDlt() {
+        MockProducer<String, EmailPayload> producer = producer(true);
+        RetryPublisher publisher = new RetryPublisher(producer, TIERS);
+
+        EmailSender.EmailRequest email = email(7);
+        assertFalse(publisher.publish(email, "HTTP 500").join());
+        email.attempt = 1;
+        assertFalse(publisher.publish(email, "HTTP 500").join());
+        email.attempt = 2;
+        assertTrue(publisher.publish(email, "HTTP 500").join());
+
+        List<ProducerRecord<String, EmailPayload>> sent = producer.history();
+        assertEquals(List.of(TOPIC + ".retry-5s", TOPIC + ".retry-1m", TOPIC + ".dlt"),
+                sent.stream().map(ProducerRecord::topic).toList());
+        assertEquals("1", header(sent.get(0), RetryPublisher.HEADER_ATTEMPT));
+        assertEquals("3", header(sent.get(2), RetryPublisher.HEADER_ATTEMPT));
+        assertEquals("7", header(sent.get(2), RetryPublisher.HEADER_ORIGINAL_OFFSET));
+        assertTrue(Long.parseLong(header(sent.get(1), RetryPublisher.HEADER_NOT_BEFORE_MS)) > System.currentTimeMillis());
+        assertNull(sent.get(2).headers().lastHeader(RetryPublisher.HEADER_NOT_BEFORE_MS)); // the DLT is not retried
+    }
+
+    @Test
+    void failedRetryPublishHoldsTheSourceOffset() throws InterruptedException {
+        MockProducer<String, EmailPayload> producer = producer(false);
+        EmailSender.useRetries(new RetryPublisher(producer, TIERS));
+        // Nothing listens there: every send fails and goes to the retry topic
+        EmailSender.useShards(List.of(SendShards.Config.unlimited("down", "http://127.0.0.1:1/v1/send-email")), null);
+
+        OffsetTracker tracker = new OffsetTracker();
+        List<ConsumerRecord<String, String>> records = List.of(record(0), record(1));
+        tracker.begin(records);
+
+        CompletableFuture<Boolean> first = tracker.settle(records.get(0), () -> EmailSender.send(email(0), null, null));
+        await(() -> producer.history().size() == 1);
+        producer.completeNext();
+
+        CompletableFuture<Boolean> second = tracker.settle(records.get(1), () -> EmailSender.send(email(1), null, null));
+        await(() -> producer.history().size() == 2);
+        producer.errorNext(new KafkaException("retry topic unavailable"));
+
+        await(() -> first.isDone() && second.isDone() && tracker.pendingCount() == 0);
+        assertFalse(first.join()); // failed send, retry record acknowledged
+        assertTrue(second.isCompletedExceptionally());
+
+        // Offset 0 is committed, offset 1 is not: it is read and sent again
+        tracker.committable();
+        TopicPartition tp = new TopicPartition(TOPIC, 0);
+        assertEquals(1, tracker.completedOffsets(null).get(tp).offset());
+        assertEquals(Map.of(tp, 1L), tracker.takeReplays());
+    }
+
+    private static MockProducer<String, EmailPayload> producer(boolean autoComplete) {
+        return new MockProducer<>(autoComplete, null, new StringSerializer(), new EmailPayloadSerializer());
+    }
+
+    private static EmailSender.EmailRequest email(long offset) {
+        EmailSender.EmailRequest email = new EmailSender.EmailRequest("user-" + offset + "@standard.com",
+                "Standard Update #" + offset, "Body", System.currentTimeMillis(), TOPIC, 0, "msg-" + offset);
+        email.originalPartition = 0;
+        email.originalOffset = offset;
+        return email;
+    }
+
+    private static ConsumerRecord<String, String> record(long offset) {
+        return new ConsumerRecord<>(TOPIC, 0, offset, "key-" + offset, "mail-" + offset);
+    }
+
+    private static String header(ProducerRecord<?, ?> record, String key) {
+        return new String(record.headers().lastHeader(key).value(), StandardCharsets.UTF_8);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) throw new AssertionError("timed out");
+            Thread.sleep(5);
+        }
+    }
+}
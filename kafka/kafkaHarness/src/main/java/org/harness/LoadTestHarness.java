@@ -0,0 +1,193 @@
+package org.harness;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.consumer.AdaptiveConcurrencyLimiter;
+import org.consumer.EmailMetrics;
+import org.consumer.KafkaEmailConsumer;
+import org.consumer.MetricsExporter;
+import org.consumer.PriorityWorkerScheduler;
+import org.kafkaShared.EmailPayload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+
+/**
+ * Runs the real producer and consumer code end to end without any external services:
+ * an embedded single-node KRaft broker (fresh per run), an in-process WireMock as mail provider,
+ * and the consumer wired the same way Main wires it. Every run of the matrix (see RunConfig)
+ * writes the usual metrics/log_report.csv into its own folder; the harness then collects all
+ * runs into one log_report.csv and a summary.csv under harness-results/<timestamp>/.
+ */
+public class LoadTestHarness {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadTestHarness.class);
+
+    private static final String HIGH_TOPIC = "high-priority-mails";
+    private static final String LOW_TOPIC  = "low-priority-mails";
+    private static final String MAIL_PATH  = "/v1/send-email";
+
+    private static final long WARMUP_MS  = Long.getLong("harness.warmupMs", 5000);   // let consumers get partitions
+    private static final long TIMEOUT_MS = Long.getLong("harness.timeoutSec", 600) * 1000;
+
+    private static final String SUMMARY_HEADER = "run," + RunConfig.csvHeader()
+            + ",duration_(s),throughput_(msg/s),delivered,total_errors,worst_p99_(s),timed_out";
+
+    public static void main(String[] args) throws Exception {
+        List<RunConfig> runs = RunConfig.matrixFromSystemProperties();
+        Path resultDir = Path.of(System.getProperty("harness.out", "harness-results"),
+                LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")));
+        Files.createDirectories(resultDir);
+        logger.info("{} runs, results in {}", runs.size(), resultDir.toAbsolutePath());
+
+        WireMockServer wireMock = new WireMockServer(options().dynamicPort().containerThreads(200).disableRequestJournal());
+        wireMock.start();
+        // Read once by EmailSender, so it has to be set before the first send
+        System.setProperty("consumer.mail.url", "http://localhost:" + wireMock.port() + MAIL_PATH);
+
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                RunConfig config = runs.get(i);
+                logger.info("Run {}/{}: {}", i + 1, runs.size(), config);
+                stubProvider(wireMock, config.providerDelayMs());
+
+                Path runDir = resultDir.resolve("run-" + (i + 1));
+                RunResult result = runOnce(config, runDir);
+                collect(resultDir, runDir, i + 1, config, result);
+                logger.info("Run {} done: {} delivered in {}s ({} msg/s){}", i + 1, result.delivered,
+                        String.format(Locale.ROOT, "%.1f", result.durationMs / 1000.0),
+                        String.format(Locale.ROOT, "%.0f", result.throughput()),
+                        result.timedOut ? " TIMED OUT" : "");
+            }
+        } finally {
+            wireMock.stop();
+        }
+        logger.info("Summary: {}", resultDir.resolve("summary.csv").toAbsolutePath());
+        System.exit(0); // consumer pools of the last run may still hold non-daemon threads
+    }
+
+    private record RunResult(long durationMs, long delivered, boolean timedOut) {
+        double throughput() {
+            return durationMs == 0 ? 0 : delivered * 1000.0 / durationMs;
+        }
+    }
+
+    // Same response as the WireMock mapping in Main, with an optional fixed provider latency
+    private static void stubProvider(WireMockServer wireMock, int delayMs) {
+        wireMock.resetAll();
+        wireMock.stubFor(post(urlEqualTo(MAIL_PATH)).willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"message\": \"Queued\", \"id\": \"fake-123\"}")
+                .withFixedDelay(delayMs)));
+    }
+
+    private static RunResult runOnce(RunConfig config, Path runDir) throws Exception {
+        EmailMetrics.reset();
+
+        EmbeddedKafkaKraftBroker broker = new EmbeddedKafkaKraftBroker(1, config.partitions(), HIGH_TOPIC, LOW_TOPIC);
+        broker.afterPropertiesSet();
+        String bootstrap = broker.getBrokersAsString();
+
+        // Wiring mirrors Main (shared scheduler, adaptive limiter, pipelining) with the run's parameters
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(100, 10, 800, 0.3, 250);
+        PriorityWorkerScheduler scheduler = new PriorityWorkerScheduler(
+                config.highConsumers() + config.lowConsumers(), Executors.defaultThreadFactory(),
+                List.of(new PriorityWorkerScheduler.TopicPolicy(HIGH_TOPIC, 0, 3, 2, 1.0),
+                        new PriorityWorkerScheduler.TopicPolicy(LOW_TOPIC, 1, 1, 1, 0.7)));
+        ExecutorService runners = Executors.newFixedThreadPool(config.highConsumers() + config.lowConsumers());
+        MetricsExporter exporter = new MetricsExporter(runDir, 5000, limiter);
+
+        List<KafkaEmailConsumer> consumers = new ArrayList<>();
+        for (int i = 0; i < config.highConsumers(); i++) {
+            consumers.add(new KafkaEmailConsumer(HIGH_TOPIC, "harness-high", i, scheduler.executorFor(HIGH_TOPIC),
+                    config.highBatch(), config.highWaitMs())
+                    .withLimiter(limiter, AdaptiveConcurrencyLimiter.Priority.HIGH)
+                    .withPipelining(1000, 1000, 500)
+                    .withBootstrapServers(bootstrap));
+        }
+        for (int i = 0; i < config.lowConsumers(); i++) {
+            consumers.add(new KafkaEmailConsumer(LOW_TOPIC, "harness-low", i, scheduler.executorFor(LOW_TOPIC),
+                    config.lowBatch(), config.lowWaitMs())
+                    .withLimiter(limiter, AdaptiveConcurrencyLimiter.Priority.LOW)
+                    .withPipelining(1000, 1000, 500)
+                    .withBootstrapServers(bootstrap));
+        }
+
+        boolean timedOut;
+        long start;
+        long delivered;
+        try {
+            exporter.start();
+            consumers.forEach(runners::submit);
+            Thread.sleep(WARMUP_MS);
+
+            // The producer's own send loop, both topics at once like producer Main
+            start = System.currentTimeMillis();
+            try (KafkaProducer<String, EmailPayload> producer =
+                         new KafkaProducer<>(org.producer.Main.producerProps(bootstrap))) {
+                Thread high = Thread.ofPlatform().start(() -> org.producer.Main.sendBatch(producer, HIGH_TOPIC, config.highMessages()));
+                Thread low = Thread.ofPlatform().start(() -> org.producer.Main.sendBatch(producer, LOW_TOPIC, config.lowMessages()));
+                high.join();
+                low.join();
+                producer.flush();
+            }
+
+            long deadline = start + TIMEOUT_MS;
+            while (EmailMetrics.finishedCount() < config.totalMessages() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            delivered = EmailMetrics.finishedCount();
+            timedOut = delivered < config.totalMessages();
+        } finally {
+            consumers.forEach(KafkaEmailConsumer::shutdown);
+            runners.shutdown();
+            runners.awaitTermination(30, TimeUnit.SECONDS);
+            scheduler.shutdown();
+            scheduler.awaitTermination(15, TimeUnit.SECONDS);
+            exporter.stop();
+            broker.destroy();
+        }
+        return new RunResult(System.currentTimeMillis() - start, delivered, timedOut);
+    }
+
+    // Appends the run's report rows (report_id = run number) to the combined report, plus one summary line
+    private static void collect(Path resultDir, Path runDir, int run, RunConfig config, RunResult result) throws IOException {
+        List<String> rows = Files.readAllLines(runDir.resolve("log_report.csv"));
+        Path combined = resultDir.resolve("log_report.csv");
+        if (!Files.exists(combined)) Files.writeString(combined, rows.get(0) + System.lineSeparator());
+
+        long errors = 0;
+        double worstP99 = 0;
+        List<String> renumbered = new ArrayList<>();
+        for (String row : rows.subList(1, rows.size())) {
+            String[] cols = row.split(",");
+            errors += Long.parseLong(cols[7]);
+            worstP99 = Math.max(worstP99, Double.parseDouble(cols[10]));
+            renumbered.add(run + row.substring(row.indexOf(',')));
+        }
+        Files.write(combined, renumbered, StandardOpenOption.APPEND);
+
+        Path summary = resultDir.resolve("summary.csv");
+        if (!Files.exists(summary)) Files.writeString(summary, SUMMARY_HEADER + System.lineSeparator());
+        Files.writeString(summary, String.format(Locale.ROOT, "%d,%s,%.2f,%.1f,%d,%d,%.2f,%s%n",
+                run, config.toCsv(), result.durationMs / 1000.0, result.throughput(), result.delivered,
+                errors, worstP99, result.timedOut), StandardOpenOption.APPEND);
+    }
+}
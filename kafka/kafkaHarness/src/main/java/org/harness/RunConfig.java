@@ -0,0 +1,70 @@
+package org.harness;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One point of the parameter matrix. Every harness.* system property takes a comma separated
+ * list, and the harness runs the cartesian product of all of them, e.g.
+ * -Dharness.partitions=1,6 -Dharness.highConsumers=1,6 gives four runs.
+ */
+public record RunConfig(int partitions, int highConsumers, int lowConsumers,
+                        int highBatch, int lowBatch, int highWaitMs, int lowWaitMs,
+                        int highMessages, int lowMessages, int providerDelayMs) {
+
+    // Defaults are the current Main settings, with a message count that finishes in about a minute
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+    static {
+        DEFAULTS.put("partitions", "6");
+        DEFAULTS.put("highConsumers", "6");
+        DEFAULTS.put("lowConsumers", "1");
+        DEFAULTS.put("highBatch", "50");
+        DEFAULTS.put("lowBatch", "200");
+        DEFAULTS.put("highWaitMs", "5");
+        DEFAULTS.put("lowWaitMs", "10000");
+        DEFAULTS.put("highMessages", "1000");
+        DEFAULTS.put("lowMessages", "10000");
+        DEFAULTS.put("providerDelayMs", "0");
+    }
+
+    public static List<RunConfig> matrixFromSystemProperties() {
+        List<int[]> axes = new ArrayList<>();
+        for (Map.Entry<String, String> entry : DEFAULTS.entrySet()) {
+            String value = System.getProperty("harness." + entry.getKey(), entry.getValue());
+            axes.add(Arrays.stream(value.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray());
+        }
+
+        List<RunConfig> runs = new ArrayList<>();
+        expand(axes, 0, new int[axes.size()], runs);
+        return runs;
+    }
+
+    private static void expand(List<int[]> axes, int depth, int[] current, List<RunConfig> out) {
+        if (depth == axes.size()) {
+            out.add(new RunConfig(current[0], current[1], current[2], current[3], current[4],
+                    current[5], current[6], current[7], current[8], current[9]));
+            return;
+        }
+        for (int value : axes.get(depth)) {
+            current[depth] = value;
+            expand(axes, depth + 1, current, out);
+        }
+    }
+
+    public int totalMessages() {
+        return highMessages + lowMessages;
+    }
+
+    static String csvHeader() {
+        return "partitions,high_consumers,low_consumers,high_batch,low_batch,high_wait_ms,low_wait_ms,"
+                + "high_messages,low_messages,provider_delay_ms";
+    }
+
+    String toCsv() {
+        return partitions + "," + highConsumers + "," + lowConsumers + "," + highBatch + "," + lowBatch + ","
+                + highWaitMs + "," + lowWaitMs + "," + highMessages + "," + lowMessages + "," + providerDelayMs;
+    }
+}
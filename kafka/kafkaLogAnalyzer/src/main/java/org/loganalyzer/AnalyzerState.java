@@ -0,0 +1,67 @@
+package org.loganalyzer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * state.json, shared with log-analyzer.py: report_count as before, plus log_offset, the byte
+ * position in the log the last run stopped at (incremental mode starts there) and log_head_crc.
+ * Flat keys only, the values are numbers or strings.
+ */
+class AnalyzerState {
+
+    private static final Pattern ENTRY = Pattern.compile("\"([^\"]+)\"\\s*:\\s*(\"([^\"]*)\"|[-\\d.]+)");
+
+    private final Path file;
+    private final Map<String, String> values = new LinkedHashMap<>();
+
+    private AnalyzerState(Path file) {
+        this.file = file;
+    }
+
+    static AnalyzerState load(Path file) throws IOException {
+        AnalyzerState state = new AnalyzerState(file);
+        if (Files.exists(file)) {
+            Matcher m = ENTRY.matcher(Files.readString(file));
+            while (m.find()) state.values.put(m.group(1), m.group(3) != null ? m.group(3) : m.group(2));
+        }
+        return state;
+    }
+
+    long getLong(String key, long defaultValue) {
+        String value = values.get(key);
+        try {
+            return value != null ? Long.parseLong(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    void putLong(String key, long value) {
+        values.put(key, Long.toString(value));
+    }
+
+    /** The report id to use now, the counter is bumped for the next run. */
+    long nextReportId() {
+        long id = getLong("report_count", 0);
+        putLong("report_count", id + 1);
+        return id;
+    }
+
+    void save() throws IOException {
+        StringBuilder json = new StringBuilder("{\n");
+        int i = 0;
+        for (Map.Entry<String, String> e : values.entrySet()) {
+            boolean number = e.getValue().matches("-?\\d+(\\.\\d+)?");
+            json.append("    \"").append(e.getKey()).append("\": ")
+                    .append(number ? e.getValue() : "\"" + e.getValue() + "\"")
+                    .append(++i < values.size() ? ",\n" : "\n");
+        }
+        Files.writeString(file, json.append("}").toString());
+    }
+}
@@ -0,0 +1,124 @@
+package org.loganalyzer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the consumer's delivery lines straight from the mapped bytes:
+ *
+ *   ... - Topic: high-priority-mails | Consumer: 3 | Sent to: user-1@vip.com | Created: 1700000000000 | Sent: 1700000000123
+ *
+ * Same matching as log-analyzer.py: fields are trimmed, execution time is Sent - Created, and any
+ * line containing "ERROR" counts as an error. One parser per chunk, it is not thread-safe.
+ */
+class DeliveryLineParser {
+
+    private static final byte[] ERROR = ascii("ERROR");
+    private static final byte[] TOPIC = ascii("Topic:");
+    private static final byte[] CONSUMER = ascii("Consumer:");
+    private static final byte[] CREATED = ascii("Created:");
+    private static final byte[] SENT = ascii("Sent:");
+
+    // Topic and consumer names repeat on every line, keep one String each
+    private final List<String> names = new ArrayList<>();
+
+    void parse(ByteBuffer buf, int from, int to, LogStats stats) {
+        int line = from;
+        while (line < to) {
+            int end = indexOf(buf, line, to, (byte) '\n');
+            if (end < 0) end = to;
+            parseLine(buf, line, end, stats);
+            stats.lines++;
+            line = end + 1;
+        }
+    }
+
+    private void parseLine(ByteBuffer buf, int from, int to, LogStats stats) {
+        if (indexOf(buf, from, to, ERROR) >= 0) stats.errors++;
+
+        int topic = indexOf(buf, from, to, TOPIC);
+        if (topic < 0) return;
+        topic += TOPIC.length;
+        int topicEnd = indexOf(buf, topic, to, (byte) '|');
+        if (topicEnd < 0) return;
+
+        int consumer = indexOf(buf, topicEnd, to, CONSUMER);
+        if (consumer < 0) return;
+        consumer += CONSUMER.length;
+        int consumerEnd = indexOf(buf, consumer, to, (byte) '|');
+        if (consumerEnd < 0) return;
+
+        int created = indexOf(buf, consumerEnd, to, CREATED);
+        if (created < 0) return;
+        long createdMs = number(buf, created + CREATED.length, to);
+        int sent = indexOf(buf, created, to, SENT);
+        if (sent < 0 || createdMs < 0) return;
+        long sentMs = number(buf, sent + SENT.length, to);
+        if (sentMs < 0) return;
+
+        stats.record(name(buf, topic, topicEnd), name(buf, consumer, consumerEnd), sentMs - createdMs,
+                Math.floorDiv(sentMs, 1000));
+    }
+
+    // Digits after optional spaces, -1 when there are none
+    private static long number(ByteBuffer buf, int from, int to) {
+        int pos = from;
+        while (pos < to && buf.get(pos) == ' ') pos++;
+        long value = 0;
+        int start = pos;
+        for (; pos < to; pos++) {
+            int digit = buf.get(pos) - '0';
+            if (digit < 0 || digit > 9) break;
+            value = value * 10 + digit;
+        }
+        return pos > start ? value : -1;
+    }
+
+    private String name(ByteBuffer buf, int from, int to) {
+        while (from < to && buf.get(from) == ' ') from++;
+        while (to > from && (buf.get(to - 1) == ' ' || buf.get(to - 1) == '\r')) to--;
+        for (String name : names) {
+            if (equals(buf, from, to, name)) return name;
+        }
+        byte[] bytes = new byte[to - from];
+        buf.get(from, bytes);
+        String name = new String(bytes, StandardCharsets.UTF_8);
+        if (names.size() < 256) names.add(name);
+        return name;
+    }
+
+    private static boolean equals(ByteBuffer buf, int from, int to, String name) {
+        if (name.length() != to - from) return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (buf.get(from + i) != (byte) name.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    static int indexOf(ByteBuffer buf, int from, int to, byte value) {
+        for (int i = from; i < to; i++) {
+            if (buf.get(i) == value) return i;
+        }
+        return -1;
+    }
+
+    static int indexOf(ByteBuffer buf, int from, int to, byte[] pattern) {
+        byte first = pattern[0];
+        int last = to - pattern.length;
+        outer:
+        for (int i = from; i <= last; i++) {
+            if (buf.get(i) != first) continue;
+            for (int j = 1; j < pattern.length; j++) {
+                if (buf.get(i + j) != pattern[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
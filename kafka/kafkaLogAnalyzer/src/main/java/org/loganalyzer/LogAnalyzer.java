@@ -0,0 +1,204 @@
+package org.loganalyzer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+
+/**
+ * Java replacement for log-analyzer.py: same input (the consumer's email-consumer.log), same
+ * log_report.csv and time_report.csv columns, plus
+ *   latency_report.csv     p50/p90/p99/p99.9/max per topic and per consumer (HdrHistogram)
+ *   throughput_report.csv  mails per topic per second, by the time they were sent
+ *
+ * The log is memory-mapped in windows of up to WINDOW_BYTES, each split into line-aligned chunks
+ * that are parsed in parallel on a fork-join pool and merged. Only whole lines are read: a line the
+ * consumer is still writing is left for the next run.
+ *
+ * With -Danalyzer.incremental=true a run starts at the offset the previous run stopped at (saved
+ * in state.json), so a log that is appended to across test runs is not read again from the start;
+ * the report then covers only the new lines. A log that is shorter than that offset, or starts
+ * differently than it did (CRC of the first bytes, also in state.json), was rotated or cleared and is
+ * read from the start.
+ *
+ *   -Danalyzer.log           the consumer log (default ../kafkaConsumer/logs/email-consumer.log)
+ *   -Danalyzer.out           where the reports and state.json go (default ../log-analyzer)
+ *   -Danalyzer.incremental   false
+ *   -Danalyzer.threads       parse threads (default: available processors)
+ */
+public class LogAnalyzer {
+
+    private static final long WINDOW_BYTES = 1L << 30; // a MappedByteBuffer holds at most 2 GB
+    private static final int HEAD_BYTES = 256;
+    private static final DateTimeFormatter SECOND = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
+
+    private static final String LOG_HEADER = "report_id,topic,consumer,total_mails,average_execution_time_(s),"
+            + "max_execution_time_(s),grand_total_mails,total_errors";
+    private static final String TIME_HEADER = "report_id,priority,avr_execution_time,max_execution_time";
+    private static final String LATENCY_HEADER = "report_id,topic,consumer,total_mails,p50_(s),p90_(s),p99_(s),"
+            + "p999_(s),max_(s)";
+    private static final String THROUGHPUT_HEADER = "report_id,topic,second,mails";
+
+    public static void main(String[] args) throws Exception {
+        Path log = Path.of(System.getProperty("analyzer.log", "../kafkaConsumer/logs/email-consumer.log"));
+        Path out = Path.of(System.getProperty("analyzer.out", "../log-analyzer"));
+        boolean incremental = Boolean.getBoolean("analyzer.incremental");
+        int threads = Integer.getInteger("analyzer.threads", Runtime.getRuntime().availableProcessors());
+
+        if (!Files.exists(log)) {
+            System.out.println("Error: The file '" + log + "' was not found.");
+            return;
+        }
+        Files.createDirectories(out);
+        AnalyzerState state = AnalyzerState.load(out.resolve("state.json"));
+
+        long began = System.nanoTime();
+        long start;
+        long head;
+        Result result;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.READ)) {
+            long size = channel.size();
+            head = headCrc(channel);
+            start = incremental ? state.getLong("log_offset", 0) : 0;
+            if (start > 0 && (start > size || head != state.getLong("log_head_crc", head))) {
+                System.out.println("Log was rotated or cleared since the last run, reading it from the start");
+                start = 0;
+            }
+            result = analyze(channel, start, size, pool);
+        } finally {
+            pool.shutdown();
+        }
+        long tookMs = (System.nanoTime() - began) / 1_000_000;
+
+        state.putLong("log_offset", result.end);
+        state.putLong("log_head_crc", head);
+        if (result.stats.lines == 0) {
+            state.save();
+            System.out.println("No new lines since offset " + start);
+            return;
+        }
+
+        long reportId = state.nextReportId();
+        writeReports(out, reportId, result.stats);
+        state.save();
+
+        System.out.printf(Locale.ROOT, "Success! Reports updated in %s (Report ID: %d, %d lines, %d mails, "
+                        + "%d errors, %.1f MB in %d ms on %d threads)%n",
+                out, reportId, result.stats.lines, result.stats.totalMails(), result.stats.errors,
+                (result.end - start) / 1e6, tookMs, threads);
+    }
+
+    private record Result(LogStats stats, long end) { }
+
+    // Whole lines in [start, size), window by window; end is where the next incremental run starts
+    private static Result analyze(FileChannel channel, long start, long size, ForkJoinPool pool) throws IOException {
+        LogStats total = new LogStats();
+        long pos = start;
+        while (pos < size) {
+            long length = Math.min(WINDOW_BYTES, size - pos);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, pos, length);
+            int whole = lastLineEnd(window, (int) length);
+            if (whole == 0) {
+                if (length == WINDOW_BYTES) throw new IOException("Line longer than " + WINDOW_BYTES + " bytes at " + pos);
+                break; // only a line still being written
+            }
+            total.merge(pool.invoke(new ParseTask(window, 0, whole)));
+            pos += whole;
+        }
+        return new Result(total, pos);
+    }
+
+    // The first line carries a timestamp, so a new log starts differently than the old one did
+    private static long headCrc(FileChannel channel) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(HEAD_BYTES);
+        while (head.hasRemaining() && channel.read(head, head.position()) > 0) { }
+        CRC32 crc = new CRC32();
+        crc.update(head.flip());
+        return crc.getValue();
+    }
+
+    private static int lastLineEnd(ByteBuffer window, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (window.get(i) == '\n') return i + 1;
+        }
+        return 0;
+    }
+
+    private static void writeReports(Path out, long reportId, LogStats stats) throws IOException {
+        long grandTotal = stats.totalMails();
+        Map<LogStats.Key, Latency> byConsumer = new TreeMap<>((a, b) -> a.topic().equals(b.topic())
+                ? a.consumer().compareTo(b.consumer()) : a.topic().compareTo(b.topic()));
+        byConsumer.putAll(stats.byConsumer);
+        Map<String, Latency> byTopic = stats.byTopic();
+
+        try (Writer csv = appender(out.resolve("log_report.csv"), LOG_HEADER)) {
+            for (Map.Entry<LogStats.Key, Latency> e : byConsumer.entrySet()) {
+                Latency l = e.getValue();
+                csv.write(String.format(Locale.ROOT, "%d,%s,%s,%d,%.2f,%.2f,%d,%d%n", reportId, e.getKey().topic(),
+                        e.getKey().consumer(), l.count, l.avgSeconds(), l.maxSeconds(), grandTotal, stats.errors));
+            }
+        }
+
+        // Priority groups as before: topics starting with high / low, retry topics included
+        Map<String, Latency> byPriority = new TreeMap<>();
+        byTopic.forEach((topic, latency) -> {
+            String lower = topic.toLowerCase(Locale.ROOT);
+            String priority = lower.startsWith("high") ? "high" : lower.startsWith("low") ? "low" : null;
+            if (priority != null) byPriority.computeIfAbsent(priority, p -> new Latency()).add(latency);
+        });
+        try (Writer csv = appender(out.resolve("time_report.csv"), TIME_HEADER)) {
+            for (String priority : new String[]{"high", "low"}) {
+                Latency l = byPriority.get(priority);
+                if (l == null) continue;
+                csv.write(String.format(Locale.ROOT, "%d,%s,%.2f,%.2f%n", reportId, priority, l.avgSeconds(), l.maxSeconds()));
+            }
+        }
+
+        try (Writer csv = appender(out.resolve("latency_report.csv"), LATENCY_HEADER)) {
+            for (Map.Entry<String, Latency> e : byTopic.entrySet()) {
+                csv.write(latencyRow(reportId, e.getKey(), "all", e.getValue()));
+            }
+            for (Map.Entry<LogStats.Key, Latency> e : byConsumer.entrySet()) {
+                csv.write(latencyRow(reportId, e.getKey().topic(), e.getKey().consumer(), e.getValue()));
+            }
+        }
+
+        try (Writer csv = appender(out.resolve("throughput_report.csv"), THROUGHPUT_HEADER)) {
+            for (Map.Entry<String, TreeMap<Long, Long>> topic : new TreeMap<>(stats.perSecond).entrySet()) {
+                for (Map.Entry<Long, Long> second : topic.getValue().entrySet()) {
+                    csv.write(reportId + "," + topic.getKey() + ","
+                            + SECOND.format(Instant.ofEpochSecond(second.getKey())) + "," + second.getValue() + "\n");
+                }
+            }
+        }
+    }
+
+    private static String latencyRow(long reportId, String topic, String consumer, Latency l) {
+        return String.format(Locale.ROOT, "%d,%s,%s,%d,%.3f,%.3f,%.3f,%.3f,%.3f%n", reportId, topic, consumer, l.count,
+                l.percentileSeconds(50), l.percentileSeconds(90), l.percentileSeconds(99), l.percentileSeconds(99.9),
+                l.maxSeconds());
+    }
+
+    private static Writer appender(Path file, String header) throws IOException {
+        boolean exists = Files.exists(file) && Files.size(file) > 0;
+        Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (!exists) writer.write(header + "\n");
+        return writer;
+    }
+}
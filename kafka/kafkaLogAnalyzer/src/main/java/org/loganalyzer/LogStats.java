@@ -0,0 +1,52 @@
+package org.loganalyzer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * What one chunk of the log contained. Chunks are parsed independently and merged, so nothing
+ * here depends on the order lines are seen in.
+ */
+class LogStats {
+
+    record Key(String topic, String consumer) { }
+
+    final Map<Key, Latency> byConsumer = new HashMap<>();
+    // Mails per topic per second they were sent, for throughput over time
+    final Map<String, TreeMap<Long, Long>> perSecond = new HashMap<>();
+    long errors;
+    long lines;
+
+    void record(String topic, String consumer, long executionMs, long sentSecond) {
+        byConsumer.computeIfAbsent(new Key(topic, consumer), k -> new Latency()).record(executionMs);
+        perSecond.computeIfAbsent(topic, t -> new TreeMap<>()).merge(sentSecond, 1L, Long::sum);
+    }
+
+    LogStats merge(LogStats other) {
+        other.byConsumer.forEach((key, latency) -> byConsumer.merge(key, latency, (a, b) -> {
+            a.add(b);
+            return a;
+        }));
+        other.perSecond.forEach((topic, seconds) -> {
+            TreeMap<Long, Long> mine = perSecond.computeIfAbsent(topic, t -> new TreeMap<>());
+            seconds.forEach((second, mails) -> mine.merge(second, mails, Long::sum));
+        });
+        errors += other.errors;
+        lines += other.lines;
+        return this;
+    }
+
+    long totalMails() {
+        long total = 0;
+        for (Latency latency : byConsumer.values()) total += latency.count;
+        return total;
+    }
+
+    /** All consumers of each topic together. */
+    Map<String, Latency> byTopic() {
+        Map<String, Latency> topics = new TreeMap<>();
+        byConsumer.forEach((key, latency) -> topics.computeIfAbsent(key.topic(), t -> new Latency()).add(latency));
+        return topics;
+    }
+}
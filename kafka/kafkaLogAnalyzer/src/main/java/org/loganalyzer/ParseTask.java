@@ -0,0 +1,39 @@
+package org.loganalyzer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parses [from, to) of a mapped window, both on line starts. Ranges above LEAF_BYTES are split
+ * in two at the first line start after the middle and run as forked subtasks.
+ */
+class ParseTask extends RecursiveTask<LogStats> {
+
+    static final int LEAF_BYTES = 4 * 1024 * 1024;
+
+    private final ByteBuffer buf;
+    private final int from;
+    private final int to;
+
+    ParseTask(ByteBuffer buf, int from, int to) {
+        this.buf = buf;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected LogStats compute() {
+        if (to - from > LEAF_BYTES) {
+            int newline = DeliveryLineParser.indexOf(buf, from + (to - from) / 2, to, (byte) '\n');
+            if (newline >= 0 && newline + 1 < to) {
+                ParseTask left = new ParseTask(buf, from, newline + 1);
+                left.fork();
+                LogStats right = new ParseTask(buf, newline + 1, to).compute();
+                return left.join().merge(right);
+            }
+        }
+        LogStats stats = new LogStats();
+        new DeliveryLineParser().parse(buf, from, to, stats);
+        return stats;
+    }
+}
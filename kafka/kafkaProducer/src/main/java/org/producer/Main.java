@@ -4,20 +4,50 @@ import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.kafkaShared.EmailPayload;
+import org.kafkaShared.EmailPayloadSerializer;
 
+import java.util.List;
 import java.util.Properties;
+import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 public class Main {
+
+    // "binary" (compact, versioned) or "json" (old format, consumers read both)
+    private static final String WIRE_FORMAT = "binary";
+
+    // --- LOAD MODE (-Dproducer.mode=burst|open-loop) ---
+    // burst: fixed counts as fast as two threads can. open-loop: target rate per topic for a
+    // fixed duration, rate spec see RateProfile, arrivals evenly spaced or Poisson
+    private static final String MODE       = System.getProperty("producer.mode", "burst");
+    private static final String HIGH_RATE  = System.getProperty("producer.rate.high", "constant:100");
+    private static final String LOW_RATE   = System.getProperty("producer.rate.low", "constant:1000");
+    private static final boolean POISSON   = "poisson".equals(System.getProperty("producer.arrivals", "uniform"));
+    private static final long DURATION_S   = Long.getLong("producer.duration", 60);
+    private static final long REPORT_MS    = 1000;
+
+    // -Dproducer.recipients=N: message i goes to user-(i % N), so recipients repeat and the
+    // consumer's digest mode has mail to merge. 0 = every message to its own recipient
+    private static final int RECIPIENTS   = Integer.getInteger("producer.recipients", 0);
+
+    // -Dproducer.body.bytes=N pads every body to N characters, the same campaign body for all.
+    // -Dclaimcheck.dir=<dir> stores bodies of at least -Dclaimcheck.threshold characters there and
+    // sends a reference instead; the consumer needs the same -Dclaimcheck.dir
+    private static final int BODY_BYTES           = Integer.getInteger("producer.body.bytes", 0);
+    private static final String CLAIM_CHECK_DIR   = System.getProperty("claimcheck.dir");
+    private static final int CLAIM_CHECK_THRESHOLD = Integer.getInteger("claimcheck.threshold", 4096);
+    static final String BODY = body(BODY_BYTES);
+
     public static void main(String[] args) {
-        Properties props = new Properties();
-        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092");
-        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
-        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+        if ("open-loop".equals(MODE)) {
+            runOpenLoop();
+            return;
+        }
 
-        try (KafkaProducer<String, String> producer = new KafkaProducer<>(props)) {
+        try (KafkaProducer<String, EmailPayload> producer = new KafkaProducer<>(producerProps("localhost:9092"))) {
             ExecutorService executor = Executors.newFixedThreadPool(2);
 
             // Both threads work simultaneously, 2nd parameter is number of mails per topic
@@ -35,23 +65,95 @@ public class Main {
         }
     }
 
-    private static void sendBatch(KafkaProducer<String, String> producer, String topic, int count) {
+    private static void runOpenLoop() {
+        try (KafkaProducer<String, EmailPayload> producer = new KafkaProducer<>(producerProps("localhost:9092"))) {
+            List<OpenLoopGenerator> generators = List.of(
+                    new OpenLoopGenerator(producer, "high-priority-mails", RateProfile.parse(HIGH_RATE, DURATION_S), POISSON, DURATION_S),
+                    new OpenLoopGenerator(producer, "low-priority-mails", RateProfile.parse(LOW_RATE, DURATION_S), POISSON, DURATION_S));
+
+            long startNanos = System.nanoTime();
+            long startEpochMs = System.currentTimeMillis();
+            ExecutorService executor = Executors.newFixedThreadPool(generators.size());
+            for (OpenLoopGenerator generator : generators) {
+                generator.start(startNanos, startEpochMs);
+                executor.submit(generator);
+            }
+            executor.shutdown();
+            System.out.println("Open-loop run for " + DURATION_S + "s, high " + HIGH_RATE + ", low " + LOW_RATE
+                    + (POISSON ? ", poisson arrivals" : ", uniform arrivals"));
+
+            long[] lastSent = new long[generators.size()];
+            long[] maxBehindMs = new long[generators.size()];
+            long lastReport = System.nanoTime();
+            while (!executor.awaitTermination(REPORT_MS, TimeUnit.MILLISECONDS)) {
+                long now = System.nanoTime();
+                double seconds = (now - lastReport) / 1e9;
+                lastReport = now;
+                for (int g = 0; g < generators.size(); g++) {
+                    OpenLoopGenerator generator = generators.get(g);
+                    long sent = generator.sent();
+                    maxBehindMs[g] = Math.max(maxBehindMs[g], generator.behindMs());
+                    System.out.printf("[LOAD] %s target=%.0f/s achieved=%.0f/s sent=%d unacked=%d errors=%d behind=%dms backlog=%d%n",
+                            generator.topic(), generator.currentRate(), (sent - lastSent[g]) / seconds, sent,
+                            generator.unacked(), generator.errors(), generator.behindMs(), generator.backlog());
+                    lastSent[g] = sent;
+                }
+            }
+
+            producer.flush();
+            double totalSeconds = (System.nanoTime() - startNanos) / 1e9;
+            for (int g = 0; g < generators.size(); g++) {
+                OpenLoopGenerator generator = generators.get(g);
+                System.out.printf("[LOAD SUMMARY] %s sent=%d acked=%d errors=%d avg=%.0f/s max_behind=%dms%n",
+                        generator.topic(), generator.sent(), generator.acked(), generator.errors(),
+                        generator.sent() / totalSeconds, maxBehindMs[g]);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Also used by the load-test harness against its embedded broker
+    public static Properties producerProps(String bootstrapServers) {
+        Properties props = new Properties();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, EmailPayloadSerializer.class.getName());
+        props.put(EmailPayloadSerializer.FORMAT_CONFIG, WIRE_FORMAT);
+        if (CLAIM_CHECK_DIR != null) {
+            props.put(EmailPayloadSerializer.CLAIM_CHECK_DIR_CONFIG, CLAIM_CHECK_DIR);
+            props.put(EmailPayloadSerializer.CLAIM_CHECK_THRESHOLD_CONFIG, Integer.toString(CLAIM_CHECK_THRESHOLD));
+        }
+        return props;
+    }
+
+    private static String body(int bytes) {
+        String text = "Please process immediately.";
+        if (bytes <= text.length()) return text;
+        StringBuilder body = new StringBuilder(bytes).append(text).append('\n');
+        while (body.length() < bytes) body.append("<p>Campaign content line ").append(body.length()).append("</p>\n");
+        body.setLength(bytes);
+        return body.toString();
+    }
+
+    static String recipient(String type, long i) {
+        return "user-" + (RECIPIENTS > 0 ? i % RECIPIENTS : i) + "@" + type.toLowerCase() + ".com";
+    }
+
+    public static void sendBatch(KafkaProducer<String, EmailPayload> producer, String topic, int count) {
         for (int i = 0; i < count; i++) {
 
             String type = topic.contains("high") ? "VIP" : "Standard";
-            String to = "user-" + i + "@" + type.toLowerCase() + ".com";
+            String to = recipient(type, i);
             String subject = type + " Alert #" + i;
-            String body = "Please process immediately.";
+            String body = BODY;
 
             long creationTime = System.currentTimeMillis();
 
-            // JSON now contains creation time
-            String json = String.format(
-                    "{ \"to\": \"%s\", \"subject\": \"%s\", \"body\": \"%s\", \"createdAt\": %d }",
-                    to, subject, body, creationTime
-            );
+            // Payload carries creation time and a message id (consumers dedup on it), encoded by EmailPayloadSerializer
+            EmailPayload payload = new EmailPayload(to, subject, body, creationTime, UUID.randomUUID().toString());
 
-            ProducerRecord<String, String> record = new ProducerRecord<>(topic, "key-" + i, json);
+            ProducerRecord<String, EmailPayload> record = new ProducerRecord<>(topic, "key-" + i, payload);
 
             producer.send(record, (metadata, exception) -> {
                 if (exception != null) exception.printStackTrace();
@@ -0,0 +1,138 @@
+package org.producer;
+
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.kafkaShared.EmailPayload;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends to one topic on a fixed schedule, independent of how fast the previous sends went (open loop).
+ *
+ * Every message has an intended send time taken from the rate profile, evenly spaced or with
+ * exponential gaps (Poisson arrivals). The generator sleeps until that time, or sends right away
+ * when it is already behind. createdAt is the intended time, not the actual one, so a stalled
+ * producer (full buffer, slow broker) shows up as lag on the consumer side instead of silently
+ * delaying the next messages. That is the coordinated-omission fix.
+ */
+public class OpenLoopGenerator implements Runnable {
+
+    private final KafkaProducer<String, EmailPayload> producer;
+    private final String topic;
+    private final RateProfile profile;
+    private final boolean poisson;
+    private final long durationNanos;
+
+    // Written by the generator / producer callbacks, read by the reporter
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong acked = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile long nextIntendedNanos;      // intended send time of the message not sent yet
+    private volatile double currentRate = 0;
+    private volatile boolean finished = false;
+
+    private long startNanos;
+    private long startEpochMs;
+
+    public OpenLoopGenerator(KafkaProducer<String, EmailPayload> producer, String topic,
+                             RateProfile profile, boolean poisson, long durationSeconds) {
+        this.producer = producer;
+        this.topic = topic;
+        this.profile = profile;
+        this.poisson = poisson;
+        this.durationNanos = TimeUnit.SECONDS.toNanos(durationSeconds);
+    }
+
+    /** Both clocks are taken together so intended nanos map onto epoch millis for createdAt. */
+    public void start(long startNanos, long startEpochMs) {
+        this.startNanos = startNanos;
+        this.startEpochMs = startEpochMs;
+        this.nextIntendedNanos = startNanos;
+    }
+
+    @Override
+    public void run() {
+        String type = topic.contains("high") ? "VIP" : "Standard";
+        long intended = startNanos;
+        long i = 0;
+
+        while (intended - startNanos < durationNanos && !Thread.currentThread().isInterrupted()) {
+            nextIntendedNanos = intended;
+            double rate = profile.rateAt((intended - startNanos) / 1e9);
+            currentRate = rate;
+            if (rate <= 0) {
+                // Nothing to send at this point of the profile, look again shortly
+                intended += TimeUnit.MILLISECONDS.toNanos(10);
+                LockSupport.parkNanos(intended - System.nanoTime());
+                continue;
+            }
+
+            long now = System.nanoTime();
+            if (intended > now) {
+                LockSupport.parkNanos(intended - now);
+                continue; // parkNanos may return early, check the clock again
+            }
+
+            long createdAt = startEpochMs + TimeUnit.NANOSECONDS.toMillis(intended - startNanos);
+            EmailPayload payload = new EmailPayload(
+                    Main.recipient(type, i), type + " Alert #" + i, Main.BODY,
+                    createdAt, UUID.randomUUID().toString());
+
+            // send() blocks when the producer buffer is full; the schedule keeps running regardless
+            producer.send(new ProducerRecord<>(topic, "key-" + i, payload), (metadata, exception) -> {
+                if (exception != null) errors.incrementAndGet();
+                else acked.incrementAndGet();
+            });
+            sent.incrementAndGet();
+            i++;
+
+            intended += nextGapNanos(rate);
+        }
+        finished = true;
+    }
+
+    private long nextGapNanos(double rate) {
+        double meanGapNanos = 1e9 / rate;
+        if (!poisson) return (long) meanGapNanos;
+        return (long) (-Math.log(1.0 - ThreadLocalRandom.current().nextDouble()) * meanGapNanos);
+    }
+
+    public String topic() {
+        return topic;
+    }
+
+    public long sent() {
+        return sent.get();
+    }
+
+    public long acked() {
+        return acked.get();
+    }
+
+    public long errors() {
+        return errors.get();
+    }
+
+    public double currentRate() {
+        return currentRate;
+    }
+
+    /** How far the next send is behind its intended time; keeps growing while send() blocks. */
+    public long behindMs() {
+        return finished ? 0 : TimeUnit.NANOSECONDS.toMillis(Math.max(0, System.nanoTime() - nextIntendedNanos));
+    }
+
+    /** Messages whose intended time has passed but that are not sent yet, estimated from how late we are. */
+    public long backlog() {
+        return (long) (currentRate * behindMs() / 1000.0);
+    }
+
+    /** Handed to the producer but not acknowledged by the broker yet. */
+    public long unacked() {
+        return sent() - acked() - errors();
+    }
+}
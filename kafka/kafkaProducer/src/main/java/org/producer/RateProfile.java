@@ -0,0 +1,43 @@
+package org.producer;
+
+/**
+ * Target send rate (messages/second) as a function of time since the run started.
+ *
+ * Parsed from a short spec so it fits in a system property:
+ *   constant:500           500/s for the whole run
+ *   ramp:100-2000          linear from 100/s to 2000/s over the run duration
+ *   step:200+200/30        200/s, plus 200/s every 30 seconds
+ */
+public interface RateProfile {
+
+    double rateAt(double elapsedSeconds);
+
+    static RateProfile parse(String spec, double durationSeconds) {
+        String[] kindAndArgs = spec.trim().split(":", 2);
+        if (kindAndArgs.length != 2) throw new IllegalArgumentException("Rate profile needs kind:args, got " + spec);
+        String args = kindAndArgs[1];
+
+        switch (kindAndArgs[0]) {
+            case "constant": {
+                double rate = Double.parseDouble(args);
+                return elapsed -> rate;
+            }
+            case "ramp": {
+                String[] range = args.split("-");
+                double from = Double.parseDouble(range[0]);
+                double to = Double.parseDouble(range[1]);
+                return elapsed -> from + (to - from) * Math.min(1.0, elapsed / durationSeconds);
+            }
+            case "step": {
+                String[] startAndStep = args.split("\\+");
+                String[] incrementAndEvery = startAndStep[1].split("/");
+                double start = Double.parseDouble(startAndStep[0]);
+                double increment = Double.parseDouble(incrementAndEvery[0]);
+                double everySeconds = Double.parseDouble(incrementAndEvery[1]);
+                return elapsed -> start + increment * Math.floor(elapsed / everySeconds);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown rate profile " + kindAndArgs[0] + " (constant, ramp, step)");
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.kafkaShared;
+
+/**
+ * What travels through the Kafka topics. Producer and consumer both build on this,
+ * the consumer adds its own bookkeeping (topic, consumer id) in EmailSender.EmailRequest.
+ */
+public class EmailPayload {
+    public String to;
+    public String subject;
+    public String body;
+    public long createdAt;
+    public String messageId; // set once by the producer, replays keep it; null from old producers
+    public String bodyRef;   // claim check: the body is in a BodyStore under this reference and body is null
+
+    public EmailPayload(String to, String subject, String body, long createdAt) {
+        this(to, subject, body, createdAt, null);
+    }
+
+    public EmailPayload(String to, String subject, String body, long createdAt, String messageId) {
+        this.to = to;
+        this.subject = subject;
+        this.body = body;
+        this.createdAt = createdAt;
+        this.messageId = messageId;
+    }
+}
@@ -0,0 +1,197 @@
+package org.kafkaShared;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Versioned binary layout for EmailPayload:
+ *
+ *   [MAGIC][VERSION] then repeated [tag][varint length][bytes]
+ *
+ * Every field is tagged and length-prefixed, so a reader skips tags it does not know
+ * and new fields can be added without bumping VERSION. Records that do not start with
+ * MAGIC are treated as the old JSON format. A claim-checked payload has TAG_BODY_REF instead of
+ * TAG_BODY (consumers that predate it drop such records as undecodable, so upgrade them first).
+ */
+public final class EmailPayloadCodec {
+
+    public static final byte MAGIC = (byte) 0xE7;
+    public static final byte VERSION = 1;
+
+    // Field tags, never reuse a number
+    static final byte TAG_TO = 1;
+    static final byte TAG_SUBJECT = 2;
+    static final byte TAG_BODY = 3;
+    static final byte TAG_CREATED_AT = 4;
+    static final byte TAG_MESSAGE_ID = 5;
+    static final byte TAG_BODY_REF = 6;
+
+    private EmailPayloadCodec() { }
+
+    public static boolean isBinary(byte[] data) {
+        return data != null && data.length >= 2 && data[0] == MAGIC;
+    }
+
+    // --- BINARY ---
+
+    public static byte[] encode(EmailPayload payload) {
+        byte[] to = utf8(payload.to);
+        byte[] subject = utf8(payload.subject);
+        boolean claimed = payload.bodyRef != null;
+        byte[] body = utf8(claimed ? payload.bodyRef : payload.body);
+        byte[] messageId = payload.messageId != null ? utf8(payload.messageId) : null;
+
+        int size = 2
+                + fieldSize(to.length)
+                + fieldSize(subject.length)
+                + fieldSize(body.length)
+                + fieldSize(Long.BYTES)
+                + (messageId != null ? fieldSize(messageId.length) : 0);
+
+        byte[] out = new byte[size];
+        out[0] = MAGIC;
+        out[1] = VERSION;
+        int pos = 2;
+        pos = writeField(out, pos, TAG_TO, to);
+        pos = writeField(out, pos, TAG_SUBJECT, subject);
+        pos = writeField(out, pos, claimed ? TAG_BODY_REF : TAG_BODY, body);
+
+        out[pos++] = TAG_CREATED_AT;
+        pos = writeVarint(out, pos, Long.BYTES);
+        writeLong(out, pos, payload.createdAt);
+        pos += Long.BYTES;
+
+        if (messageId != null) writeField(out, pos, TAG_MESSAGE_ID, messageId);
+        return out;
+    }
+
+    /**
+     * Decodes straight from the record bytes, only the field Strings are allocated.
+     * Truncated or corrupt input throws IllegalArgumentException.
+     */
+    public static EmailPayload decode(byte[] data) {
+        if (!isBinary(data)) throw new IllegalArgumentException("Not a binary EmailPayload");
+        if (data[1] > VERSION) throw new IllegalArgumentException("Unsupported EmailPayload version " + data[1]);
+
+        String to = null, subject = null, body = null, messageId = null, bodyRef = null;
+        long createdAt = 0;
+
+        int[] pos = {2};
+        int end = data.length;
+        while (pos[0] < end) {
+            byte tag = data[pos[0]++];
+            int len = readVarint(data, pos, end);
+            int at = pos[0];
+            if (len > end - at) throw new IllegalArgumentException("Truncated EmailPayload");
+
+            switch (tag) {
+                case TAG_TO -> to = new String(data, at, len, StandardCharsets.UTF_8);
+                case TAG_SUBJECT -> subject = new String(data, at, len, StandardCharsets.UTF_8);
+                case TAG_BODY -> body = new String(data, at, len, StandardCharsets.UTF_8);
+                case TAG_CREATED_AT -> {
+                    if (len != Long.BYTES) throw new IllegalArgumentException("Bad EmailPayload createdAt length " + len);
+                    createdAt = readLong(data, at);
+                }
+                case TAG_MESSAGE_ID -> messageId = new String(data, at, len, StandardCharsets.UTF_8);
+                case TAG_BODY_REF -> bodyRef = new String(data, at, len, StandardCharsets.US_ASCII);
+                default -> { } // newer field, skip it
+            }
+            pos[0] = at + len;
+        }
+
+        if (to == null || subject == null || (body == null && bodyRef == null)) {
+            throw new IllegalArgumentException("Missing EmailPayload field");
+        }
+        EmailPayload payload = new EmailPayload(to, subject, body, createdAt, messageId);
+        payload.bodyRef = bodyRef;
+        return payload;
+    }
+
+    // --- JSON (compatibility) ---
+
+    public static byte[] encodeJson(EmailPayload payload) {
+        JSONObject json = new JSONObject()
+                .put("to", payload.to)
+                .put("subject", payload.subject)
+                .put("createdAt", payload.createdAt);
+        if (payload.bodyRef != null) json.put("bodyRef", payload.bodyRef);
+        else json.put("body", payload.body);
+        if (payload.messageId != null) json.put("messageId", payload.messageId);
+        return json.toString()
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static EmailPayload decodeJson(byte[] data) throws JSONException {
+        JSONObject json = new JSONObject(new String(data, StandardCharsets.UTF_8));
+
+        // Old producers did not always send createdAt
+        long createdAt = json.has("createdAt") ? json.getLong("createdAt") : System.currentTimeMillis();
+        String bodyRef = json.optString("bodyRef", null);
+        EmailPayload payload = new EmailPayload(json.getString("to"), json.getString("subject"),
+                bodyRef != null ? null : json.getString("body"), createdAt, json.optString("messageId", null));
+        payload.bodyRef = bodyRef;
+        return payload;
+    }
+
+    // --- HELPERS ---
+
+    // Unsigned LEB128 int, advances pos[0]; at most 5 bytes and never past end
+    private static int readVarint(byte[] data, int[] pos, int end) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (pos[0] >= end) throw new IllegalArgumentException("Truncated EmailPayload");
+            byte b = data[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                if (value < 0) throw new IllegalArgumentException("Bad EmailPayload length");
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Bad EmailPayload varint");
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int fieldSize(int len) {
+        return 1 + varintSize(len) + len;
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) size++;
+        return size;
+    }
+
+    private static int writeField(byte[] out, int pos, byte tag, byte[] value) {
+        out[pos++] = tag;
+        pos = writeVarint(out, pos, value.length);
+        System.arraycopy(value, 0, out, pos, value.length);
+        return pos + value.length;
+    }
+
+    private static int writeVarint(byte[] out, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            out[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[pos++] = (byte) value;
+        return pos;
+    }
+
+    private static void writeLong(byte[] out, int pos, long value) {
+        for (int i = 7; i >= 0; i--) {
+            out[pos + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static long readLong(byte[] data, int pos) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) value = (value << 8) | (data[pos + i] & 0xFF);
+        return value;
+    }
+}
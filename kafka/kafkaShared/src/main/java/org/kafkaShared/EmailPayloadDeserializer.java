@@ -0,0 +1,25 @@
+package org.kafkaShared;
+
+import org.apache.kafka.common.serialization.Deserializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads both formats: binary records are recognised by their magic byte, anything else is parsed as JSON.
+ * Undecodable records come back as null so the consumer can skip them instead of failing the poll.
+ */
+public class EmailPayloadDeserializer implements Deserializer<EmailPayload> {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmailPayloadDeserializer.class);
+
+    @Override
+    public EmailPayload deserialize(String topic, byte[] data) {
+        if (data == null) return null;
+        try {
+            return EmailPayloadCodec.isBinary(data) ? EmailPayloadCodec.decode(data) : EmailPayloadCodec.decodeJson(data);
+        } catch (RuntimeException e) {
+            logger.warn("Undecodable payload on {}: {}", topic, e.getMessage());
+            return null;
+        }
+    }
+}
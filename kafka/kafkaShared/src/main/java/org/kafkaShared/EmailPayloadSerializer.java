@@ -0,0 +1,52 @@
+package org.kafkaShared;
+
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Writes EmailPayload as binary by default. Set "email.payload.format" to "json"
+ * in the producer config to keep emitting the old JSON records.
+ *
+ * With "email.claimcheck.dir" set, bodies of at least "email.claimcheck.threshold" characters
+ * go into the BodyStore in that directory and the record only carries the reference.
+ */
+public class EmailPayloadSerializer implements Serializer<EmailPayload> {
+
+    public static final String FORMAT_CONFIG = "email.payload.format";
+    public static final String CLAIM_CHECK_DIR_CONFIG = "email.claimcheck.dir";
+    public static final String CLAIM_CHECK_THRESHOLD_CONFIG = "email.claimcheck.threshold";
+    public static final String CLAIM_CHECK_SEGMENT_CONFIG = "email.claimcheck.segment.bytes";
+
+    private boolean json = false;
+    private BodyStore bodies; // null = bodies always inline
+    private int threshold = 4096;
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        Object format = configs.get(FORMAT_CONFIG);
+        json = format != null && "json".equalsIgnoreCase(format.toString());
+
+        Object dir = configs.get(CLAIM_CHECK_DIR_CONFIG);
+        if (dir != null && !dir.toString().isBlank()) {
+            Object threshold = configs.get(CLAIM_CHECK_THRESHOLD_CONFIG);
+            Object segment = configs.get(CLAIM_CHECK_SEGMENT_CONFIG);
+            if (threshold != null) this.threshold = Integer.parseInt(threshold.toString());
+            bodies = BodyStore.open(Path.of(dir.toString()),
+                    segment != null ? Integer.parseInt(segment.toString()) : 64 * 1024 * 1024);
+        }
+    }
+
+    @Override
+    public byte[] serialize(String topic, EmailPayload payload) {
+        if (payload == null) return null;
+        if (bodies != null && payload.bodyRef == null && payload.body != null && payload.body.length() >= threshold) {
+            // A copy, the caller's payload keeps its body
+            EmailPayload claimed = new EmailPayload(payload.to, payload.subject, null, payload.createdAt, payload.messageId);
+            claimed.bodyRef = bodies.put(payload.body);
+            payload = claimed;
+        }
+        return json ? EmailPayloadCodec.encodeJson(payload) : EmailPayloadCodec.encode(payload);
+    }
+}
@@ -0,0 +1,88 @@
+package org.kafkaShared;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EmailPayloadCodecTest {
+
+    @Test
+    void roundTrip() {
+        EmailPayload decoded = EmailPayloadCodec.decode(EmailPayloadCodec.encode(payload()));
+
+        assertEquals("user-1@vip.com", decoded.to);
+        assertEquals("VIP Alert #1", decoded.subject);
+        assertEquals("Hello, ünïcode", decoded.body);
+        assertEquals(1_700_000_000_123L, decoded.createdAt);
+        assertEquals("msg-1", decoded.messageId);
+        assertNull(decoded.bodyRef);
+    }
+
+    @Test
+    void roundTripWithBodyReference() {
+        EmailPayload payload = payload();
+        payload.body = null;
+        payload.bodyRef = "ab12:0:64:2048";
+
+        EmailPayload decoded = EmailPayloadCodec.decode(EmailPayloadCodec.encode(payload));
+        assertNull(decoded.body);
+        assertEquals("ab12:0:64:2048", decoded.bodyRef);
+    }
+
+    @Test
+    void unknownTagIsSkipped() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(EmailPayloadCodec.encode(payload()));
+        out.write(99); // a field from a newer producer
+        out.write(3);
+        out.writeBytes("new".getBytes(StandardCharsets.UTF_8));
+
+        EmailPayload decoded = EmailPayloadCodec.decode(out.toByteArray());
+        assertEquals("user-1@vip.com", decoded.to);
+        assertEquals("msg-1", decoded.messageId);
+    }
+
+    @Test
+    void truncatedInputIsRejected() {
+        byte[] data = EmailPayloadCodec.encode(payload());
+        // Cut right before createdAt or messageId the prefix is a valid payload without them
+        EmailPayload withoutMessageId = payload();
+        withoutMessageId.messageId = null;
+        int afterCreatedAt = EmailPayloadCodec.encode(withoutMessageId).length;
+        int afterBody = afterCreatedAt - 2 - Long.BYTES;
+
+        for (int length = 2; length < data.length; length++) {
+            if (length == afterBody || length == afterCreatedAt) continue;
+            byte[] truncated = Arrays.copyOf(data, length);
+            assertThrows(IllegalArgumentException.class, () -> EmailPayloadCodec.decode(truncated), "length " + length);
+        }
+    }
+
+    @Test
+    void malformedLengthsAreRejected() {
+        // Length varint that never ends
+        byte[] endless = {EmailPayloadCodec.MAGIC, EmailPayloadCodec.VERSION, EmailPayloadCodec.TAG_TO,
+                (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 1};
+        assertThrows(IllegalArgumentException.class, () -> EmailPayloadCodec.decode(endless));
+
+        // Length close to Integer.MAX_VALUE, pos + len would overflow
+        byte[] huge = {EmailPayloadCodec.MAGIC, EmailPayloadCodec.VERSION, EmailPayloadCodec.TAG_TO,
+                (byte) 0xFE, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 'a'};
+        assertThrows(IllegalArgumentException.class, () -> EmailPayloadCodec.decode(huge));
+
+        // createdAt must be 8 bytes, not the start of the next field
+        byte[] shortCreatedAt = {EmailPayloadCodec.MAGIC, EmailPayloadCodec.VERSION,
+                EmailPayloadCodec.TAG_CREATED_AT, 4, 0, 0, 0, 1};
+        assertThrows(IllegalArgumentException.class, () -> EmailPayloadCodec.decode(shortCreatedAt));
+    }
+
+    private static EmailPayload payload() {
+        return new EmailPayload("user-1@vip.com", "VIP Alert #1", "Hello, ünïcode", 1_700_000_000_123L, "msg-1");
+    }
+}
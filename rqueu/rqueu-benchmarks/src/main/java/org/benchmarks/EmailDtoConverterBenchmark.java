@@ -0,0 +1,74 @@
+package org.benchmarks;
+
+import com.github.sonus21.rqueue.converter.GenericMessageConverter;
+import org.openjdk.jmh.annotations.*;
+import org.sharedLib.EmailDTO;
+import org.sharedLib.EmailDTOMessageConverter;
+import org.springframework.messaging.Message;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EmailDTO to and from the Redis string, with the converter Rqueue uses by default
+ * (enqueue in the producer, dequeue before every listener call) and with EmailDTOMessageConverter
+ * (binary, LZ4 from 1024 bytes). bodyChars 8192 is a repetitive HTML body, where LZ4 kicks in.
+ * The payload sizes of both are printed once per trial.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EmailDtoConverterBenchmark {
+
+    @Param({"20", "8192"})
+    int bodyChars;
+
+    private GenericMessageConverter converter;
+    private EmailDTOMessageConverter binaryConverter;
+    private EmailDTO email;
+    private Message<?> serialized;
+    private Message<?> serializedBinary;
+
+    @Setup
+    public void setup() {
+        converter = new GenericMessageConverter();
+        binaryConverter = new EmailDTOMessageConverter(1024);
+        email = new EmailDTO("sender@example.com", "user-12345@vip.com", "VIP", body(bodyChars), new Date());
+        serialized = converter.toMessage(email, null);
+        serializedBinary = binaryConverter.toMessage(email, null);
+        System.out.printf("%nPayload chars: json %d, binary %d%n",
+                ((String) serialized.getPayload()).length(), ((String) serializedBinary.getPayload()).length());
+    }
+
+    @Benchmark
+    public Message<?> serialize() {
+        return converter.toMessage(email, null);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return converter.fromMessage(serialized, EmailDTO.class);
+    }
+
+    @Benchmark
+    public Message<?> serializeBinary() {
+        return binaryConverter.toMessage(email, null);
+    }
+
+    @Benchmark
+    public Object deserializeBinary() {
+        return binaryConverter.fromMessage(serializedBinary, EmailDTO.class);
+    }
+
+    private static String body(int chars) {
+        String text = "Body content here...";
+        if (chars <= text.length()) return text;
+        StringBuilder body = new StringBuilder(chars).append(text);
+        while (body.length() < chars) body.append("<p>Campaign content line ").append(body.length()).append("</p>\n");
+        body.setLength(chars);
+        return body.toString();
+    }
+}
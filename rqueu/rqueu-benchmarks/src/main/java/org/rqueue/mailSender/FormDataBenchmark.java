@@ -0,0 +1,41 @@
+package org.rqueue.mailSender;
+
+import org.openjdk.jmh.annotations.*;
+import org.rqueue.autoscale.LagWindow;
+import org.rqueue.metrics.DeliveryMetrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The URL-encoding done for every single (non-batched) send: the old String-based
+ * EmailSender.buildFormData against MailRequestTemplate writing into one byte[].
+ * Lives in org.rqueue.mailSender because buildFormData and the sender's template are package-private.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FormDataBenchmark {
+
+    private SendShards shards;
+    private EmailSender sender;
+
+    @Setup
+    public void setup() {
+        // Never sends here, the URL is not used
+        shards = SendShards.single("http://127.0.0.1:1/messages", "api:key-fake", "platform");
+        sender = new EmailSender(shards, false, 500, 50, false, 0, 0, 0, null, 0, new LagWindow(), new DeliveryMetrics());
+    }
+
+    @Benchmark
+    public String buildFormData() {
+        return sender.buildFormData("sender@example.com", "user-12345@vip.com", "VIP", "Body content here...");
+    }
+
+    @Benchmark
+    public byte[] templateBody() {
+        return shards.all().get(0).template.formBody("sender@example.com", "user-12345@vip.com", "VIP", "Body content here...");
+    }
+}
@@ -0,0 +1,85 @@
+package org.rqueue.mailSender;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.*;
+import org.rqueue.autoscale.LagWindow;
+import org.rqueue.metrics.DeliveryMetrics;
+import org.sharedLib.EmailDTO;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EmailSender.sendEmail from 16 concurrent listener threads against an in-process stub answering 200.
+ * With batching on, the same calls are coalesced by MailBatcher into multi-recipient requests.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class SendEmailBenchmark {
+
+    private static final byte[] RESPONSE = "{\"message\": \"Queued\", \"id\": \"fake-123\"}".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"false", "true"})
+    public boolean batching;
+
+    // MailBatcher max size, has no effect when batching is off
+    @Param({"16", "500"})
+    public int batchMaxSize;
+
+    private HttpServer server;
+    private ExecutorService serverPool;
+    private EmailSender sender;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        serverPool = Executors.newFixedThreadPool(16);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.createContext("/messages", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, RESPONSE.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(RESPONSE);
+            }
+        });
+        server.setExecutor(serverPool);
+        server.start();
+
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/messages";
+        sender = new EmailSender(SendShards.single(url, "api:key-fake", "platform"), batching, batchMaxSize, 5,
+                false, 0, 0, 0, null, 0, new LagWindow(), new DeliveryMetrics());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop(0);
+        serverPool.shutdownNow();
+    }
+
+    @State(Scope.Thread)
+    public static class Email {
+        EmailDTO dto;
+
+        @Setup
+        public void setup() {
+            dto = new EmailDTO("sender@example.com", "user-" + Thread.currentThread().getId() + "@vip.com",
+                    "VIP", "Body content here...", new Date());
+        }
+    }
+
+    @Benchmark
+    public void sendEmail(Email email) {
+        sender.sendEmail(email.dto);
+    }
+}
@@ -0,0 +1,115 @@
+package org.rqueue.autoscale;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Semaphore whose size can change at runtime. Rqueue fixes a listener's thread count at startup,
+ * so the listener takes a slot here before sending; shrinking the limit parks the surplus
+ * workers until active work drains below it.
+ * The ceiling is a second, independent cap (the priority governor's), so the autoscaler and
+ * the governor never overwrite each other: the effective limit is the lower of the two.
+ */
+public class ConcurrencyGate {
+
+    private final String name;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotFreed = lock.newCondition();
+
+    private int limit;
+    private int ceiling = Integer.MAX_VALUE;
+    private int active = 0;
+
+    public ConcurrencyGate(String name, int limit) {
+        this.name = name;
+        this.limit = limit;
+    }
+
+    public void acquire() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (active >= Math.min(limit, ceiling)) slotFreed.await();
+            active++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Like acquire, but gives up after timeoutMs and returns false. */
+    public boolean tryAcquire(long timeoutMs) throws InterruptedException {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        lock.lockInterruptibly();
+        try {
+            while (active >= Math.min(limit, ceiling)) {
+                if (nanos <= 0) return false;
+                nanos = slotFreed.awaitNanos(nanos);
+            }
+            active++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void release() {
+        lock.lock();
+        try {
+            active--;
+            slotFreed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void setLimit(int newLimit) {
+        lock.lock();
+        try {
+            limit = newLimit;
+            slotFreed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void setCeiling(int newCeiling) {
+        lock.lock();
+        try {
+            ceiling = newCeiling;
+            slotFreed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCeiling() {
+        lock.lock();
+        try {
+            return ceiling;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getActive() {
+        lock.lock();
+        try {
+            return active;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,55 @@
+package org.rqueue.autoscale;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Recent end-to-end lag samples per subject, kept in a fixed ring so recording never allocates.
+ * Readers (autoscaler, priority governor) drain it on their own interval, each only sees lag
+ * observed since its own last look.
+ */
+@Component
+public class LagWindow {
+
+    private static final int CAPACITY = 4096;
+
+    private static class Ring {
+        final AtomicLongArray samples = new AtomicLongArray(CAPACITY);
+        final AtomicLong written = new AtomicLong();
+        final Map<String, Long> drainedUpTo = new ConcurrentHashMap<>(); // per reader
+    }
+
+    private final Map<String, Ring> rings = new ConcurrentHashMap<>();
+
+    public void record(String subject, long lagMs) {
+        Ring ring = rings.computeIfAbsent(subject, s -> new Ring());
+        long slot = ring.written.getAndIncrement();
+        ring.samples.set((int) (slot % CAPACITY), lagMs);
+    }
+
+    /** p99 of the samples recorded since the autoscaler's previous call, or -1 when there were none. */
+    public long drainP99(String subject) {
+        return drainP99("autoscaler", subject);
+    }
+
+    /** p99 of the samples recorded since this reader's previous call, or -1 when there were none. */
+    public long drainP99(String reader, String subject) {
+        Ring ring = rings.get(subject);
+        if (ring == null) return -1;
+
+        long end = ring.written.get();
+        Long previous = ring.drainedUpTo.put(reader, end);
+        long start = Math.max(previous != null ? previous : 0, end - CAPACITY);
+        if (end <= start) return -1;
+
+        long[] copy = new long[(int) (end - start)];
+        for (long i = start; i < end; i++) copy[(int) (i - start)] = ring.samples.get((int) (i % CAPACITY));
+        Arrays.sort(copy);
+        return copy[(int) Math.min(copy.length - 1, Math.ceil(copy.length * 0.99) - 1)];
+    }
+}
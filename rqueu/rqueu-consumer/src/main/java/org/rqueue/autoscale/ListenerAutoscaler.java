@@ -0,0 +1,141 @@
+package org.rqueue.autoscale;
+
+import com.github.sonus21.rqueue.metrics.RqueueQueueMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replaces hand-picked concurrency ranges (TEST-1..6) with a feedback loop.
+ *
+ * Every interval it samples the pending count of both queues from Redis and the VIP/STANDARD
+ * p99 lag seen since the last tick. VIP workers grow while VIP p99 misses its target or VIP
+ * has a backlog, and shrink one step at a time once it is comfortably below target.
+ * STANDARD gets whatever is left of the total worker budget, within its own bounds.
+ * Every change is logged with the numbers that caused it.
+ */
+@Component
+@ConditionalOnProperty(name = "email.autoscale.enabled", havingValue = "true")
+public class ListenerAutoscaler {
+
+    private static final Logger logger = LoggerFactory.getLogger(ListenerAutoscaler.class);
+
+    private static final String HIGH_QUEUE = "high-priority-mails";
+    private static final String LOW_QUEUE = "low-priority-mails";
+
+    private final ListenerGates gates;
+    private final LagWindow lagWindow;
+    private final RqueueQueueMetrics queueMetrics;
+
+    private final long intervalMs;
+    private final long vipTargetMs;
+    private final int totalWorkers;
+    private final int highMin, highMax, lowMin, lowMax;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "listener-autoscaler");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ListenerAutoscaler(ListenerGates gates, LagWindow lagWindow, RqueueQueueMetrics queueMetrics,
+                              @Value("${email.autoscale.interval-ms:2000}") long intervalMs,
+                              @Value("${email.autoscale.vip-p99-target-ms:500}") long vipTargetMs,
+                              @Value("${email.autoscale.total-workers:12}") int totalWorkers,
+                              @Value("${email.autoscale.high.min:2}") int highMin,
+                              @Value("${email.autoscale.high.max:10}") int highMax,
+                              @Value("${email.autoscale.low.min:1}") int lowMin,
+                              @Value("${email.autoscale.low.max:10}") int lowMax) {
+        this.gates = gates;
+        this.lagWindow = lagWindow;
+        this.queueMetrics = queueMetrics;
+        this.intervalMs = intervalMs;
+        this.vipTargetMs = vipTargetMs;
+        // Rqueue can't add threads at runtime: bounds past the listener's range max would never be reached
+        this.highMax = clamp("high.max", highMax, gates.highListenerMax());
+        this.lowMax = clamp("low.max", lowMax, gates.lowListenerMax());
+        this.highMin = clamp("high.min", highMin, this.highMax);
+        this.lowMin = clamp("low.min", lowMin, this.lowMax);
+        this.totalWorkers = clamp("total-workers", totalWorkers, this.highMax + this.lowMax);
+    }
+
+    private static int clamp(String name, int value, int max) {
+        if (value <= max) return value;
+        logger.warn("[AUTOSCALE] email.autoscale.{}={} lowered to {}, the listener concurrency ranges allow no more",
+                name, value, max);
+        return max;
+    }
+
+    @PostConstruct
+    void start() {
+        logger.info("[AUTOSCALE] Enabled | VIP p99 target: {}ms | Budget: {} | High: {}-{} | Low: {}-{}",
+                vipTargetMs, totalWorkers, highMin, highMax, lowMin, lowMax);
+        scheduler.scheduleWithFixedDelay(this::tick, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        scheduler.shutdownNow();
+    }
+
+    void tick() {
+        try {
+            long vipPending = queueMetrics.getPendingMessageCount(HIGH_QUEUE);
+            long stdPending = queueMetrics.getPendingMessageCount(LOW_QUEUE);
+            long vipP99 = lagWindow.drainP99("VIP");
+            long stdP99 = lagWindow.drainP99("STANDARD");
+
+            // --- VIP: grow fast on a miss, shrink slowly when comfortably below target ---
+            int high = gates.high().getLimit();
+            int newHigh = high;
+            String highReason = null;
+            if (vipP99 > vipTargetMs) {
+                newHigh = Math.min(highMax, high + Math.max(1, high / 2));
+                highReason = "vip p99 " + vipP99 + "ms > target " + vipTargetMs + "ms";
+            } else if (vipPending > high) {
+                newHigh = Math.min(highMax, high + 1);
+                highReason = "vip backlog " + vipPending + " > workers " + high;
+            } else if (vipPending == 0 && vipP99 < vipTargetMs / 2) {
+                newHigh = Math.max(highMin, high - 1);
+                highReason = "vip idle, p99 " + vipP99 + "ms";
+            }
+            apply(gates.high(), newHigh, highReason, vipPending, vipP99);
+
+            // --- STANDARD: spare budget while it has a backlog, floor otherwise ---
+            int low = gates.low().getLimit();
+            int spare = totalWorkers - gates.high().getLimit();
+            int newLow;
+            String lowReason;
+            if (vipP99 > vipTargetMs) {
+                newLow = lowMin;
+                lowReason = "yielding to vip, p99 " + vipP99 + "ms";
+            } else if (stdPending > 0) {
+                newLow = Math.max(lowMin, Math.min(lowMax, spare));
+                lowReason = "std backlog " + stdPending + ", spare budget " + spare;
+            } else {
+                newLow = lowMin;
+                lowReason = "std idle";
+            }
+            if (newLow != low) apply(gates.low(), newLow, lowReason, stdPending, stdP99);
+        } catch (Exception e) {
+            logger.warn("[AUTOSCALE] Sampling failed: {}", e.getMessage());
+        }
+    }
+
+    private void apply(ConcurrencyGate gate, int newLimit, String reason, long pending, long p99) {
+        int current = gate.getLimit();
+        if (reason == null || newLimit == current) return;
+
+        gate.setLimit(newLimit);
+        logger.info("[AUTOSCALE] {} workers {} -> {} | reason: {} | pending: {} | p99: {}ms | active: {}",
+                gate.getName(), current, newLimit, reason, pending, p99, gate.getActive());
+    }
+}
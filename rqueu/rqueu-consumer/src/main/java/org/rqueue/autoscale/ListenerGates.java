@@ -0,0 +1,55 @@
+package org.rqueue.autoscale;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * One gate per listener. Without the autoscaler they stay wide open and the
+ * @RqueueListener concurrency range is the only limit. That range's max (the shared virtual permits
+ * in the virtual profile) is the most workers a listener has, whatever its gate allows.
+ */
+@Component
+public class ListenerGates {
+
+    private final ConcurrencyGate high;
+    private final ConcurrencyGate low;
+    private final int highListenerMax;
+    private final int lowListenerMax;
+
+    public ListenerGates(@Value("${email.autoscale.enabled:false}") boolean autoscale,
+                         @Value("${email.autoscale.high.max:10}") int highMax,
+                         @Value("${email.autoscale.low.min:1}") int lowMin,
+                         @Value("${email.consumer.concurrency.high}") String concurrencyHigh,
+                         @Value("${email.consumer.concurrency.low}") String concurrencyLow,
+                         @Value("${email.consumer.virtual.permits:200}") int virtualPermits) {
+        this.highListenerMax = listenerMax(concurrencyHigh, virtualPermits);
+        this.lowListenerMax = listenerMax(concurrencyLow, virtualPermits);
+        // VIP starts at its ceiling, STANDARD at its floor; the autoscaler moves them from there
+        this.high = new ConcurrencyGate("high-priority-mails",
+                autoscale ? Math.min(highMax, highListenerMax) : Integer.MAX_VALUE);
+        this.low = new ConcurrencyGate("low-priority-mails",
+                autoscale ? Math.min(lowMin, lowListenerMax) : Integer.MAX_VALUE);
+    }
+
+    // "5-10" -> 10, "8" -> 8, "-1" (virtual profile, no range of its own) -> the shared permits
+    static int listenerMax(String range, int virtualPermits) {
+        String max = range.substring(range.lastIndexOf('-') + 1).trim();
+        return range.trim().startsWith("-") ? virtualPermits : Integer.parseInt(max);
+    }
+
+    public int highListenerMax() {
+        return highListenerMax;
+    }
+
+    public int lowListenerMax() {
+        return lowListenerMax;
+    }
+
+    public ConcurrencyGate high() {
+        return high;
+    }
+
+    public ConcurrencyGate low() {
+        return low;
+    }
+}
@@ -0,0 +1,181 @@
+package org.rqueue.autoscale;
+
+import com.github.sonus21.rqueue.listener.RqueueMessageListenerContainer;
+import com.github.sonus21.rqueue.metrics.RqueueQueueMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps STANDARD out of VIP's way while VIP is backing up.
+ *
+ * Every interval it reads the high-priority-mails backlog and the VIP p99 lag since its last look.
+ * Past the throttle thresholds the low listener's gate is capped at throttle.low-workers; past the
+ * pause thresholds the low queue is paused in the listener container, so its messages stay in
+ * Redis instead of being polled. It steps up at once but back down only one level at a time,
+ * after resume-ticks intervals in a row under resume-factor x the thresholds (hysteresis), so it
+ * does not flap around a threshold. A pause never lasts longer than max-pause-ms: STANDARD then
+ * runs throttled, and is not paused again before the governor got back to OPEN, so a long VIP
+ * campaign slows STANDARD down but never starves it.
+ * Every transition is logged with the numbers that caused it.
+ */
+@Component
+@ConditionalOnProperty(name = "email.governor.enabled", havingValue = "true")
+public class PriorityGovernor {
+
+    private static final Logger logger = LoggerFactory.getLogger(PriorityGovernor.class);
+
+    private static final String HIGH_QUEUE = "high-priority-mails";
+    private static final String LOW_QUEUE = "low-priority-mails";
+
+    public enum State { OPEN, THROTTLED, PAUSED }
+
+    private final ListenerGates gates;
+    private final LagWindow lagWindow;
+    private final RqueueQueueMetrics queueMetrics;
+    private final RqueueMessageListenerContainer container;
+
+    private final long intervalMs;
+    private final long throttlePending, throttleP99Ms;
+    private final long pausePending, pauseP99Ms;
+    private final int throttleWorkers;
+    private final double resumeFactor;
+    private final int resumeTicks;
+    private final long maxPauseMs;
+
+    // Only written by the scheduler thread
+    private volatile State state = State.OPEN;
+    private int calmTicks = 0;
+    private long pausedAtMs;
+    private boolean pauseExpired = false;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "priority-governor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public PriorityGovernor(ListenerGates gates, LagWindow lagWindow, RqueueQueueMetrics queueMetrics,
+                            RqueueMessageListenerContainer container,
+                            @Value("${email.governor.interval-ms:1000}") long intervalMs,
+                            @Value("${email.governor.throttle.vip-pending:200}") long throttlePending,
+                            @Value("${email.governor.throttle.vip-p99-ms:500}") long throttleP99Ms,
+                            @Value("${email.governor.pause.vip-pending:1000}") long pausePending,
+                            @Value("${email.governor.pause.vip-p99-ms:2000}") long pauseP99Ms,
+                            @Value("${email.governor.throttle.low-workers:1}") int throttleWorkers,
+                            @Value("${email.governor.resume-factor:0.5}") double resumeFactor,
+                            @Value("${email.governor.resume-ticks:3}") int resumeTicks,
+                            @Value("${email.governor.max-pause-ms:60000}") long maxPauseMs) {
+        this.gates = gates;
+        this.lagWindow = lagWindow;
+        this.queueMetrics = queueMetrics;
+        this.container = container;
+        this.intervalMs = intervalMs;
+        this.throttlePending = throttlePending;
+        this.throttleP99Ms = throttleP99Ms;
+        this.pausePending = pausePending;
+        this.pauseP99Ms = pauseP99Ms;
+        this.throttleWorkers = throttleWorkers;
+        this.resumeFactor = resumeFactor;
+        this.resumeTicks = resumeTicks;
+        this.maxPauseMs = maxPauseMs;
+    }
+
+    @PostConstruct
+    void start() {
+        logger.info("[GOVERNOR] Enabled | Throttle at VIP pending {} or p99 {}ms (STANDARD workers {}) | "
+                        + "Pause at VIP pending {} or p99 {}ms | Resume below x{} for {} ticks",
+                throttlePending, throttleP99Ms, throttleWorkers, pausePending, pauseP99Ms, resumeFactor, resumeTicks);
+        scheduler.scheduleWithFixedDelay(this::tick, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        scheduler.shutdownNow();
+        if (state == State.PAUSED) container.pauseUnpauseQueue(LOW_QUEUE, false);
+    }
+
+    void tick() {
+        try {
+            long vipPending = queueMetrics.getPendingMessageCount(HIGH_QUEUE);
+            long vipP99 = lagWindow.drainP99("governor", "VIP");
+
+            State target = state;
+            String reason = null;
+            if (exceeds(vipPending, vipP99, pausePending, pauseP99Ms, 1.0) && !pauseExpired) {
+                if (state != State.PAUSED) {
+                    target = State.PAUSED;
+                    reason = describe(vipPending, vipP99, pausePending, pauseP99Ms);
+                }
+            } else if (exceeds(vipPending, vipP99, throttlePending, throttleP99Ms, 1.0)) {
+                if (state == State.OPEN) {
+                    target = State.THROTTLED;
+                    reason = describe(vipPending, vipP99, throttlePending, throttleP99Ms);
+                }
+            }
+
+            if (state == State.PAUSED && target == State.PAUSED
+                    && System.currentTimeMillis() - pausedAtMs >= maxPauseMs) {
+                // Starvation guard: let STANDARD trickle through for a while, even if VIP is still behind
+                target = State.THROTTLED;
+                reason = "paused for " + maxPauseMs + "ms";
+                pauseExpired = true;
+            }
+
+            if (reason == null) {
+                // Nothing to escalate: step down one level once VIP stays well below the current level's thresholds
+                boolean calm = state == State.PAUSED
+                        ? !exceeds(vipPending, vipP99, pausePending, pauseP99Ms, resumeFactor)
+                        : !exceeds(vipPending, vipP99, throttlePending, throttleP99Ms, resumeFactor);
+                calmTicks = calm ? calmTicks + 1 : 0;
+                if (state != State.OPEN && calmTicks >= resumeTicks) {
+                    target = state == State.PAUSED ? State.THROTTLED : State.OPEN;
+                    reason = "vip calm for " + calmTicks + " ticks";
+                }
+            }
+            if (target == State.OPEN) pauseExpired = false;
+
+            if (target != state) transition(target, reason, vipPending, vipP99);
+        } catch (Exception e) {
+            logger.warn("[GOVERNOR] Sampling failed: {}", e.getMessage());
+        }
+    }
+
+    private boolean exceeds(long pending, long p99, long pendingLimit, long p99Limit, double factor) {
+        return pending >= pendingLimit * factor || p99 >= p99Limit * factor;
+    }
+
+    private String describe(long pending, long p99, long pendingLimit, long p99Limit) {
+        return pending >= pendingLimit
+                ? "vip pending " + pending + " >= " + pendingLimit
+                : "vip p99 " + p99 + "ms >= " + p99Limit + "ms";
+    }
+
+    private void transition(State to, String reason, long vipPending, long vipP99) {
+        ConcurrencyGate low = gates.low();
+        low.setCeiling(to == State.OPEN ? Integer.MAX_VALUE : throttleWorkers);
+        if (to == State.PAUSED) {
+            container.pauseUnpauseQueue(LOW_QUEUE, true);
+            pausedAtMs = System.currentTimeMillis();
+        } else if (state == State.PAUSED) {
+            container.pauseUnpauseQueue(LOW_QUEUE, false);
+        }
+
+        logger.info("[GOVERNOR] STANDARD {} -> {} | reason: {} | vip pending: {} | vip p99: {}ms | std active: {}",
+                state, to, reason, vipPending, vipP99, low.getActive());
+        state = to;
+        calmTicks = 0;
+    }
+
+    public State state() {
+        return state;
+    }
+}
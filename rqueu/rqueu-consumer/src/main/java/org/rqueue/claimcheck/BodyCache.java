@@ -0,0 +1,82 @@
+package org.rqueue.claimcheck;
+
+import jakarta.annotation.PreDestroy;
+import org.sharedLib.BodyStore;
+import org.sharedLib.EmailDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Puts claim-checked bodies back into the EmailDTO before it is sent.
+ *
+ * Bodies are read from the producer's BodyStore (email.claimcheck.dir, a local or shared directory)
+ * and the most recently used ones stay in memory up to email.claimcheck.cache-mb, keyed by content
+ * hash, so a campaign's body is read once however many emails reference it. A miss reads the store
+ * outside the lock. A body that can't be read throws, and Rqueue retries the message later.
+ */
+@Component
+public class BodyCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(BodyCache.class);
+
+    private final BodyStore store; // null unless email.claimcheck.dir is set
+    private final long maxChars;
+    private final LinkedHashMap<String, String> bodies = new LinkedHashMap<>(1024, 0.75f, true);
+    private long chars; // under the lock
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public BodyCache(@Value("${email.claimcheck.dir:}") String dir,
+                     @Value("${email.claimcheck.cache-mb:256}") long cacheMb) {
+        this.store = dir.isBlank() ? null : BodyStore.open(Path.of(dir), 64 * 1024 * 1024);
+        this.maxChars = cacheMb * 1024 * 1024 / 2;
+        if (store != null) logger.info("Claim-check bodies from {}, cache {} MB", dir, cacheMb);
+    }
+
+    /** Sets the body of a claim-checked email, others are left as they are. */
+    public void resolve(EmailDTO email) {
+        String ref = email.getBodyRef();
+        if (ref == null) return;
+        if (store == null) throw new IllegalStateException("No email.claimcheck.dir for body " + ref);
+        email.setBody(lookup(ref));
+    }
+
+    private String lookup(String ref) {
+        String hash = BodyStore.hashOf(ref);
+        synchronized (this) {
+            String body = bodies.get(hash);
+            if (body != null) {
+                hits.increment();
+                return body;
+            }
+        }
+        misses.increment();
+        String body = store.get(ref);
+        if (body.length() <= maxChars) put(hash, body);
+        return body;
+    }
+
+    private synchronized void put(String hash, String body) {
+        String previous = bodies.put(hash, body);
+        chars += body.length() - (previous != null ? previous.length() : 0);
+        Iterator<Map.Entry<String, String>> eldest = bodies.entrySet().iterator();
+        while (chars > maxChars && eldest.hasNext()) {
+            chars -= eldest.next().getValue().length();
+            eldest.remove();
+        }
+    }
+
+    @PreDestroy
+    void report() {
+        if (store != null) logger.info("Body cache: {} hits, {} misses", hits.sum(), misses.sum());
+    }
+}
@@ -0,0 +1,41 @@
+package org.rqueue.config;
+
+import com.github.sonus21.rqueue.config.SimpleRqueueListenerContainerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+/**
+ * Virtual-thread mode for the Rqueue listeners (email.consumer.execution-mode=virtual).
+ *
+ * Listeners run on one virtual thread per message, so EmailSender's blocking join() no longer
+ * holds a platform thread. Concurrency is the permit count, not a pool size. In platform mode
+ * this bean is absent and Rqueue builds its usual per-listener thread pools.
+ */
+@Configuration
+@ConditionalOnProperty(name = "email.consumer.execution-mode", havingValue = "virtual")
+public class RqueueExecutionConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(RqueueExecutionConfig.class);
+
+    @Bean
+    public SimpleRqueueListenerContainerFactory simpleRqueueListenerContainerFactory(
+            @Value("${email.consumer.virtual.permits}") int permits) {
+
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("rqueue-vt-");
+        executor.setVirtualThreads(true);
+        executor.setConcurrencyLimit(permits);
+
+        SimpleRqueueListenerContainerFactory factory = new SimpleRqueueListenerContainerFactory();
+        factory.setTaskExecutor(executor);
+        // Rqueue's own worker semaphore, keeps it from polling more messages than we can run
+        factory.setMaxNumWorkers(permits);
+
+        logger.info("Rqueue listeners on virtual threads, permits: {}", permits);
+        return factory;
+    }
+}
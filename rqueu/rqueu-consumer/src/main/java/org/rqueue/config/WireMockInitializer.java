@@ -7,6 +7,7 @@ import org.rqueue.mailSender.EmailSender;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -24,7 +25,11 @@ public class WireMockInitializer {
     public final EmailConsumer emailConsumer;
 
     private static final Logger logger = LoggerFactory.getLogger(WireMockInitializer.class);
-    private static final String WIREMOCK_ADMIN_URL = "http://localhost:8080/__admin/mappings";
+    private static final String WIREMOCK_ADMIN_PATH = "/__admin/mappings";
+
+    // Admin API lives on the same host/port as the stubbed provider (the load-test harness uses a random port)
+    @Value("${mail.provider.url}")
+    private String mailProviderUrl;
 
     // 1. Inject the Rqueue Container so we can control it
     private final RqueueMessageListenerContainer rqueueContainer;
@@ -50,7 +55,7 @@ public class WireMockInitializer {
 
                 HttpClient client = HttpClient.newHttpClient();
                 HttpRequest request = HttpRequest.newBuilder()
-                        .uri(URI.create(WIREMOCK_ADMIN_URL))
+                        .uri(URI.create(mailProviderUrl).resolve(WIREMOCK_ADMIN_PATH))
                         .header("Content-Type", "application/json")
                         .POST(HttpRequest.BodyPublishers.ofString(stubJson))
                         .build();
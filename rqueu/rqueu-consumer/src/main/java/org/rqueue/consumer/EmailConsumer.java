@@ -1,10 +1,19 @@
 package org.rqueue.consumer;
 
+import org.rqueue.autoscale.ConcurrencyGate;
+import org.rqueue.autoscale.ListenerGates;
+import org.rqueue.claimcheck.BodyCache;
+import org.rqueue.dedup.DeliveryDedup;
+import org.rqueue.journal.DeliveryJournal;
 import org.rqueue.mailSender.EmailSender;
+import org.rqueue.metrics.DeliveryMetrics;
 import org.sharedLib.EmailDTO;
 import com.github.sonus21.rqueue.annotation.RqueueListener;
+import com.github.sonus21.rqueue.listener.RqueueMessageHeaders;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -13,18 +22,33 @@ import org.springframework.stereotype.Component;
 public class EmailConsumer {
 
     private final EmailSender emailSender;
-    private final String concurrencyHigh  = "5-10";
-    private final String concurrencyLow  = "1-2";
+    private final ListenerGates gates;
+    private final DeliveryMetrics metrics;
+    private final DeliveryJournal journal;
+    private final DeliveryDedup dedup;
+    private final BodyCache bodies;
+
+    // Ranges live in application.properties, the virtual profile turns them off (-1)
+    @Value("${email.consumer.concurrency.high}")
+    private String concurrencyHigh;
+
+    @Value("${email.consumer.concurrency.low}")
+    private String concurrencyLow;
+
+    // A message waiting for a slot is already dequeued: give it back well before Rqueue's visibility
+    // timeout (15 min by default) would redeliver it while this copy still waits and then sends
+    @Value("${email.consumer.gate-wait-ms:300000}")
+    private long gateWaitMs;
 
     /**
      * HIGH PRIORITY QUEUE
      */
-    @RqueueListener(value = "high-priority-mails", concurrency = concurrencyHigh)
-    public void onHighPriorityMessage(EmailDTO email) {
+    @RqueueListener(value = "high-priority-mails", concurrency = "${email.consumer.concurrency.high}")
+    public void onHighPriorityMessage(EmailDTO email, @Header(RqueueMessageHeaders.ID) String messageId) {
         log.info("[VIP START] Processing email for: {}", email.getTo());
         try {
             // Hand over to the sender service
-            emailSender.sendEmail(email);
+            sendGated(gates.high(), email, "high-priority-mails", messageId);
         } catch (Exception e) {
             log.error("[Error VIP] Could not send email to {}. Rqueue will retry.", email.getTo(), e);
             // Re-throw exception so Rqueue knows to retry this message later
@@ -35,17 +59,57 @@ public class EmailConsumer {
     /**
      * LOW PRIORITY QUEUE
      */
-    @RqueueListener(value = "low-priority-mails", concurrency = concurrencyLow)
-    public void onLowPriorityMessage(EmailDTO email) {
+    @RqueueListener(value = "low-priority-mails", concurrency = "${email.consumer.concurrency.low}")
+    public void onLowPriorityMessage(EmailDTO email, @Header(RqueueMessageHeaders.ID) String messageId) {
         log.info("[STD START] Processing email for: {}", email.getTo());
         try {
-            emailSender.sendEmail(email);
+            sendGated(gates.low(), email, "low-priority-mails", messageId);
         } catch (Exception e) {
             log.error("[Error STD] Could not send email to {}. Rqueue will retry.", email.getTo(), e);
             throw e;
         }
     }
 
+    // Holds a worker slot for the duration of the send, the autoscaler resizes the gates at runtime.
+    // The outcome goes to the delivery journal, retries show up as new records.
+    // Emails already delivered (by id) are skipped before taking a slot
+    private void sendGated(ConcurrencyGate gate, EmailDTO email, String queue, String messageId) {
+        // The DTO id is set by the producer; Rqueue's own id is stable across its retries too
+        String dedupId = email.getMessageId() != null ? email.getMessageId() : messageId;
+        boolean duplicate = dedup.isDuplicate(dedupId);
+        metrics.stream(email.getSubject()).recordDedup(duplicate);
+        if (duplicate) {
+            log.info("[DUPLICATE] Already delivered to {} ({}), skipping", email.getTo(), dedupId);
+            journal.append(messageId, queue, email, DeliveryJournal.STATUS_DUPLICATE);
+            return;
+        }
+
+        // Waiting for a digest window holds no worker slot, the digest's one call takes a low slot itself
+        boolean gated = !emailSender.digests(email);
+        long waitStart = System.nanoTime();
+        try {
+            if (gated && !gate.tryAcquire(gateWaitMs)) {
+                // Not sent, not journaled: Rqueue retries it like a failed send
+                throw new IllegalStateException("No worker slot in " + queue + " within " + gateWaitMs + "ms");
+            }
+            metrics.stream(email.getSubject()).recordQueueWait((System.nanoTime() - waitStart) / 1_000_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a worker slot", e);
+        }
+        try {
+            bodies.resolve(email); // claim-checked body, fails like a send so Rqueue retries it
+            emailSender.sendEmail(email);
+            dedup.markDelivered(dedupId);
+            journal.append(messageId, queue, email, DeliveryJournal.STATUS_SENT);
+        } catch (RuntimeException e) {
+            journal.append(messageId, queue, email, DeliveryJournal.STATUS_FAILED);
+            throw e;
+        } finally {
+            if (gated) gate.release();
+        }
+    }
+
     // Getters for concurrency
     public String getConcurrencyHigh() {
         return concurrencyHigh;
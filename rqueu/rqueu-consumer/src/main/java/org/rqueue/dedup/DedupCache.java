@@ -0,0 +1,66 @@
+package org.rqueue.dedup;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Local part of DeliveryDedup: ids of recently delivered emails on this node.
+ *
+ * Time-windowed and bounded: ids live in GENERATIONS maps, new ids go into the newest one, and
+ * once it is older than window/GENERATIONS or holds its share of maxEntries the oldest map is
+ * dropped as a whole. An id is remembered for at least (GENERATIONS-1)/GENERATIONS of the window
+ * and, once writes continue, not much longer than the window.
+ * Lookups are lock-free; only the rotation is synchronized.
+ */
+class DedupCache {
+
+    private static final int GENERATIONS = 4;
+
+    private final long generationMs;
+    private final int maxPerGeneration;
+    private volatile Map<String, Boolean>[] generations;
+    private volatile long generationStartMs;
+
+    @SuppressWarnings("unchecked")
+    DedupCache(long windowMs, int maxEntries) {
+        this.generationMs = Math.max(1, windowMs / GENERATIONS);
+        this.maxPerGeneration = Math.max(1, maxEntries / GENERATIONS);
+        this.generations = new Map[GENERATIONS];
+        for (int i = 0; i < GENERATIONS; i++) generations[i] = new ConcurrentHashMap<>();
+        this.generationStartMs = System.currentTimeMillis();
+    }
+
+    /** True when this id was delivered within the window. */
+    boolean contains(String messageId) {
+        for (Map<String, Boolean> generation : generations) {
+            if (generation.containsKey(messageId)) return true;
+        }
+        return false;
+    }
+
+    void add(String messageId) {
+        Map<String, Boolean> newest = generations[0];
+        if (System.currentTimeMillis() - generationStartMs >= generationMs || newest.size() >= maxPerGeneration) {
+            newest = rotate();
+        }
+        newest.put(messageId, Boolean.TRUE);
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized Map<String, Boolean> rotate() {
+        Map<String, Boolean>[] current = generations;
+        // Another thread may have rotated while we waited for the lock
+        if (System.currentTimeMillis() - generationStartMs < generationMs && current[0].size() < maxPerGeneration) {
+            return current[0];
+        }
+        // After a quiet spell several generations may have expired at once
+        long now = System.currentTimeMillis();
+        int steps = (int) Math.min(GENERATIONS, Math.max(1, (now - generationStartMs) / generationMs));
+        Map<String, Boolean>[] next = new Map[GENERATIONS];
+        for (int i = 0; i < steps; i++) next[i] = new ConcurrentHashMap<>();
+        System.arraycopy(current, 0, next, steps, GENERATIONS - steps);
+        generationStartMs = now;
+        generations = next;
+        return next[0];
+    }
+}
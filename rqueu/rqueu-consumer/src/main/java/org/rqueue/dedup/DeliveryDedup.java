@@ -0,0 +1,86 @@
+package org.rqueue.dedup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Skips emails that were already delivered, so a Rqueue retry after a send that actually went
+ * through (listener failed afterwards, visibility timeout ran out) does not mail twice.
+ *
+ * Ids are remembered for email.dedup.window-ms in a bounded local cache. With
+ * email.dedup.store=redis they also go to Redis with the same TTL, so another consumer node
+ * that picks up the retry sees them; the local cache still answers first.
+ * Redis errors count as "not delivered": a rare duplicate beats a lost email.
+ */
+@Component
+public class DeliveryDedup {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeliveryDedup.class);
+    private static final String KEY_PREFIX = "email:delivered:";
+
+    private final boolean enabled;
+    private final DedupCache local;
+    private final StringRedisTemplate redis; // null unless email.dedup.store=redis
+    private final Duration window;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public DeliveryDedup(@Value("${email.dedup.enabled:true}") boolean enabled,
+                         @Value("${email.dedup.store:local}") String store,
+                         @Value("${email.dedup.window-ms:1800000}") long windowMs,
+                         @Value("${email.dedup.max-entries:2000000}") int maxEntries,
+                         ObjectProvider<StringRedisTemplate> redisTemplate) {
+        this.enabled = enabled;
+        this.window = Duration.ofMillis(windowMs);
+        this.local = new DedupCache(windowMs, maxEntries);
+        this.redis = enabled && "redis".equalsIgnoreCase(store) ? redisTemplate.getIfAvailable() : null;
+        if (enabled) logger.info("Delivery dedup on, window {}ms, store {}", windowMs, redis != null ? "local+redis" : "local");
+    }
+
+    /** True when this id was delivered within the window. Null ids are never duplicates. */
+    public boolean isDuplicate(String messageId) {
+        if (!enabled || messageId == null) return false;
+
+        boolean seen = local.contains(messageId);
+        if (!seen && redis != null) {
+            try {
+                seen = Boolean.TRUE.equals(redis.hasKey(KEY_PREFIX + messageId));
+                if (seen) local.add(messageId);
+            } catch (RuntimeException e) {
+                logger.warn("Dedup lookup in Redis failed, sending anyway: {}", e.getMessage());
+            }
+        }
+        if (seen) hits.increment(); else misses.increment();
+        return seen;
+    }
+
+    /** Call only after the provider accepted the email, a failed send must stay retryable. */
+    public void markDelivered(String messageId) {
+        if (!enabled || messageId == null) return;
+
+        local.add(messageId);
+        if (redis != null) {
+            try {
+                redis.opsForValue().set(KEY_PREFIX + messageId, "1", window);
+            } catch (RuntimeException e) {
+                logger.warn("Dedup write to Redis failed for {}: {}", messageId, e.getMessage());
+            }
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+}
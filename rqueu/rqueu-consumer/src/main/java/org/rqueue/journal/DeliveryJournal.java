@@ -0,0 +1,192 @@
+package org.rqueue.journal;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.sharedLib.EmailDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Append-only binary journal of delivery outcomes, one fixed-size record per listener call.
+ *
+ * Records go into memory-mapped segment files (delivery-000001.journal, ...). A writer claims its
+ * slot with one getAndAdd and fills it with absolute puts, so concurrent listeners never lock;
+ * only switching to the next segment is synchronized. The header is written last with release
+ * semantics and doubles as the commit marker, so a reader skips slots that are still being filled.
+ * JournalExporter turns the segments into the log-eval CSV report.
+ *
+ * Record layout (little endian, 96 bytes):
+ *   0 header (MAGIC | status)   8 message id msb   16 message id lsb   24 createdAt ms   32 sentAt ms
+ *  40 worker id   44 queue length   45 subject length   48 queue (24 bytes)   72 subject (24 bytes)
+ */
+@Component
+public class DeliveryJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeliveryJournal.class);
+
+    public static final byte STATUS_SENT = 1;
+    public static final byte STATUS_FAILED = 2;
+    public static final byte STATUS_DUPLICATE = 3; // skipped, DeliveryDedup had it as delivered
+
+    static final int RECORD_SIZE = 96;
+    static final long MAGIC = 0x444A524E_00000000L; // "DJRN"
+    static final long MAGIC_MASK = 0xFFFFFFFF_00000000L;
+    static final int QUEUE_OFFSET = 48;
+    static final int SUBJECT_OFFSET = 72;
+    static final int TEXT_LENGTH = 24;
+    static final String FILE_PREFIX = "delivery-";
+    static final String FILE_SUFFIX = ".journal";
+
+    static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final class Segment {
+        final int index;
+        final MappedByteBuffer buffer;
+        final int capacity;
+        final AtomicInteger next = new AtomicInteger();
+
+        Segment(int index, MappedByteBuffer buffer) {
+            this.index = index;
+            this.buffer = buffer;
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            this.capacity = buffer.capacity() - buffer.capacity() % RECORD_SIZE;
+        }
+    }
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentBytes;
+    private volatile Segment current;
+
+    public DeliveryJournal(@Value("${email.journal.enabled:true}") boolean enabled,
+                           @Value("${email.journal.dir:journal}") String directory,
+                           @Value("${email.journal.segment-mb:64}") int segmentMb) {
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        // A mapping is limited to 2GB, keep clear of it
+        this.segmentBytes = Math.min(segmentMb, 1024) * 1024 * 1024;
+    }
+
+    @PostConstruct
+    void open() throws IOException {
+        if (!enabled) return;
+        Files.createDirectories(directory);
+        current = openSegment(lastSegmentIndex() + 1);
+        logger.info("Delivery journal: {} ({} MB segments)", directory.toAbsolutePath(), segmentBytes / (1024 * 1024));
+    }
+
+    @PreDestroy
+    void close() {
+        Segment segment = current;
+        if (segment != null) segment.buffer.force();
+    }
+
+    /** Records the outcome of one listener call. Safe to call from any number of threads at once. */
+    public void append(String messageId, String queue, EmailDTO email, byte status) {
+        if (!enabled) return;
+
+        long createdAt = email.getCreatedAt() != null ? email.getCreatedAt().getTime() : 0;
+        long sentAt = System.currentTimeMillis();
+        while (true) {
+            Segment segment = current;
+            int offset = segment.next.getAndAdd(RECORD_SIZE);
+            if (offset >= 0 && offset + RECORD_SIZE <= segment.capacity) {
+                write(segment.buffer, offset, messageId, queue, email.getSubject(), createdAt, sentAt, status);
+                return;
+            }
+            roll(segment);
+        }
+    }
+
+    private static void write(MappedByteBuffer buffer, int offset, String messageId, String queue, String subject,
+                              long createdAt, long sentAt, byte status) {
+        writeId(buffer, offset + 8, messageId);
+        buffer.putLong(offset + 24, createdAt);
+        buffer.putLong(offset + 32, sentAt);
+        buffer.putInt(offset + 40, (int) Thread.currentThread().threadId());
+        buffer.put(offset + 44, writeText(buffer, offset + QUEUE_OFFSET, queue));
+        buffer.put(offset + 45, writeText(buffer, offset + SUBJECT_OFFSET, subject));
+        // Header last: a reader only trusts slots whose header carries the magic
+        LONGS.setRelease(buffer, offset, MAGIC | (status & 0xFF));
+    }
+
+    // Rqueue ids are UUIDs, parsed without allocating; anything else is stored as a 64-bit hash
+    private static void writeId(MappedByteBuffer buffer, int at, String id) {
+        long msb = 0, lsb = 0;
+        int digits = 0;
+        boolean uuid = id != null;
+        for (int i = 0; uuid && i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c == '-') continue;
+            int value = Character.digit(c, 16);
+            if (value < 0 || digits == 32) {
+                uuid = false;
+                break;
+            }
+            if (digits++ < 16) msb = (msb << 4) | value; else lsb = (lsb << 4) | value;
+        }
+        if (!uuid || digits != 32) {
+            msb = 0;
+            lsb = 0xcbf29ce484222325L; // FNV-1a
+            for (int i = 0; id != null && i < id.length(); i++) lsb = (lsb ^ id.charAt(i)) * 0x100000001b3L;
+        }
+        buffer.putLong(at, msb);
+        buffer.putLong(at + 8, lsb);
+    }
+
+    // ASCII, truncated to TEXT_LENGTH; returns the stored length
+    private static byte writeText(MappedByteBuffer buffer, int at, String text) {
+        int length = text == null ? 0 : Math.min(text.length(), TEXT_LENGTH);
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            buffer.put(at + i, c < 128 ? (byte) c : (byte) '?');
+        }
+        return (byte) length;
+    }
+
+    private synchronized void roll(Segment full) {
+        if (current != full) return; // someone else already rolled
+        full.buffer.force();
+        try {
+            current = openSegment(full.index + 1);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open journal segment " + (full.index + 1), e);
+        }
+    }
+
+    private Segment openSegment(int index) throws IOException {
+        Path file = directory.resolve(segmentName(index));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed
+            return new Segment(index, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes));
+        }
+    }
+
+    private int lastSegmentIndex() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(n -> n.startsWith(FILE_PREFIX) && n.endsWith(FILE_SUFFIX))
+                    .mapToInt(n -> Integer.parseInt(n.substring(FILE_PREFIX.length(), n.length() - FILE_SUFFIX.length())))
+                    .max().orElse(0);
+        }
+    }
+
+    static String segmentName(int index) {
+        return String.format("%s%06d%s", FILE_PREFIX, index, FILE_SUFFIX);
+    }
+}
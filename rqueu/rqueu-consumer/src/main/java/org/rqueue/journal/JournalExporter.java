@@ -0,0 +1,89 @@
+package org.rqueue.journal;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Builds the log-eval report from a delivery journal instead of the text log:
+ * same columns as log-eval/log_report.csv, one row per subject, appended with the next report_id.
+ *
+ * Usage: java -cp target/rqueu-consumer-0.0.1-SNAPSHOT.jar org.rqueue.journal.JournalExporter
+ *        [journal-dir] [output.csv] [high concurrency] [low concurrency]
+ */
+public final class JournalExporter {
+
+    private static final String HEADER = "report_id,subject,concurrency,avg_time(sc),max_time(sc),total_mails,total_errors";
+
+    private static final class SubjectStats {
+        long count;
+        long totalLagMs;
+        long maxLagMs;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path journal = Path.of(args.length > 0 ? args[0] : "journal");
+        Path output = Path.of(args.length > 1 ? args[1] : "log_report.csv");
+        String concurrencyHigh = args.length > 2 ? args[2] : "Unknown";
+        String concurrencyLow = args.length > 3 ? args[3] : "Unknown";
+
+        Map<String, SubjectStats> stats = new TreeMap<>();
+        long[] errors = {0};
+        JournalReader.forEach(journal, entry -> {
+            if (entry.duplicate()) return; // the first delivery is already counted
+            if (!entry.sent()) {
+                errors[0]++;
+                return;
+            }
+            SubjectStats s = stats.computeIfAbsent(entry.subject(), k -> new SubjectStats());
+            s.count++;
+            s.totalLagMs += entry.lagMs();
+            s.maxLagMs = Math.max(s.maxLagMs, entry.lagMs());
+        });
+
+        if (stats.isEmpty()) {
+            System.out.println("No deliveries found in " + journal.toAbsolutePath());
+            return;
+        }
+
+        int reportId = nextReportId(output);
+        boolean newFile = !Files.exists(output) || Files.size(output) == 0;
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(output,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+            if (newFile) out.println(HEADER);
+            for (Map.Entry<String, SubjectStats> entry : stats.entrySet()) {
+                SubjectStats s = entry.getValue();
+                out.println(String.format(Locale.ROOT, "%d,%s,%s,%.2f,%.2f,%d,%d",
+                        reportId, entry.getKey(), concurrencyFor(entry.getKey(), concurrencyHigh, concurrencyLow),
+                        s.totalLagMs / (double) s.count / 1000.0, s.maxLagMs / 1000.0, s.count, errors[0]));
+            }
+        }
+        System.out.println("Report " + reportId + " appended to " + output.toAbsolutePath());
+    }
+
+    // One more than the last report_id in the file, 0 for a new file (like log-analyzer.py's state.json)
+    private static int nextReportId(Path output) throws IOException {
+        if (!Files.exists(output)) return 0;
+        List<String> lines = Files.readAllLines(output);
+        for (int i = lines.size() - 1; i > 0; i--) {
+            String line = lines.get(i);
+            if (line.isBlank()) continue;
+            return Integer.parseInt(line.substring(0, line.indexOf(','))) + 1;
+        }
+        return 0;
+    }
+
+    // Same mapping as log-eval/log-analyzer.py
+    private static String concurrencyFor(String subject, String high, String low) {
+        String upper = subject.toUpperCase(Locale.ROOT);
+        if (upper.contains("VIP")) return high;
+        if (upper.contains("STANDARD")) return low;
+        return "Unknown";
+    }
+}
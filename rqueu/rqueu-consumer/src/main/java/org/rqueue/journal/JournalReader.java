@@ -0,0 +1,82 @@
+package org.rqueue.journal;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.rqueue.journal.DeliveryJournal.*;
+
+/**
+ * Reads DeliveryJournal segments in order. Works on a live journal too, slots that are not
+ * committed yet (or were never used) are skipped.
+ */
+public final class JournalReader {
+
+    public record Entry(String messageId, String queue, String subject, long createdAt, long sentAt,
+                        int workerId, byte status) {
+        public long lagMs() {
+            return sentAt - createdAt;
+        }
+
+        public boolean sent() {
+            return status == STATUS_SENT;
+        }
+
+        public boolean duplicate() {
+            return status == STATUS_DUPLICATE;
+        }
+    }
+
+    private JournalReader() { }
+
+    public static void forEach(Path directory, Consumer<Entry> consumer) throws IOException {
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(directory)) {
+            segments = files.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+            }).sorted().toList();
+        }
+
+        for (Path segment : segments) {
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                int end = buffer.capacity() - buffer.capacity() % RECORD_SIZE;
+                for (int offset = 0; offset < end; offset += RECORD_SIZE) {
+                    long header = (long) LONGS.getAcquire(buffer, offset);
+                    if ((header & MAGIC_MASK) != MAGIC) continue;
+                    consumer.accept(read(buffer, offset, (byte) header));
+                }
+            }
+        }
+    }
+
+    private static Entry read(MappedByteBuffer buffer, int offset, byte status) {
+        long msb = buffer.getLong(offset + 8);
+        long lsb = buffer.getLong(offset + 16);
+        String id = msb == 0 ? Long.toHexString(lsb) : new UUID(msb, lsb).toString();
+        return new Entry(id,
+                text(buffer, offset + QUEUE_OFFSET, buffer.get(offset + 44)),
+                text(buffer, offset + SUBJECT_OFFSET, buffer.get(offset + 45)),
+                buffer.getLong(offset + 24),
+                buffer.getLong(offset + 32),
+                buffer.getInt(offset + 40),
+                status);
+    }
+
+    private static String text(MappedByteBuffer buffer, int at, int length) {
+        byte[] bytes = new byte[Math.max(0, Math.min(length, TEXT_LENGTH))];
+        buffer.get(at, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,144 @@
+package org.rqueue.mailSender;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces items per recipient: the first one for a recipient opens a digest, the ones arriving
+ * within windowMs join it, and the flusher gets them all at once, in arrival order, when the window
+ * ends or the digest holds maxItems.
+ *
+ * Open digests sit in a hashed time wheel of windowMs / tickMs slots. A new digest goes into the
+ * slot that comes up a window from now, and every tick flushes one slot, so expiry needs no timer
+ * or sorted structure per digest. At most maxRecipients digests are open: a new recipient past
+ * that flushes the slot due next early. The flusher is called on the wheel's thread (or the submitting
+ * one), so it should hand the items off rather than send them itself.
+ */
+class DigestBuffer<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(DigestBuffer.class);
+
+    private static final class Digest<T> {
+        final String recipient;
+        final List<T> items = new ArrayList<>();
+        boolean flushed; // left in its slot, skipped when the slot comes up
+
+        Digest(String recipient) {
+            this.recipient = recipient;
+        }
+    }
+
+    private final int maxItems;
+    private final int maxRecipients;
+    private final Consumer<List<T>> flusher;
+
+    private final Map<String, Digest<T>> open = new HashMap<>();
+    private final List<List<Digest<T>>> wheel;
+    private final int windowTicks;
+    private long tick; // under the lock
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "mail-digest");
+        t.setDaemon(true);
+        return t;
+    });
+
+    DigestBuffer(long windowMs, long tickMs, int maxItems, int maxRecipients, Consumer<List<T>> flusher) {
+        this.maxItems = maxItems;
+        this.maxRecipients = maxRecipients;
+        this.flusher = flusher;
+        this.windowTicks = (int) Math.max(1, (windowMs + tickMs - 1) / tickMs);
+        this.wheel = new ArrayList<>(windowTicks + 1);
+        for (int i = 0; i <= windowTicks; i++) wheel.add(new ArrayList<>());
+        timer.scheduleAtFixedRate(this::advance, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    void submit(String recipient, T item) {
+        List<List<T>> ready = new ArrayList<>(0);
+        synchronized (this) {
+            Digest<T> digest = open.get(recipient);
+            if (digest == null) {
+                if (open.size() >= maxRecipients) evictNextSlot(ready);
+                digest = new Digest<>(recipient);
+                open.put(recipient, digest);
+                wheel.get((int) ((tick + windowTicks) % wheel.size())).add(digest);
+            }
+            digest.items.add(item);
+            if (digest.items.size() >= maxItems) {
+                open.remove(recipient);
+                digest.flushed = true;
+                ready.add(digest.items);
+            }
+        }
+        for (List<T> items : ready) flush(items);
+    }
+
+    /** Flushes every open digest now, e.g. before shutting down. */
+    void flushAll() {
+        List<List<T>> ready = new ArrayList<>();
+        synchronized (this) {
+            for (Digest<T> digest : open.values()) {
+                digest.flushed = true;
+                ready.add(digest.items);
+            }
+            open.clear();
+        }
+        for (List<T> items : ready) flush(items);
+    }
+
+    void close() {
+        timer.shutdown();
+        flushAll();
+    }
+
+    synchronized int openRecipients() {
+        return open.size();
+    }
+
+    private void advance() {
+        List<List<T>> ready = new ArrayList<>();
+        synchronized (this) {
+            tick++;
+            takeSlot((int) (tick % wheel.size()), ready);
+        }
+        for (List<T> items : ready) flush(items);
+    }
+
+    // Map is full: the digests that would expire first go now
+    private void evictNextSlot(List<List<T>> ready) {
+        for (int i = 1; i <= windowTicks; i++) {
+            int before = ready.size();
+            takeSlot((int) ((tick + i) % wheel.size()), ready);
+            if (ready.size() > before) return;
+        }
+    }
+
+    private void takeSlot(int slot, List<List<T>> ready) {
+        List<Digest<T>> due = wheel.get(slot);
+        if (due.isEmpty()) return;
+        wheel.set(slot, new ArrayList<>());
+        for (Digest<T> digest : due) {
+            if (digest.flushed) continue;
+            digest.flushed = true;
+            open.remove(digest.recipient);
+            ready.add(digest.items);
+        }
+    }
+
+    private void flush(List<T> items) {
+        try {
+            flusher.accept(items);
+        } catch (RuntimeException e) {
+            logger.error("Digest flush of {} items failed", items.size(), e);
+        }
+    }
+}
@@ -1,38 +1,111 @@
 package org.rqueue.mailSender;
 
+import org.rqueue.autoscale.ConcurrencyGate;
+import org.rqueue.autoscale.LagWindow;
+import org.rqueue.autoscale.ListenerGates;
+import org.rqueue.metrics.DeliveryMetrics;
 import org.sharedLib.EmailDTO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.net.URI;
 import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
-import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 @Service
 public class EmailSender {
 
     private static final Logger logger = LoggerFactory.getLogger(EmailSender.class);
+    // Per-recipient success lines for log-eval; set to WARN in logback.xml to rely on metrics/*.csv only
+    private static final Logger deliveryLog = LoggerFactory.getLogger("org.rqueue.delivery");
 
-    private final String mailgunUrl;
-    private final String apiKey;
     private final String defaultFrom; 
-    private final HttpClient client;
+    private final SendShards shards; // per provider / recipient domain: template, clients, token bucket
+    private final MailBatcher batcher; // null unless email.batch.enabled
+    private final DigestBuffer<Digested> digest; // null unless email.digest.enabled
+    // A digest's provider call takes a low-listener slot like a single STANDARD send; null = not gated
+    private final ConcurrencyGate digestGate;
+    private final long gateWaitMs;
+    // Flushed digests are sent from here, never on the wheel's timer thread: a throttled shard would
+    // stall every later tick. Virtual, a digest send mostly waits for a slot or the shard's tokens
+    private final ExecutorService digestSends =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("mail-digest-send-", 0).factory());
+    private final LagWindow lagWindow;
+    private final DeliveryMetrics metrics;
 
-    public EmailSender(@Value("${mail.provider.url}") String mailgunUrl,
-                       @Value("${mail.provider.key}") String apiKey) {
-        this.mailgunUrl = mailgunUrl;
-        this.apiKey = apiKey;
+    // A STANDARD email waiting for its digest, and the listener call blocked on it
+    private record Digested(EmailDTO email, String from, CompletableFuture<Void> result) { }
+
+    public EmailSender(SendShards shards,
+                       @Value("${email.batch.enabled:false}") boolean batchEnabled,
+                       @Value("${email.batch.max-size:500}") int batchMaxSize,
+                       @Value("${email.batch.max-wait-ms:50}") long batchMaxWaitMs,
+                       @Value("${email.digest.enabled:false}") boolean digestEnabled,
+                       @Value("${email.digest.window-ms:2000}") long digestWindowMs,
+                       @Value("${email.digest.max-items:50}") int digestMaxItems,
+                       @Value("${email.digest.max-recipients:100000}") int digestMaxRecipients,
+                       ListenerGates gates,
+                       @Value("${email.consumer.gate-wait-ms:300000}") long gateWaitMs,
+                       LagWindow lagWindow,
+                       DeliveryMetrics metrics) {
+        this.lagWindow = lagWindow;
+        this.metrics = metrics;
         this.defaultFrom = "sender@example.com";
-        this.client = HttpClient.newBuilder()
-                .version(HttpClient.Version.HTTP_2)
-                .connectTimeout(Duration.ofSeconds(10))
-                .build();
+        this.shards = shards;
+        this.digestGate = gates != null ? gates.low() : null;
+        this.gateWaitMs = gateWaitMs;
+
+        // Mailgun takes at most 1000 recipients per call
+        this.batcher = batchEnabled
+                ? new MailBatcher(Math.min(batchMaxSize, 1000), batchMaxWaitMs, shards::route, this::sendBatchRequest)
+                : null;
+        // Time wheel ticks at 1/20 of the window, so a digest waits at most 5% longer than the window
+        this.digest = digestEnabled
+                ? new DigestBuffer<>(digestWindowMs, Math.max(10, digestWindowMs / 20), digestMaxItems,
+                        digestMaxRecipients, this::flushDigest)
+                : null;
+    }
+
+    /** STANDARD mail is coalesced per recipient; the listener waits for the digest, not for a send slot. */
+    public boolean digests(EmailDTO email) {
+        return digest != null && !SendShards.isVip(email.getSubject());
+    }
+
+    // Provider batching, read and changed by the tuning endpoint; only meaningful when batching()
+    public boolean batching() {
+        return batcher != null;
+    }
+
+    public int getBatchMaxSize() {
+        return batcher.getMaxSize();
+    }
+
+    public void setBatchMaxSize(int maxSize) {
+        batcher.setMaxSize(maxSize);
+    }
+
+    public long getBatchMaxWaitMs() {
+        return batcher.getMaxWaitMs();
+    }
+
+    public void setBatchMaxWaitMs(long maxWaitMs) {
+        batcher.setMaxWaitMs(maxWaitMs);
+    }
+
+    @PreDestroy
+    void flushDigests() {
+        if (digest != null) digest.close();
+        digestSends.close(); // waits for the digests just flushed
     }
 
     public void sendEmail(EmailDTO emailDto) {
@@ -40,31 +113,116 @@ public class EmailSender {
                 ? emailDto.getFrom()
                 : defaultFrom;
 
+        if (digests(emailDto)) {
+            // Blocks until the digest this email joined has been sent, failures rethrow so Rqueue retries it.
+            // Keyed by sender too, a digest goes out under one from
+            Digested pending = new Digested(emailDto, finalFrom, new CompletableFuture<>());
+            digest.submit(emailDto.getTo() + '|' + finalFrom, pending);
+            pending.result().join();
+            return;
+        }
+
+        if (batcher != null) {
+            // Blocks until the batch this email joined has been sent, failures rethrow so Rqueue retries it
+            batcher.submit(emailDto, finalFrom).join();
+            return;
+        }
+
+        deliver(emailDto.getTo(), emailDto.getSubject(), bodyOf(emailDto), finalFrom, List.of(emailDto)).join();
+    }
+
+    // Called on the wheel's thread: only hands the digest over
+    private void flushDigest(List<Digested> pending) {
+        try {
+            digestSends.execute(() -> sendDigest(pending));
+        } catch (RejectedExecutionException e) {
+            for (Digested d : pending) d.result().completeExceptionally(e);
+        }
+    }
+
+    // One provider call for a digest; a digest of one is sent as it is
+    private void sendDigest(List<Digested> pending) {
+        Digested first = pending.get(0);
+        List<EmailDTO> items = new ArrayList<>(pending.size());
+        for (Digested d : pending) items.add(d.email());
+
+        String subject = first.email().getSubject();
+        String body = bodyOf(first.email());
+        if (items.size() > 1) {
+            StringBuilder text = new StringBuilder(64 * items.size());
+            for (EmailDTO item : items) {
+                text.append("- ").append(item.getSubject()).append('\n')
+                        .append(item.getBody() != null ? item.getBody() : "").append("\n\n");
+            }
+            subject = items.size() + " updates: " + subject;
+            body = text.toString();
+        }
+
+        CompletableFuture<Void> sent;
+        boolean gated = false;
+        try {
+            if (digestGate != null) {
+                if (!digestGate.tryAcquire(gateWaitMs)) {
+                    throw new IllegalStateException("No worker slot for a digest within " + gateWaitMs + "ms");
+                }
+                gated = true;
+            }
+            sent = deliver(first.email().getTo(), subject, body, first.from(), items);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sent = CompletableFuture.failedFuture(e);
+        } catch (RuntimeException e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+        boolean release = gated;
+        sent.whenComplete((ok, ex) -> {
+            if (release) digestGate.release();
+            for (Digested d : pending) {
+                if (ex != null) d.result().completeExceptionally(ex);
+                else d.result().complete(null);
+            }
+        });
+    }
+
+    // items are the emails the call carries, each is counted and logged as delivered on its own
+    private CompletableFuture<Void> deliver(String to, String subject, String body, String from, List<EmailDTO> items) {
         // Build form data for WireMock/Mailgun
-        String formData = buildFormData(finalFrom, emailDto.getTo(), emailDto.getSubject(), "Body content here...");
+        SendShards.Shard shard = shards.route(to);
+        MailRequestTemplate template = shard.template;
+        HttpRequest request = template.request(template.formBody(from, to, subject, body));
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(mailgunUrl))
-                .header("Content-Type", "application/x-www-form-urlencoded")
-                .header("Authorization", "Basic " + java.util.Base64.getEncoder().encodeToString(apiKey.getBytes()))
-                .POST(HttpRequest.BodyPublishers.ofString(formData))
-                .build();
+        // Streams are per original subject (VIP / STANDARD), also for a digest
+        DeliveryMetrics.Stream stream = metrics.stream(items.get(0).getSubject());
+        stream.recordBatch(items.size());
+        // Blocks this listener thread (or the digest's sender) while the shard is over its rate
+        boolean vip = SendShards.isVip(items.get(0).getSubject());
+        HttpClient client = shard.acquire(vip);
+        stream.sendStarted();
+        long start = System.nanoTime();
 
         // Send and Log exactly what you requested
-        client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+        return client.sendAsync(request, MailRequestTemplate.BODY_ON_ERROR)
+                .whenComplete((response, ex) -> {
+                    boolean success = ex == null && response.statusCode() == 200;
+                    shard.completed(vip, success, items.size());
+                    stream.sendFinished(success, System.nanoTime() - start, items.size());
+                })
                 .thenAccept(response -> {
                     if (response.statusCode() == 200) {
-                        long lag = System.currentTimeMillis() - emailDto.getCreatedAt().getTime();
-
-                        // --- EXACT LOG FORMAT ---
-                        logger.info("| From: {} | To: {} | Subject: {} | HTTP: 200 OK | Lag: {}ms",
-                                finalFrom,
-                                emailDto.getTo(),
-                                emailDto.getSubject(),
-                                lag
-                        );
-          
+                        long now = System.currentTimeMillis();
+                        for (EmailDTO email : items) {
+                            long lag = now - email.getCreatedAt().getTime();
+                            lagWindow.record(email.getSubject(), lag);
+                            stream.delivered(lag);
 
+                            // --- EXACT LOG FORMAT ---
+                            deliveryLog.info("| From: {} | To: {} | Subject: {} | HTTP: 200 OK | Lag: {}ms",
+                                    from,
+                                    email.getTo(),
+                                    email.getSubject(),
+                                    lag
+                            );
+                        }
                     } else {
                         String errorMsg = String.format("Error, Mail Provider failed. Status: %d | Body: %s", response.statusCode(), response.body());
                         logger.error(errorMsg);
@@ -73,11 +231,78 @@ public class EmailSender {
                 })
                 .exceptionally(ex -> {
                     throw new RuntimeException("Error, Network error sending email: " + ex.getMessage(), ex);
+                });
+    }
+
+    /**
+     * One multi-recipient Mailgun call for emails sharing from/subject/body and send shard.
+     * recipient-variables makes Mailgun deliver an individual message to each recipient instead of
+     * one shared To: list.
+     */
+    private CompletableFuture<Boolean> sendBatchRequest(SendShards.Shard shard, List<EmailDTO> emails) {
+        EmailDTO first = emails.get(0);
+        String from = (first.getFrom() != null && !first.getFrom().isEmpty()) ? first.getFrom() : defaultFrom;
+
+        StringBuilder formData = new StringBuilder()
+                .append("from=").append(encode(from))
+                .append("&subject=").append(encode(first.getSubject()))
+                .append("&text=").append(encode(bodyOf(first)));
+
+        StringBuilder recipientVariables = new StringBuilder("{");
+        for (int i = 0; i < emails.size(); i++) {
+            String to = emails.get(i).getTo();
+            formData.append("&to=").append(encode(to));
+            if (i > 0) recipientVariables.append(',');
+            recipientVariables.append('"').append(jsonEscape(to)).append("\":{\"index\":").append(i).append('}');
+        }
+        formData.append("&recipient-variables=").append(encode(recipientVariables.append('}').toString()));
+
+        HttpRequest request = shard.template.request(formData.toString().getBytes(StandardCharsets.US_ASCII));
+
+        DeliveryMetrics.Stream stream = metrics.stream(first.getSubject());
+        stream.recordBatch(emails.size());
+        boolean vip = SendShards.isVip(first.getSubject());
+        HttpClient client = shard.acquire(vip);
+        stream.sendStarted();
+        long start = System.nanoTime();
+
+        return client.sendAsync(request, MailRequestTemplate.BODY_ON_ERROR)
+                .whenComplete((response, ex) -> {
+                    boolean success = ex == null && response.statusCode() == 200;
+                    shard.completed(vip, success, emails.size());
+                    stream.sendFinished(success, System.nanoTime() - start, emails.size());
                 })
-                .join();
+                .thenApply(response -> {
+                    if (response.statusCode() != 200) {
+                        logger.error("Error, Mail Provider failed batch of {}. Status: {} | Body: {}",
+                                emails.size(), response.statusCode(), response.body());
+                        return false;
+                    }
+
+                    // Same line per recipient as the single-send path, the log analyzer depends on it
+                    long now = System.currentTimeMillis();
+                    for (EmailDTO email : emails) {
+                        long lag = now - email.getCreatedAt().getTime();
+                        lagWindow.record(email.getSubject(), lag);
+                        stream.delivered(lag);
+                        deliveryLog.info("| From: {} | To: {} | Subject: {} | HTTP: 200 OK | Lag: {}ms",
+                                from, email.getTo(), email.getSubject(), lag);
+                    }
+                    return true;
+                });
+    }
+
+    // The producer's body (resolved by BodyCache when claim-checked), the old fixed text when there is none
+    private static String bodyOf(EmailDTO email) {
+        return email.getBody() != null ? email.getBody() : "Body content here...";
+    }
+
+    private static String jsonEscape(String value) {
+        return value == null ? "" : value.replace("\\", "\\\\").replace("\"", "\\\"");
     }
 
-    private String buildFormData(String from, String to, String subject, String body) {
+    // The String-based encoding the template replaced, kept as the baseline in FormDataBenchmark
+    String buildFormData(String from, String to, String subject, String body) {
         return "from=" + encode(from) +
                 "&to=" + encode(to) +
                 "&subject=" + encode(subject) +
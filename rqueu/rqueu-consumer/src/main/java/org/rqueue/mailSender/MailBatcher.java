@@ -0,0 +1,122 @@
+package org.rqueue.mailSender;
+
+import org.sharedLib.EmailDTO;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Gathers emails that share from, subject, body and send shard into one provider call.
+ * A group is flushed when it reaches maxSize or maxWaitMs after its first email, whichever comes first.
+ * Every caller gets its own future, completed with the outcome of the batch it ended up in,
+ * so the listener still throws (and Rqueue still retries) per message.
+ */
+class MailBatcher {
+
+    private record BatchKey(SendShards.Shard shard, String from, String subject, String body) { }
+
+    private static class PendingBatch {
+        final BatchKey key;
+        final List<EmailDTO> emails = new ArrayList<>();
+        final List<CompletableFuture<Void>> results = new ArrayList<>();
+
+        PendingBatch(BatchKey key) {
+            this.key = key;
+        }
+    }
+
+    // Changed at runtime by the tuning endpoint, open batches keep the values they started with
+    private volatile int maxSize;
+    private volatile long maxWaitMs;
+    private final Function<String, SendShards.Shard> router;
+    private final BiFunction<SendShards.Shard, List<EmailDTO>, CompletableFuture<Boolean>> sender;
+    private final Map<BatchKey, PendingBatch> open = new HashMap<>();
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "mail-batcher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    MailBatcher(int maxSize, long maxWaitMs, Function<String, SendShards.Shard> router,
+                BiFunction<SendShards.Shard, List<EmailDTO>, CompletableFuture<Boolean>> sender) {
+        this.maxSize = maxSize;
+        this.maxWaitMs = maxWaitMs;
+        this.router = router;
+        this.sender = sender;
+    }
+
+    CompletableFuture<Void> submit(EmailDTO email, String from) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        PendingBatch full = null;
+
+        synchronized (this) {
+            BatchKey key = new BatchKey(router.apply(email.getTo()), from, email.getSubject(), email.getBody());
+            PendingBatch batch = open.get(key);
+            if (batch == null) {
+                batch = new PendingBatch(key);
+                open.put(key, batch);
+                PendingBatch scheduled = batch;
+                timer.schedule(() -> flushIfOpen(scheduled), maxWaitMs, TimeUnit.MILLISECONDS);
+            }
+            batch.emails.add(email);
+            batch.results.add(result);
+
+            if (batch.emails.size() >= maxSize) {
+                open.remove(key);
+                full = batch;
+            }
+        }
+
+        if (full != null) flush(full);
+        return result;
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    long getMaxWaitMs() {
+        return maxWaitMs;
+    }
+
+    void setMaxWaitMs(long maxWaitMs) {
+        this.maxWaitMs = maxWaitMs;
+    }
+
+    private void flushIfOpen(PendingBatch batch) {
+        synchronized (this) {
+            if (open.get(batch.key) != batch) return; // already flushed because it filled up
+            open.remove(batch.key);
+        }
+        flush(batch);
+    }
+
+    // Fan the single provider outcome back out to every listener waiting on this batch.
+    // The sender may first wait for a token of the batch's shard, on the timer thread too
+    private void flush(PendingBatch batch) {
+        sender.apply(batch.key.shard(), batch.emails).whenComplete((ok, ex) -> {
+            for (CompletableFuture<Void> result : batch.results) {
+                if (ex != null) {
+                    result.completeExceptionally(ex);
+                } else if (!Boolean.TRUE.equals(ok)) {
+                    result.completeExceptionally(new RuntimeException("Error, Mail Provider rejected batch of " + batch.emails.size()));
+                } else {
+                    result.complete(null);
+                }
+            }
+        });
+    }
+}
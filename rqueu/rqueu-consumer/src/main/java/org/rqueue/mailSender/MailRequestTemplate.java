@@ -0,0 +1,136 @@
+package org.rqueue.mailSender;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The parts of a provider call that never change, built once per sender: URI, headers and the
+ * form-encoded "from=...&to=" prefix for each sender address seen (there are only a few).
+ *
+ * Per message only to/subject/text are form-encoded, measured first and then written straight into
+ * one exact-size byte[] that becomes the request body. No intermediate Strings, no StringBuilder.
+ * The array is not reused because the client reads it asynchronously after sendAsync returns.
+ * Encoding matches URLEncoder (UTF-8): letters, digits and ".-*_" as they are, space as '+',
+ * everything else %XX.
+ */
+public class MailRequestTemplate {
+
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SUBJECT = "&subject=".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TEXT = "&text=".getBytes(StandardCharsets.US_ASCII);
+    private static final int MAX_CACHED_FROM = 64;
+
+    /** Skips the body of a 200 response, reads it only when the call failed and it is worth logging. */
+    public static final HttpResponse.BodyHandler<String> BODY_ON_ERROR = info -> info.statusCode() == 200
+            ? HttpResponse.BodySubscribers.replacing(null)
+            : HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8);
+
+    private final HttpRequest.Builder base;
+    private final Map<String, byte[]> fromPrefixes = new ConcurrentHashMap<>();
+
+    public MailRequestTemplate(String url, String apiKey) {
+        this.base = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .header("Authorization", "Basic " + Base64.getEncoder().encodeToString(apiKey.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /** copy() reuses the already validated URI and headers, only the body is new. */
+    public HttpRequest request(byte[] body) {
+        return base.copy().POST(HttpRequest.BodyPublishers.ofByteArray(body)).build();
+    }
+
+    public byte[] formBody(String from, String to, String subject, String text) {
+        to = nullToEmpty(to);
+        subject = nullToEmpty(subject);
+        text = nullToEmpty(text);
+        byte[] fromPrefix = fromPrefix(nullToEmpty(from));
+
+        byte[] body = new byte[fromPrefix.length + encodedLength(to)
+                + SUBJECT.length + encodedLength(subject) + TEXT.length + encodedLength(text)];
+        int pos = put(fromPrefix, body, 0);
+        pos = writeEncoded(to, body, pos);
+        pos = put(SUBJECT, body, pos);
+        pos = writeEncoded(subject, body, pos);
+        pos = put(TEXT, body, pos);
+        writeEncoded(text, body, pos);
+        return body;
+    }
+
+    private byte[] fromPrefix(String from) {
+        byte[] prefix = fromPrefixes.get(from);
+        if (prefix != null) return prefix;
+
+        prefix = new byte[5 + encodedLength(from) + 4];
+        int pos = put("from=".getBytes(StandardCharsets.US_ASCII), prefix, 0);
+        pos = writeEncoded(from, prefix, pos);
+        put("&to=".getBytes(StandardCharsets.US_ASCII), prefix, pos);
+        // Sender addresses come from the messages, do not let odd traffic grow the cache without bound
+        if (fromPrefixes.size() < MAX_CACHED_FROM) fromPrefixes.put(from, prefix);
+        return prefix;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    private static int put(byte[] constant, byte[] out, int pos) {
+        System.arraycopy(constant, 0, out, pos, constant.length);
+        return pos + constant.length;
+    }
+
+    static int encodedLength(String value) {
+        if (!isAscii(value)) {
+            int length = 0;
+            for (byte b : value.getBytes(StandardCharsets.UTF_8)) length += isUnreserved(b) || b == ' ' ? 1 : 3;
+            return length;
+        }
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            length += isUnreserved(c) || c == ' ' ? 1 : 3;
+        }
+        return length;
+    }
+
+    static int writeEncoded(String value, byte[] out, int pos) {
+        if (!isAscii(value)) {
+            // Rare here, pay for the UTF-8 bytes only then
+            for (byte b : value.getBytes(StandardCharsets.UTF_8)) pos = writeByte(b, out, pos);
+            return pos;
+        }
+        for (int i = 0; i < value.length(); i++) pos = writeByte((byte) value.charAt(i), out, pos);
+        return pos;
+    }
+
+    private static int writeByte(byte b, byte[] out, int pos) {
+        if (isUnreserved(b)) {
+            out[pos++] = b;
+        } else if (b == ' ') {
+            out[pos++] = '+';
+        } else {
+            out[pos++] = '%';
+            out[pos++] = HEX[(b >> 4) & 0xF];
+            out[pos++] = HEX[b & 0xF];
+        }
+        return pos;
+    }
+
+    private static boolean isUnreserved(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '.' || c == '-' || c == '*' || c == '_';
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,168 @@
+package org.rqueue.mailSender;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Routes every provider call to a shard by recipient domain. A shard is one provider endpoint with
+ * its own request template, its own token bucket and two HttpClients (so two connection pools):
+ * one for VIP mail and one for STANDARD, so a STANDARD burst never holds the connections VIP needs.
+ *
+ * Shards are listed in email.shards.names, each configured under email.shards.<name>.*
+ * (url, key, domains, rate-per-sec, burst, vip-reserve). Domains no shard lists go to the shard
+ * without domains, or the first one.
+ */
+@Component
+public class SendShards {
+
+    private static final Logger logger = LoggerFactory.getLogger(SendShards.class);
+
+    public static class Shard {
+        private final String name;
+        final MailRequestTemplate template;
+        private final TokenBucket bucket;
+        private final HttpClient vipClient;
+        private final HttpClient standardClient;
+
+        // Lock-free per-shard usage, drained by DeliveryMetricsExporter
+        private final LongAdder vipSent = new LongAdder();
+        private final LongAdder standardSent = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder throttledNanos = new LongAdder();
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        Shard(String name, String url, String apiKey, TokenBucket bucket, String executionMode) {
+            this.name = name;
+            this.template = new MailRequestTemplate(url, apiKey);
+            this.bucket = bucket;
+            this.vipClient = newClient(executionMode);
+            this.standardClient = newClient(executionMode);
+        }
+
+        /** Waits for a token of this shard's bucket (one per provider call) and returns the lane's client. */
+        HttpClient acquire(boolean vip) {
+            throttledNanos.add(bucket.acquire(vip));
+            inFlight.incrementAndGet();
+            return vip ? vipClient : standardClient;
+        }
+
+        void completed(boolean vip, boolean success, int emails) {
+            inFlight.decrementAndGet();
+            if (!success) errors.add(emails);
+            else if (vip) vipSent.add(emails);
+            else standardSent.add(emails);
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public double ratePerSec() {
+            return bucket.ratePerSec();
+        }
+
+        public long drainVipSent() {
+            return vipSent.sumThenReset();
+        }
+
+        public long drainStandardSent() {
+            return standardSent.sumThenReset();
+        }
+
+        public long drainErrors() {
+            return errors.sumThenReset();
+        }
+
+        public long drainThrottledNanos() {
+            return throttledNanos.sumThenReset();
+        }
+
+        public int inFlight() {
+            return inFlight.get();
+        }
+    }
+
+    private final List<Shard> shards = new ArrayList<>();
+    private final Map<String, Shard> byDomain = new HashMap<>();
+    private final Shard fallback;
+
+    @Autowired
+    public SendShards(@Value("${email.shards.names:default}") String names,
+                      @Value("${mail.provider.url}") String defaultUrl,
+                      @Value("${mail.provider.key}") String defaultKey,
+                      @Value("${email.consumer.execution-mode:platform}") String executionMode,
+                      Environment env) {
+        Shard fallback = null;
+        for (String name : names.split(",")) {
+            name = name.trim();
+            if (name.isEmpty()) continue;
+            String prefix = "email.shards." + name + ".";
+            TokenBucket bucket = new TokenBucket(
+                    env.getProperty(prefix + "rate-per-sec", Double.class, 0.0),
+                    env.getProperty(prefix + "burst", Integer.class, 100),
+                    env.getProperty(prefix + "vip-reserve", Double.class, 0.3));
+            Shard shard = new Shard(name, env.getProperty(prefix + "url", defaultUrl),
+                    env.getProperty(prefix + "key", defaultKey), bucket, executionMode);
+            shards.add(shard);
+
+            String domains = env.getProperty(prefix + "domains", "");
+            for (String domain : domains.split(",")) {
+                if (!domain.isBlank()) byDomain.put(domain.trim().toLowerCase(Locale.ROOT), shard);
+            }
+            if (fallback == null && domains.isBlank()) fallback = shard;
+            logger.info("Send shard {} | Rate: {}/s | Domains: {}", name,
+                    bucket.ratePerSec() == 0 ? "unlimited" : (long) bucket.ratePerSec(), domains.isBlank() ? "*" : domains);
+        }
+        if (shards.isEmpty()) throw new IllegalArgumentException("email.shards.names lists no shard");
+        this.fallback = fallback != null ? fallback : shards.get(0);
+    }
+
+    private SendShards(Shard only) {
+        shards.add(only);
+        this.fallback = only;
+    }
+
+    /** One unlimited shard, for benchmarks that build an EmailSender without Spring. */
+    public static SendShards single(String url, String apiKey, String executionMode) {
+        return new SendShards(new Shard("default", url, apiKey, new TokenBucket(0, 1, 0), executionMode));
+    }
+
+    Shard route(String to) {
+        if (byDomain.isEmpty() || to == null) return fallback;
+        int at = to.lastIndexOf('@');
+        if (at < 0) return fallback;
+        return byDomain.getOrDefault(to.substring(at + 1).toLowerCase(Locale.ROOT), fallback);
+    }
+
+    public List<Shard> all() {
+        return shards;
+    }
+
+    static boolean isVip(String subject) {
+        return subject != null && subject.toUpperCase(Locale.ROOT).contains("VIP");
+    }
+
+    private static HttpClient newClient(String executionMode) {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofSeconds(10));
+        // Response callbacks on virtual threads too, so join() in a listener never waits on a platform pool
+        if ("virtual".equalsIgnoreCase(executionMode)) builder.executor(Executors.newVirtualThreadPerTaskExecutor());
+        return builder.build();
+    }
+}
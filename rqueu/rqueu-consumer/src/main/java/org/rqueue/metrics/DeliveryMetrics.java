@@ -0,0 +1,96 @@
+package org.rqueue.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process delivery metrics per subject (VIP / STANDARD), so reports no longer need the log file.
+ * Recording only touches HdrHistogram Recorders and adders; DeliveryMetricsExporter reads them out.
+ */
+@Component
+public class DeliveryMetrics {
+
+    public static final class Stream {
+        public final String subject;
+
+        final Recorder lagMs = new Recorder(3);
+        final Recorder providerMicros = new Recorder(3);
+        final Recorder queueWaitMs = new Recorder(3);
+        final Recorder batchSize = new Recorder(3);
+        final LongAdder sent = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final LongAdder dedupHits = new LongAdder();
+        final LongAdder dedupMisses = new LongAdder();
+        final LongAdder deliveredTotal = new LongAdder(); // never reset
+
+        // Last interval histograms, handed back to their recorder for reuse (exporter thread only)
+        Histogram lagInterval, providerInterval, queueWaitInterval, batchInterval;
+
+        // Whole-run totals, only touched by the exporter thread
+        final Histogram totalLagMs = new Histogram(3);
+        long totalSent;
+        long totalErrors;
+
+        Stream(String subject) {
+            this.subject = subject;
+        }
+
+        /** Time a listener spent waiting for a worker slot before sending. */
+        public void recordQueueWait(long millis) {
+            queueWaitMs.recordValue(Math.max(0, millis));
+        }
+
+        /** Result of the DeliveryDedup lookup before a send; a hit means the email was skipped. */
+        public void recordDedup(boolean duplicate) {
+            if (duplicate) dedupHits.increment(); else dedupMisses.increment();
+        }
+
+        public void recordBatch(int size) {
+            batchSize.recordValue(size);
+        }
+
+        public void sendStarted() {
+            inFlight.incrementAndGet();
+        }
+
+        public void delivered(long lagMillis) {
+            sent.increment();
+            deliveredTotal.increment();
+            lagMs.recordValue(Math.max(0, lagMillis));
+        }
+
+        public void sendFinished(boolean success, long providerNanos, int count) {
+            inFlight.decrementAndGet();
+            providerMicros.recordValue(Math.max(0, providerNanos / 1000));
+            if (!success) errors.add(count);
+        }
+    }
+
+    private final Map<String, Stream> streams = new ConcurrentHashMap<>();
+
+    public Stream stream(String subject) {
+        String key = subject != null ? subject : "UNKNOWN";
+        Stream stream = streams.get(key);
+        return stream != null ? stream : streams.computeIfAbsent(key, Stream::new);
+    }
+
+    /** Emails delivered since startup, over all subjects. The load-test harness waits on it. */
+    public long deliveredCount() {
+        long total = 0;
+        for (Stream stream : streams.values()) total += stream.deliveredTotal.sum();
+        return total;
+    }
+
+    List<Stream> all() {
+        return new ArrayList<>(streams.values());
+    }
+}
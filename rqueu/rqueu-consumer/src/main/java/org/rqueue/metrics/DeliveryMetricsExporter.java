@@ -0,0 +1,186 @@
+package org.rqueue.metrics;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.HdrHistogram.Histogram;
+import org.rqueue.mailSender.SendShards;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes DeliveryMetrics (and the send shards' counters) to three CSVs every interval:
+ *
+ *  - log_report.csv: this run so far, one row per subject, same leading columns as
+ *    log-eval/log_report.csv plus lag percentiles.
+ *  - metrics_timeseries.csv: one row per subject per interval (throughput, lag/provider/queue-wait
+ *    percentiles, batch size, in-flight, error rate).
+ *  - shards_timeseries.csv: one row per send shard per interval (VIP/STANDARD emails sent, errors,
+ *    time spent waiting for the shard's token bucket, in-flight calls).
+ */
+@Component
+public class DeliveryMetricsExporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeliveryMetricsExporter.class);
+
+    private static final String REPORT_HEADER = "report_id,subject,concurrency,avg_time(sc),max_time(sc),"
+            + "total_mails,total_errors,p50(sc),p90(sc),p99(sc),p999(sc)";
+    private static final String SERIES_HEADER = "timestamp,subject,sent,errors,error_rate,throughput(msg/s),"
+            + "lag_p50(ms),lag_p99(ms),lag_max(ms),provider_p50(ms),provider_p99(ms),queue_wait_p99(ms),"
+            + "avg_batch_size,in_flight,dedup_hits,dedup_misses";
+    private static final String SHARD_HEADER = "timestamp,shard,rate_limit(msg/s),vip_sent,standard_sent,errors,"
+            + "throughput(msg/s),throttled(ms),in_flight";
+
+    private final DeliveryMetrics metrics;
+    private final SendShards shards;
+    private final Path directory;
+    private final long intervalMs;
+    private final String concurrencyHigh;
+    private final String concurrencyLow;
+    private final long reportId = System.currentTimeMillis() / 1000;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "metrics-exporter");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private long lastExportMs = System.currentTimeMillis();
+
+    public DeliveryMetricsExporter(DeliveryMetrics metrics,
+                                   SendShards shards,
+                                   @Value("${email.metrics.dir:metrics}") String directory,
+                                   @Value("${email.metrics.interval-ms:5000}") long intervalMs,
+                                   @Value("${email.consumer.concurrency.high}") String concurrencyHigh,
+                                   @Value("${email.consumer.concurrency.low}") String concurrencyLow) {
+        this.metrics = metrics;
+        this.shards = shards;
+        this.directory = Path.of(directory);
+        this.intervalMs = intervalMs;
+        this.concurrencyHigh = concurrencyHigh;
+        this.concurrencyLow = concurrencyLow;
+    }
+
+    @PostConstruct
+    void start() {
+        scheduler.scheduleAtFixedRate(this::exportQuietly, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        scheduler.shutdown();
+        exportQuietly();
+    }
+
+    private void exportQuietly() {
+        try {
+            export();
+        } catch (Exception e) {
+            logger.warn("Metrics export failed: {}", e.getMessage());
+        }
+    }
+
+    private synchronized void export() throws IOException {
+        Files.createDirectories(directory);
+        long now = System.currentTimeMillis();
+        double seconds = Math.max(1, now - lastExportMs) / 1000.0;
+        lastExportMs = now;
+
+        List<DeliveryMetrics.Stream> streams = metrics.all();
+        Path series = directory.resolve("metrics_timeseries.csv");
+        boolean newSeries = !Files.exists(series);
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(series,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+            if (newSeries) out.println(SERIES_HEADER);
+
+            for (DeliveryMetrics.Stream s : streams) {
+                Histogram lag = s.lagInterval = s.lagMs.getIntervalHistogram(s.lagInterval);
+                Histogram provider = s.providerInterval = s.providerMicros.getIntervalHistogram(s.providerInterval);
+                Histogram queueWait = s.queueWaitInterval = s.queueWaitMs.getIntervalHistogram(s.queueWaitInterval);
+                Histogram batch = s.batchInterval = s.batchSize.getIntervalHistogram(s.batchInterval);
+                long sent = s.sent.sumThenReset();
+                long errors = s.errors.sumThenReset();
+
+                s.totalLagMs.add(lag);
+                s.totalSent += sent;
+                s.totalErrors += errors;
+
+                out.println(String.format(Locale.ROOT, "%d,%s,%d,%d,%.4f,%.1f,%d,%d,%d,%.2f,%.2f,%d,%.1f,%d,%d,%d",
+                        now, s.subject, sent, errors,
+                        sent + errors == 0 ? 0.0 : (double) errors / (sent + errors),
+                        sent / seconds,
+                        lag.getValueAtPercentile(50), lag.getValueAtPercentile(99), lag.getMaxValue(),
+                        provider.getValueAtPercentile(50) / 1000.0, provider.getValueAtPercentile(99) / 1000.0,
+                        queueWait.getValueAtPercentile(99),
+                        batch.getTotalCount() == 0 ? 0.0 : batch.getMean(),
+                        s.inFlight.get(), s.dedupHits.sumThenReset(), s.dedupMisses.sumThenReset()));
+            }
+        }
+
+        writeShardSeries(now, seconds);
+        writeRunReport(streams);
+    }
+
+    private void writeShardSeries(long now, double seconds) throws IOException {
+        Path series = directory.resolve("shards_timeseries.csv");
+        boolean newSeries = !Files.exists(series);
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(series,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+            if (newSeries) out.println(SHARD_HEADER);
+
+            for (SendShards.Shard shard : shards.all()) {
+                long vip = shard.drainVipSent();
+                long standard = shard.drainStandardSent();
+                out.println(String.format(Locale.ROOT, "%d,%s,%.0f,%d,%d,%d,%.1f,%d,%d",
+                        now, shard.name(), shard.ratePerSec(), vip, standard, shard.drainErrors(),
+                        (vip + standard) / seconds, TimeUnit.NANOSECONDS.toMillis(shard.drainThrottledNanos()),
+                        shard.inFlight()));
+            }
+        }
+    }
+
+    // Rewritten every interval and renamed into place
+    private void writeRunReport(List<DeliveryMetrics.Stream> streams) throws IOException {
+        long totalErrors = 0;
+        for (DeliveryMetrics.Stream s : streams) totalErrors += s.totalErrors;
+
+        Path tmp = directory.resolve("log_report.csv.tmp");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(tmp))) {
+            out.println(REPORT_HEADER);
+            for (DeliveryMetrics.Stream s : streams) {
+                Histogram h = s.totalLagMs;
+                if (h.getTotalCount() == 0) continue;
+
+                out.println(String.format(Locale.ROOT, "%d,%s,%s,%.2f,%.2f,%d,%d,%.2f,%.2f,%.2f,%.2f",
+                        reportId, s.subject, concurrencyFor(s.subject),
+                        h.getMean() / 1000.0, h.getMaxValue() / 1000.0, s.totalSent, totalErrors,
+                        h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(90) / 1000.0,
+                        h.getValueAtPercentile(99) / 1000.0, h.getValueAtPercentile(99.9) / 1000.0));
+            }
+        }
+        Files.move(tmp, directory.resolve("log_report.csv"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Same mapping as log-eval/log-analyzer.py
+    private String concurrencyFor(String subject) {
+        String upper = subject.toUpperCase(Locale.ROOT);
+        if (upper.contains("VIP")) return concurrencyHigh;
+        if (upper.contains("STANDARD")) return concurrencyLow;
+        return "Unknown";
+    }
+}
@@ -0,0 +1,168 @@
+package org.rqueue.tuning;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Changes tuning settings of the running consumer instead of editing application.properties and
+ * restarting.
+ *
+ * A small HTTP endpoint on the loopback interface only:
+ *   GET  /tuning                             current values, one name=value per line
+ *   POST /tuning?highConcurrency=8&...       applies them (query or form body), answers with the new values
+ * All values are checked before any is applied. Every change is logged and appended to
+ * tuning_changes.csv (timestamp in epoch ms, like metrics_timeseries.csv, so a change lines up
+ * with the interval it took effect in).
+ */
+public class TuningControl {
+
+    private static final Logger logger = LoggerFactory.getLogger(TuningControl.class);
+
+    private static final String CHANGE_HEADER = "timestamp,setting,old_value,new_value,source";
+
+    private record Setting(long min, long max, LongSupplier current, LongConsumer apply) { }
+
+    private final Map<String, Setting> settings = new LinkedHashMap<>();
+    private final Path changeLog;
+    private HttpServer server;
+
+    public TuningControl(Path changeLog) {
+        this.changeLog = changeLog;
+    }
+
+    public TuningControl register(String name, long min, long max, LongSupplier current, LongConsumer apply) {
+        settings.put(name, new Setting(min, max, current, apply));
+        return this;
+    }
+
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/tuning", this::handle);
+        server.start();
+        logger.info("Tuning endpoint on http://{}:{}/tuning | Settings: {}", InetAddress.getLoopbackAddress().getHostAddress(),
+                server.getAddress().getPort(), settings.keySet());
+    }
+
+    public void stop() {
+        if (server != null) server.stop(0);
+    }
+
+    public synchronized Map<String, Long> current() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        settings.forEach((name, setting) -> values.put(name, setting.current().getAsLong()));
+        return values;
+    }
+
+    /** Checks every value first, then applies them in the order given. Throws IllegalArgumentException on a bad one. */
+    public synchronized Map<String, Long> apply(Map<String, String> changes, String source) {
+        Map<String, Long> parsed = new LinkedHashMap<>();
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            Setting setting = settings.get(e.getKey());
+            if (setting == null) throw new IllegalArgumentException("Unknown setting " + e.getKey() + ", known: " + settings.keySet());
+            long value;
+            try {
+                value = Long.parseLong(e.getValue().trim());
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException(e.getKey() + " must be a number, got '" + e.getValue() + "'");
+            }
+            if (value < setting.min() || value > setting.max()) {
+                throw new IllegalArgumentException(e.getKey() + " must be between " + setting.min() + " and " + setting.max());
+            }
+            parsed.put(e.getKey(), value);
+        }
+
+        for (Map.Entry<String, Long> e : parsed.entrySet()) {
+            Setting setting = settings.get(e.getKey());
+            long old = setting.current().getAsLong();
+            if (old == e.getValue()) continue;
+            setting.apply().accept(e.getValue());
+            record(e.getKey(), old, e.getValue(), source);
+        }
+        return current();
+    }
+
+    private void record(String name, long old, long value, String source) {
+        logger.info("[TUNING] {} {} -> {} | source: {}", name, old, value, source);
+        try {
+            if (changeLog.getParent() != null) Files.createDirectories(changeLog.getParent());
+            boolean exists = Files.exists(changeLog);
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(changeLog,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+                if (!exists) out.println(CHANGE_HEADER);
+                out.println(System.currentTimeMillis() + "," + name + "," + old + "," + value + "," + source);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not write {}: {}", changeLog, e.getMessage());
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            if (method.equals("GET")) {
+                respond(exchange, 200, format(current()));
+            } else if (method.equals("POST")) {
+                Map<String, String> changes = parse(exchange.getRequestURI().getRawQuery());
+                try (InputStream body = exchange.getRequestBody()) {
+                    changes.putAll(parse(new String(body.readAllBytes(), StandardCharsets.UTF_8)));
+                }
+                String source = "http " + exchange.getRemoteAddress().getAddress().getHostAddress();
+                try {
+                    respond(exchange, 200, format(apply(changes, source)));
+                } catch (IllegalArgumentException e) {
+                    respond(exchange, 400, e.getMessage() + "\n");
+                } catch (RuntimeException e) {
+                    logger.warn("Applying {} failed", changes, e);
+                    respond(exchange, 500, "Failed: " + e.getMessage() + "\n" + format(current()));
+                }
+            } else {
+                respond(exchange, 405, "GET or POST\n");
+            }
+        }
+    }
+
+    private static Map<String, String> parse(String form) {
+        Map<String, String> values = new LinkedHashMap<>();
+        if (form == null || form.isBlank()) return values;
+        for (String pair : form.trim().split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            values.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+
+    private static String format(Map<String, Long> values) {
+        StringBuilder text = new StringBuilder();
+        values.forEach((name, value) -> text.append(name).append('=').append(value).append('\n'));
+        return text.toString();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.rqueue.tuning;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.rqueue.autoscale.ConcurrencyGate;
+import org.rqueue.autoscale.ListenerGates;
+import org.rqueue.mailSender.EmailSender;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Runtime tuning for the listeners (email.tuning.enabled=true), see TuningControl for the endpoint.
+ *
+ *  - highConcurrency / lowConcurrency: the listener's worker gate. Rqueue fixes its thread count at
+ *    startup, so the @RqueueListener range max (the virtual permits in the virtual profile) is the
+ *    most a listener can go up to. With the autoscaler on it keeps adjusting from the new value.
+ *  - batchMaxSize / batchMaxWaitMs: provider batching, only when email.batch.enabled.
+ */
+@Component
+@ConditionalOnProperty(name = "email.tuning.enabled", havingValue = "true")
+public class TuningEndpoint {
+
+    private static final Logger logger = LoggerFactory.getLogger(TuningEndpoint.class);
+
+    private final TuningControl control;
+    private final int port;
+
+    public TuningEndpoint(ListenerGates gates, EmailSender emailSender,
+                          @Value("${email.tuning.port:8092}") int port,
+                          @Value("${email.metrics.dir:metrics}") String metricsDir) {
+        this.port = port;
+        this.control = new TuningControl(Path.of(metricsDir, "tuning_changes.csv"));
+        concurrency("highConcurrency", gates.high(), gates.highListenerMax());
+        concurrency("lowConcurrency", gates.low(), gates.lowListenerMax());
+        if (emailSender.batching()) {
+            // Mailgun takes at most 1000 recipients per call
+            control.register("batchMaxSize", 1, 1000, emailSender::getBatchMaxSize,
+                    v -> emailSender.setBatchMaxSize((int) v));
+            control.register("batchMaxWaitMs", 1, 60_000, emailSender::getBatchMaxWaitMs,
+                    emailSender::setBatchMaxWaitMs);
+        }
+    }
+
+    // A wide open gate (no autoscaler) reads as the listener max, which is what limits it then
+    private void concurrency(String name, ConcurrencyGate gate, int max) {
+        control.register(name, 1, max, () -> Math.min(gate.getLimit(), max), v -> gate.setLimit((int) v));
+    }
+
+    @PostConstruct
+    void start() {
+        try {
+            control.start(port);
+        } catch (IOException e) {
+            logger.warn("Tuning endpoint not started on port {}: {}", port, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        control.stop();
+    }
+}
@@ -0,0 +1,183 @@
+package org.harness;
+
+import com.github.sonus21.rqueue.core.RqueueMessageEnqueuer;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import org.rqueue.RqueuConsumerApplication;
+import org.rqueue.metrics.DeliveryMetrics;
+import org.sharedLib.EmailDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+
+/**
+ * Runs the real consumer application end to end without any external services:
+ * an embedded redis-server (fresh per run, random port), an in-process WireMock as mail provider,
+ * and the consumer's Spring context started with the run's settings. Every run (see RunConfig)
+ * writes the usual metrics/log_report.csv into its own folder; the harness then collects all runs
+ * into one log_report.csv and a summary.csv under harness-results/<timestamp>/.
+ */
+public class LoadTestHarness {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadTestHarness.class);
+
+    private static final String HIGH_QUEUE = "high-priority-mails";
+    private static final String LOW_QUEUE  = "low-priority-mails";
+    private static final String MAIL_PATH  = "/v3/sandbox.mailgun.org/messages";
+
+    private static final long TIMEOUT_MS = Long.getLong("harness.timeoutSec", 600) * 1000;
+
+    private static final String SUMMARY_HEADER = "run," + RunConfig.csvHeader()
+            + ",duration(sc),throughput(msg/s),delivered,total_errors,worst_p99(sc),timed_out";
+
+    public static void main(String[] args) throws Exception {
+        List<RunConfig> runs = RunConfig.matrixFromSystemProperties();
+        Path resultDir = Path.of(System.getProperty("harness.out", "harness-results"),
+                LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")));
+        Files.createDirectories(resultDir);
+        logger.info("{} runs, results in {}", runs.size(), resultDir.toAbsolutePath());
+
+        WireMockServer wireMock = new WireMockServer(options().dynamicPort().containerThreads(200).disableRequestJournal());
+        wireMock.start();
+
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                RunConfig config = runs.get(i);
+                logger.info("Run {}/{}: {}", i + 1, runs.size(), config);
+                stubProvider(wireMock, config.providerDelayMs());
+
+                Path runDir = resultDir.resolve("run-" + (i + 1));
+                RunResult result = runOnce(config, runDir, "http://localhost:" + wireMock.port() + MAIL_PATH);
+                collect(resultDir, runDir, i + 1, config, result);
+                logger.info("Run {} done: {} delivered in {}s ({} msg/s){}", i + 1, result.delivered,
+                        String.format(Locale.ROOT, "%.1f", result.durationMs / 1000.0),
+                        String.format(Locale.ROOT, "%.0f", result.throughput()),
+                        result.timedOut ? " TIMED OUT" : "");
+            }
+        } finally {
+            wireMock.stop();
+        }
+        logger.info("Summary: {}", resultDir.resolve("summary.csv").toAbsolutePath());
+    }
+
+    private record RunResult(long durationMs, long delivered, boolean timedOut) {
+        double throughput() {
+            return durationMs == 0 ? 0 : delivered * 1000.0 / durationMs;
+        }
+    }
+
+    // Same response as WireMockInitializer's mapping, with an optional fixed provider latency
+    private static void stubProvider(WireMockServer wireMock, int delayMs) {
+        wireMock.resetAll();
+        wireMock.stubFor(post(urlEqualTo(MAIL_PATH)).willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"id\": \"<2023.123@mailgun.org>\", \"message\": \"Queued\"}")
+                .withFixedDelay(delayMs)));
+    }
+
+    private static RunResult runOnce(RunConfig config, Path runDir, String mailUrl) throws Exception {
+        int redisPort = freePort();
+        RedisServer redis = new RedisServer(redisPort);
+        redis.start();
+
+        // Command line args, so they win over application.properties and the virtual profile
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.data.redis.host=localhost",
+                "--spring.data.redis.port=" + redisPort,
+                "--mail.provider.url=" + mailUrl,
+                "--email.metrics.dir=" + runDir,
+                "--email.journal.dir=" + runDir.resolve("journal")));
+        if (!config.virtual()) {
+            args.add("--email.consumer.concurrency.high=" + config.concurrencyHigh());
+            args.add("--email.consumer.concurrency.low=" + config.concurrencyLow());
+        }
+
+        ConfigurableApplicationContext context = null;
+        long start = System.currentTimeMillis();
+        long delivered = 0;
+        boolean timedOut;
+        try {
+            // WireMockInitializer starts the listener container before run() returns
+            SpringApplicationBuilder app = new SpringApplicationBuilder(RqueuConsumerApplication.class)
+                    .web(WebApplicationType.NONE);
+            if (config.virtual()) app.profiles("virtual");
+            context = app.run(args.toArray(new String[0]));
+            RqueueMessageEnqueuer enqueuer = context.getBean(RqueueMessageEnqueuer.class);
+            DeliveryMetrics metrics = context.getBean(DeliveryMetrics.class);
+
+            // Same messages and send loop as the producer's RqueueProducerRunner, both queues at once
+            start = System.currentTimeMillis();
+            Thread high = Thread.ofPlatform().start(() -> enqueue(enqueuer, HIGH_QUEUE, config.highMessages(), "VIP"));
+            Thread low = Thread.ofPlatform().start(() -> enqueue(enqueuer, LOW_QUEUE, config.lowMessages(), "STANDARD"));
+            high.join();
+            low.join();
+
+            long deadline = start + TIMEOUT_MS;
+            while (metrics.deliveredCount() < config.totalMessages() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            delivered = metrics.deliveredCount();
+            timedOut = delivered < config.totalMessages();
+        } finally {
+            // Closing the context drains the listeners and writes the final metrics report
+            if (context != null) context.close();
+            redis.stop();
+        }
+        return new RunResult(System.currentTimeMillis() - start, delivered, timedOut);
+    }
+
+    private static void enqueue(RqueueMessageEnqueuer enqueuer, String queue, int count, String subject) {
+        for (int i = 0; i < count; i++) {
+            enqueuer.enqueue(queue, new EmailDTO("noreply@hitract.se", "user-" + i + "@student.com",
+                    subject, "Please process immediately.", new Date()));
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    // Appends the run's report rows (report_id = run number) to the combined report, plus one summary line
+    private static void collect(Path resultDir, Path runDir, int run, RunConfig config, RunResult result) throws IOException {
+        List<String> rows = Files.readAllLines(runDir.resolve("log_report.csv"));
+        Path combined = resultDir.resolve("log_report.csv");
+        if (!Files.exists(combined)) Files.writeString(combined, rows.get(0) + System.lineSeparator());
+
+        long errors = 0;
+        double worstP99 = 0;
+        List<String> renumbered = new ArrayList<>();
+        for (String row : rows.subList(1, rows.size())) {
+            String[] cols = row.split(",");
+            errors = Math.max(errors, Long.parseLong(cols[6])); // already a total per row
+            worstP99 = Math.max(worstP99, Double.parseDouble(cols[9]));
+            renumbered.add(run + row.substring(row.indexOf(',')));
+        }
+        Files.write(combined, renumbered, StandardOpenOption.APPEND);
+
+        Path summary = resultDir.resolve("summary.csv");
+        if (!Files.exists(summary)) Files.writeString(summary, SUMMARY_HEADER + System.lineSeparator());
+        Files.writeString(summary, String.format(Locale.ROOT, "%d,%s,%.2f,%.1f,%d,%d,%.2f,%s%n",
+                run, config.toCsv(), result.durationMs / 1000.0, result.throughput(), result.delivered,
+                errors, worstP99, result.timedOut), StandardOpenOption.APPEND);
+    }
+}
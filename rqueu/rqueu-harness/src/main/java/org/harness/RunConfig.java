@@ -0,0 +1,68 @@
+package org.harness;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One point of the parameter matrix. Every harness.* system property takes a comma separated
+ * list, and the harness runs the cartesian product of all of them, e.g.
+ * -Dharness.concurrencyHigh=5-10,10-20 -Dharness.concurrencyLow=1-2,2-4 gives four runs.
+ * Concurrency ranges are ignored in virtual mode, which uses email.consumer.virtual.permits instead.
+ */
+public record RunConfig(String mode, String concurrencyHigh, String concurrencyLow,
+                        int highMessages, int lowMessages, int providerDelayMs) {
+
+    // Defaults are the current application.properties and producer counts
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+    static {
+        DEFAULTS.put("mode", "platform");
+        DEFAULTS.put("concurrencyHigh", "5-10");
+        DEFAULTS.put("concurrencyLow", "1-2");
+        DEFAULTS.put("highMessages", "1000");
+        DEFAULTS.put("lowMessages", "10000");
+        DEFAULTS.put("providerDelayMs", "0");
+    }
+
+    public static List<RunConfig> matrixFromSystemProperties() {
+        List<String[]> axes = new ArrayList<>();
+        for (Map.Entry<String, String> entry : DEFAULTS.entrySet()) {
+            String[] values = System.getProperty("harness." + entry.getKey(), entry.getValue()).split(",");
+            for (int i = 0; i < values.length; i++) values[i] = values[i].trim();
+            axes.add(values);
+        }
+
+        List<RunConfig> runs = new ArrayList<>();
+        expand(axes, 0, new String[axes.size()], runs);
+        return runs;
+    }
+
+    private static void expand(List<String[]> axes, int depth, String[] current, List<RunConfig> out) {
+        if (depth == axes.size()) {
+            out.add(new RunConfig(current[0], current[1], current[2],
+                    Integer.parseInt(current[3]), Integer.parseInt(current[4]), Integer.parseInt(current[5])));
+            return;
+        }
+        for (String value : axes.get(depth)) {
+            current[depth] = value;
+            expand(axes, depth + 1, current, out);
+        }
+    }
+
+    public boolean virtual() {
+        return "virtual".equalsIgnoreCase(mode);
+    }
+
+    public int totalMessages() {
+        return highMessages + lowMessages;
+    }
+
+    static String csvHeader() {
+        return "mode,concurrency_high,concurrency_low,high_messages,low_messages,provider_delay_ms";
+    }
+
+    String toCsv() {
+        return mode + "," + concurrencyHigh + "," + concurrencyLow + "," + highMessages + "," + lowMessages + "," + providerDelayMs;
+    }
+}
@@ -0,0 +1,171 @@
+package org.loganalyzer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the consumer's log lines straight from the mapped bytes:
+ *
+ *   2026-01-01 12:00:00 INFO  - | From: ... | To: ... | Subject: VIP | HTTP: 200 OK | Lag: 314ms
+ *   2026-01-01 11:59:58 INFO  - 🚀 Starting HighConsumers. Concurrency range: 5-10
+ *
+ * Same matching as log-analyzer.py: keywords in any case, the subject is trimmed, and any line
+ * containing "error" in any case counts as an error. One parser per chunk, it is not thread-safe.
+ */
+class DeliveryLineParser {
+
+    private static final byte[] ERROR = ascii("error");
+    private static final byte[] SUBJECT = ascii("subject:");
+    private static final byte[] LAG = ascii("lag:");
+    private static final byte[] MS = ascii("ms");
+    private static final byte[] STARTING = ascii("starting");
+    private static final byte[] HIGH = ascii("highconsumers");
+    private static final byte[] LOW = ascii("lowconsumers");
+    private static final byte[] RANGE = ascii("concurrency range:");
+    private static final int TIMESTAMP_LENGTH = "yyyy-MM-dd HH:mm:ss".length();
+
+    // Subjects repeat on every line, keep one String each
+    private final List<String> names = new ArrayList<>();
+
+    void parse(ByteBuffer buf, int from, int to, LogStats stats) {
+        int line = from;
+        while (line < to) {
+            int end = indexOf(buf, line, to, (byte) '\n');
+            if (end < 0) end = to;
+            parseLine(buf, line, end, stats);
+            stats.lines++;
+            line = end + 1;
+        }
+    }
+
+    private void parseLine(ByteBuffer buf, int from, int to, LogStats stats) {
+        if (indexOf(buf, from, to, ERROR) >= 0) stats.errors++;
+        concurrency(buf, from, to, stats);
+
+        int subject = indexOf(buf, from, to, SUBJECT);
+        if (subject < 0) return;
+        subject += SUBJECT.length;
+        int subjectEnd = indexOf(buf, subject, to, (byte) '|');
+        if (subjectEnd <= subject) return;
+
+        for (int lag = indexOf(buf, subjectEnd, to, LAG); lag >= 0; lag = indexOf(buf, lag + 1, to, LAG)) {
+            int pos = skipSpaces(buf, lag + LAG.length, to);
+            long lagMs = 0;
+            int digits = pos;
+            for (; pos < to && isDigit(buf.get(pos)); pos++) lagMs = lagMs * 10 + (buf.get(pos) - '0');
+            if (pos > digits && startsWith(buf, pos, to, MS)) {
+                stats.record(name(buf, subject, subjectEnd), lagMs, second(buf, from, to));
+                return;
+            }
+        }
+    }
+
+    // "Starting HighConsumers. Concurrency range: 5-10", logged once when the listeners start
+    private static void concurrency(ByteBuffer buf, int from, int to, LogStats stats) {
+        for (int start = indexOf(buf, from, to, STARTING); start >= 0; start = indexOf(buf, start + 1, to, STARTING)) {
+            int type = start + STARTING.length;
+            int pos = skipSpaces(buf, type, to);
+            if (pos == type) continue;
+            boolean high = startsWith(buf, pos, to, HIGH);
+            if (!high && !startsWith(buf, pos, to, LOW)) continue;
+
+            int range = indexOf(buf, pos, to, RANGE);
+            if (range < 0) return;
+            int value = skipSpaces(buf, range + RANGE.length, to);
+            int end = value;
+            while (end < to && (isDigit(buf.get(end)) || buf.get(end) == '-')) end++;
+            if (end == value) return;
+
+            String text = text(buf, value, end);
+            if (high) stats.concurrencyHigh = text;
+            else stats.concurrencyLow = text;
+            return;
+        }
+    }
+
+    // The logged "yyyy-MM-dd HH:mm:ss" prefix as yyyyMMddHHmmss, -1 when the line has none
+    private static long second(ByteBuffer buf, int from, int to) {
+        if (to - from < TIMESTAMP_LENGTH) return -1;
+        long value = 0;
+        for (int i = 0; i < TIMESTAMP_LENGTH; i++) {
+            byte b = buf.get(from + i);
+            if (i == 4 || i == 7 || i == 10 || i == 13 || i == 16) continue;
+            if (!isDigit(b)) return -1;
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    private String name(ByteBuffer buf, int from, int to) {
+        from = skipSpaces(buf, from, to);
+        while (to > from && isSpace(buf.get(to - 1))) to--;
+        for (String name : names) {
+            if (equals(buf, from, to, name)) return name;
+        }
+        String name = text(buf, from, to);
+        if (names.size() < 256) names.add(name);
+        return name;
+    }
+
+    private static String text(ByteBuffer buf, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        buf.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean equals(ByteBuffer buf, int from, int to, String name) {
+        if (name.length() != to - from) return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (buf.get(from + i) != (byte) name.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static int skipSpaces(ByteBuffer buf, int from, int to) {
+        while (from < to && isSpace(buf.get(from))) from++;
+        return from;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static byte lower(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    private static boolean startsWith(ByteBuffer buf, int at, int to, byte[] pattern) {
+        if (to - at < pattern.length) return false;
+        for (int j = 0; j < pattern.length; j++) {
+            if (lower(buf.get(at + j)) != pattern[j]) return false;
+        }
+        return true;
+    }
+
+    static int indexOf(ByteBuffer buf, int from, int to, byte value) {
+        for (int i = from; i < to; i++) {
+            if (buf.get(i) == value) return i;
+        }
+        return -1;
+    }
+
+    // Case-insensitive, pattern is lower case ASCII
+    static int indexOf(ByteBuffer buf, int from, int to, byte[] pattern) {
+        byte first = pattern[0];
+        int last = to - pattern.length;
+        for (int i = from; i <= last; i++) {
+            if (lower(buf.get(i)) == first && startsWith(buf, i, to, pattern)) return i;
+        }
+        return -1;
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
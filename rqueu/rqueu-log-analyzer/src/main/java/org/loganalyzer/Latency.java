@@ -0,0 +1,42 @@
+package org.loganalyzer;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Lags of one group of mails. Count, sum and max are exact, so avg and max match
+ * what log-analyzer.py printed; the histogram (3 significant digits) gives the percentiles.
+ */
+class Latency {
+
+    final Histogram histogram = new Histogram(3);
+    long count;
+    long sumMs;
+    long maxMs = Long.MIN_VALUE;
+
+    void record(long ms) {
+        count++;
+        sumMs += ms;
+        if (ms > maxMs) maxMs = ms;
+        // Clock skew between producer and consumer can make it negative, the histogram can't hold that
+        histogram.recordValue(Math.max(0, ms));
+    }
+
+    void add(Latency other) {
+        count += other.count;
+        sumMs += other.sumMs;
+        maxMs = Math.max(maxMs, other.maxMs);
+        histogram.add(other.histogram);
+    }
+
+    double avgSeconds() {
+        return count == 0 ? 0 : sumMs / (double) count / 1000.0;
+    }
+
+    double maxSeconds() {
+        return count == 0 ? 0 : maxMs / 1000.0;
+    }
+
+    double percentileSeconds(double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+}
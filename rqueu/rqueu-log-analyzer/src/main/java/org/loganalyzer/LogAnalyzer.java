@@ -0,0 +1,194 @@
+package org.loganalyzer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+
+/**
+ * Java replacement for log-eval/log-analyzer.py: same input (the consumer's email-consumer.log),
+ * same log_report.csv columns, plus
+ *   latency_report.csv     p50/p90/p99/p99.9/max lag per subject (HdrHistogram)
+ *   throughput_report.csv  mails per subject per second, by the time the line was logged
+ *
+ * The log is memory-mapped in windows of up to WINDOW_BYTES, each split into line-aligned chunks
+ * that are parsed in parallel on a fork-join pool and merged. Only whole lines are read: a line the
+ * consumer is still writing is left for the next run.
+ *
+ * With -Danalyzer.incremental=true a run starts at the offset the previous run stopped at (saved
+ * in state.json), so a log that is appended to across test runs is not read again from the start;
+ * the report then covers only the new lines, with the concurrency ranges logged before them. A log
+ * that is shorter than that offset, or starts differently than it did (CRC of the first bytes, also
+ * in state.json), was rotated or cleared and is read from the start.
+ *
+ *   -Danalyzer.log           the consumer log (default ../rqueu-consumer/logs/email-consumer.log)
+ *   -Danalyzer.out           where the reports and state.json go (default ../log-eval)
+ *   -Danalyzer.incremental   false
+ *   -Danalyzer.threads       parse threads (default: available processors)
+ */
+public class LogAnalyzer {
+
+    private static final long WINDOW_BYTES = 1L << 30; // a MappedByteBuffer holds at most 2 GB
+    private static final int HEAD_BYTES = 256;
+    private static final String UNKNOWN = "Unknown";
+
+    private static final String LOG_HEADER = "report_id,subject,concurrency,avg_time(sc),max_time(sc),total_mails,"
+            + "total_errors";
+    private static final String LATENCY_HEADER = "report_id,subject,concurrency,total_mails,p50_(s),p90_(s),p99_(s),"
+            + "p999_(s),max_(s)";
+    private static final String THROUGHPUT_HEADER = "report_id,subject,second,mails";
+
+    public static void main(String[] args) throws Exception {
+        Path log = Path.of(System.getProperty("analyzer.log", "../rqueu-consumer/logs/email-consumer.log"));
+        Path out = Path.of(System.getProperty("analyzer.out", "../log-eval"));
+        boolean incremental = Boolean.getBoolean("analyzer.incremental");
+        int threads = Integer.getInteger("analyzer.threads", Runtime.getRuntime().availableProcessors());
+
+        if (!Files.exists(log)) {
+            System.out.println("Error: The input file '" + log + "' was not found.");
+            return;
+        }
+        Files.createDirectories(out);
+        AnalyzerState state = AnalyzerState.load(out.resolve("state.json"));
+
+        long began = System.nanoTime();
+        long start;
+        long head;
+        Result result;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.READ)) {
+            long size = channel.size();
+            head = headCrc(channel);
+            start = incremental ? state.getLong("log_offset", 0) : 0;
+            if (start > 0 && (start > size || head != state.getLong("log_head_crc", head))) {
+                System.out.println("Log was rotated or cleared since the last run, reading it from the start");
+                start = 0;
+            }
+            result = analyze(channel, start, size, pool);
+        } finally {
+            pool.shutdown();
+        }
+        long tookMs = (System.nanoTime() - began) / 1_000_000;
+
+        LogStats stats = result.stats;
+        String high = stats.concurrencyHigh != null ? stats.concurrencyHigh
+                : start > 0 ? state.getString("concurrency_high", UNKNOWN) : UNKNOWN;
+        String low = stats.concurrencyLow != null ? stats.concurrencyLow
+                : start > 0 ? state.getString("concurrency_low", UNKNOWN) : UNKNOWN;
+        state.putLong("log_offset", result.end);
+        state.putLong("log_head_crc", head);
+        state.putString("concurrency_high", high);
+        state.putString("concurrency_low", low);
+        if (stats.lines == 0) {
+            state.save();
+            System.out.println("No new lines since offset " + start);
+            return;
+        }
+
+        long reportId = state.nextReportId();
+        if (stats.bySubject.isEmpty()) {
+            System.out.println("No valid email logs found matching pattern.");
+        }
+        writeReports(out, reportId, stats, high, low);
+        state.save();
+
+        System.out.printf(Locale.ROOT, "Success! Reports updated in %s (Report ID: %d, %d lines, %d mails, "
+                        + "%d errors, %.1f MB in %d ms on %d threads)%n",
+                out, reportId, stats.lines, stats.totalMails(), stats.errors, (result.end - start) / 1e6, tookMs, threads);
+    }
+
+    private record Result(LogStats stats, long end) { }
+
+    // Whole lines in [start, size), window by window; end is where the next incremental run starts
+    private static Result analyze(FileChannel channel, long start, long size, ForkJoinPool pool) throws IOException {
+        LogStats total = new LogStats();
+        long pos = start;
+        while (pos < size) {
+            long length = Math.min(WINDOW_BYTES, size - pos);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, pos, length);
+            int whole = lastLineEnd(window, (int) length);
+            if (whole == 0) {
+                if (length == WINDOW_BYTES) throw new IOException("Line longer than " + WINDOW_BYTES + " bytes at " + pos);
+                break; // only a line still being written
+            }
+            total.merge(pool.invoke(new ParseTask(window, 0, whole)));
+            pos += whole;
+        }
+        return new Result(total, pos);
+    }
+
+    // The first line carries a timestamp, so a new log starts differently than the old one did
+    private static long headCrc(FileChannel channel) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(HEAD_BYTES);
+        while (head.hasRemaining() && channel.read(head, head.position()) > 0) { }
+        CRC32 crc = new CRC32();
+        crc.update(head.flip());
+        return crc.getValue();
+    }
+
+    private static int lastLineEnd(ByteBuffer window, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (window.get(i) == '\n') return i + 1;
+        }
+        return 0;
+    }
+
+    private static void writeReports(Path out, long reportId, LogStats stats, String high, String low) throws IOException {
+        try (Writer csv = appender(out.resolve("log_report.csv"), LOG_HEADER)) {
+            for (Map.Entry<String, Latency> e : stats.bySubject.entrySet()) {
+                Latency l = e.getValue();
+                csv.write(String.format(Locale.ROOT, "%d,%s,%s,%.2f,%.2f,%d,%d%n", reportId, e.getKey(),
+                        concurrency(e.getKey(), high, low), l.avgSeconds(), l.maxSeconds(), l.count, stats.errors));
+            }
+        }
+
+        try (Writer csv = appender(out.resolve("latency_report.csv"), LATENCY_HEADER)) {
+            for (Map.Entry<String, Latency> e : stats.bySubject.entrySet()) {
+                Latency l = e.getValue();
+                csv.write(String.format(Locale.ROOT, "%d,%s,%s,%d,%.3f,%.3f,%.3f,%.3f,%.3f%n", reportId, e.getKey(),
+                        concurrency(e.getKey(), high, low), l.count, l.percentileSeconds(50), l.percentileSeconds(90),
+                        l.percentileSeconds(99), l.percentileSeconds(99.9), l.maxSeconds()));
+            }
+        }
+
+        try (Writer csv = appender(out.resolve("throughput_report.csv"), THROUGHPUT_HEADER)) {
+            for (Map.Entry<String, TreeMap<Long, Long>> subject : new TreeMap<>(stats.perSecond).entrySet()) {
+                for (Map.Entry<Long, Long> second : subject.getValue().entrySet()) {
+                    csv.write(reportId + "," + subject.getKey() + "," + formatSecond(second.getKey()) + ","
+                            + second.getValue() + "\n");
+                }
+            }
+        }
+    }
+
+    // VIP mails go to the high queue, STANDARD to the low one
+    private static String concurrency(String subject, String high, String low) {
+        String upper = subject.toUpperCase(Locale.ROOT);
+        return upper.contains("VIP") ? high : upper.contains("STANDARD") ? low : UNKNOWN;
+    }
+
+    // yyyyMMddHHmmss back to the logged yyyy-MM-dd HH:mm:ss
+    private static String formatSecond(long second) {
+        String digits = String.format(Locale.ROOT, "%014d", second);
+        return digits.substring(0, 4) + "-" + digits.substring(4, 6) + "-" + digits.substring(6, 8) + " "
+                + digits.substring(8, 10) + ":" + digits.substring(10, 12) + ":" + digits.substring(12, 14);
+    }
+
+    private static Writer appender(Path file, String header) throws IOException {
+        boolean exists = Files.exists(file) && Files.size(file) > 0;
+        Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (!exists) writer.write(header + "\n");
+        return writer;
+    }
+}
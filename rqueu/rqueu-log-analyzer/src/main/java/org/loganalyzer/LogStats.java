@@ -0,0 +1,50 @@
+package org.loganalyzer;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * What one chunk of the log contained. Chunks are parsed independently and merged left to right,
+ * so subjects keep the order log-analyzer.py reported them in and the last concurrency line wins.
+ */
+class LogStats {
+
+    final Map<String, Latency> bySubject = new LinkedHashMap<>();
+    // Mails per subject per logged second (yyyyMMddHHmmss as a number), for throughput over time
+    final Map<String, TreeMap<Long, Long>> perSecond = new HashMap<>();
+    // Last "Starting High/LowConsumers. Concurrency range: x" in the chunk, null when there was none
+    String concurrencyHigh;
+    String concurrencyLow;
+    long errors;
+    long lines;
+
+    void record(String subject, long lagMs, long second) {
+        bySubject.computeIfAbsent(subject, s -> new Latency()).record(lagMs);
+        if (second >= 0) perSecond.computeIfAbsent(subject, s -> new TreeMap<>()).merge(second, 1L, Long::sum);
+    }
+
+    /** Adds a chunk that comes after this one in the log. */
+    LogStats merge(LogStats later) {
+        later.bySubject.forEach((subject, latency) -> bySubject.merge(subject, latency, (a, b) -> {
+            a.add(b);
+            return a;
+        }));
+        later.perSecond.forEach((subject, seconds) -> {
+            TreeMap<Long, Long> mine = perSecond.computeIfAbsent(subject, s -> new TreeMap<>());
+            seconds.forEach((second, mails) -> mine.merge(second, mails, Long::sum));
+        });
+        if (later.concurrencyHigh != null) concurrencyHigh = later.concurrencyHigh;
+        if (later.concurrencyLow != null) concurrencyLow = later.concurrencyLow;
+        errors += later.errors;
+        lines += later.lines;
+        return this;
+    }
+
+    long totalMails() {
+        long total = 0;
+        for (Latency latency : bySubject.values()) total += latency.count;
+        return total;
+    }
+}
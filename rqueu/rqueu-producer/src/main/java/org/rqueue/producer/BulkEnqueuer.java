@@ -0,0 +1,153 @@
+package org.rqueue.producer;
+
+import com.github.sonus21.rqueue.config.RqueueConfig;
+import com.github.sonus21.rqueue.converter.MessageConverterProvider;
+import com.github.sonus21.rqueue.converter.RqueueRedisSerializer;
+import com.github.sonus21.rqueue.core.EndpointRegistry;
+import com.github.sonus21.rqueue.core.RqueueMessage;
+import com.github.sonus21.rqueue.core.RqueueMessageTemplate;
+import com.github.sonus21.rqueue.core.support.RqueueMessageUtils;
+import com.github.sonus21.rqueue.listener.QueueDetail;
+import com.github.sonus21.rqueue.listener.RqueueMessageHeaders;
+import com.github.sonus21.rqueue.models.db.MessageMetadata;
+import com.github.sonus21.rqueue.models.enums.MessageStatus;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.sharedLib.EmailDTO;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Enqueues a list of emails in chunks, one Redis round-trip per chunk instead of one per message.
+ *
+ * Each chunk is converted the same way RqueueMessageEnqueuer does it, then pushed in a single
+ * pipeline: one multi-value RPUSH onto the queue list plus one SET per message for Rqueue's
+ * message metadata (what the dashboard and the listener's status tracking read). Chunks run on
+ * parallel lanes, so order is kept within a chunk but not across chunks.
+ */
+@Component
+@Slf4j
+public class BulkEnqueuer {
+
+    /** Outcome for one email, in the order it was passed in. messageId is null when conversion failed. */
+    public record EnqueueResult(int index, String messageId, boolean enqueued, String error) {
+    }
+
+    private final RqueueMessageTemplate messageTemplate;
+    private final RqueueConfig rqueueConfig;
+    private final MessageConverter converter;
+    // What Rqueue's own templates use for queue entries and metadata alike
+    private final RqueueRedisSerializer serializer = new RqueueRedisSerializer();
+    private final int chunkSize;
+    private final ExecutorService lanes;
+
+    public BulkEnqueuer(RqueueMessageTemplate messageTemplate,
+                        RqueueConfig rqueueConfig,
+                        @Value("${rqueue.message.converter.provider.class:com.github.sonus21.rqueue.converter.DefaultMessageConverterProvider}") String converterProvider,
+                        @Value("${email.producer.bulk.chunk-size:500}") int chunkSize,
+                        @Value("${email.producer.bulk.lanes:4}") int lanes) throws ClassNotFoundException {
+        this.messageTemplate = messageTemplate;
+        this.rqueueConfig = rqueueConfig;
+        // Same provider property the listener side reads, so both ends agree on the payload format
+        Class<?> providerClass = ClassUtils.forName(converterProvider, getClass().getClassLoader());
+        this.converter = ((MessageConverterProvider) BeanUtils.instantiateClass(providerClass)).getConverter();
+        this.chunkSize = Math.max(1, chunkSize);
+        this.lanes = Executors.newFixedThreadPool(Math.max(1, lanes));
+    }
+
+    /** Blocks until every chunk was pushed or failed. The queue must be registered already. */
+    public List<EnqueueResult> enqueueAll(String queueName, List<EmailDTO> emails) throws InterruptedException {
+        QueueDetail queue = EndpointRegistry.get(queueName);
+        EnqueueResult[] results = new EnqueueResult[emails.size()];
+
+        List<Future<?>> chunks = new ArrayList<>();
+        for (int from = 0; from < emails.size(); from += chunkSize) {
+            int start = from;
+            int end = Math.min(emails.size(), from + chunkSize);
+            chunks.add(lanes.submit(() -> pushChunk(queue, emails, start, end, results)));
+        }
+        for (Future<?> chunk : chunks) {
+            try {
+                chunk.get();
+            } catch (ExecutionException e) {
+                // pushChunk records its own failures, this only happens on a bug
+                log.error("Bulk enqueue chunk crashed on {}", queueName, e.getCause());
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    private void pushChunk(QueueDetail queue, List<EmailDTO> emails, int from, int to, EnqueueResult[] results) {
+        List<RqueueMessage> messages = new ArrayList<>(to - from);
+        List<Integer> indexes = new ArrayList<>(to - from);
+
+        for (int i = from; i < to; i++) {
+            try {
+                messages.add(RqueueMessageUtils.buildMessage(converter, queue.getName(), null, emails.get(i),
+                        null, null, RqueueMessageHeaders.emptyMessageHeaders()));
+                indexes.add(i);
+            } catch (RuntimeException e) {
+                results[i] = new EnqueueResult(i, null, false, e.getMessage());
+            }
+        }
+        if (messages.isEmpty()) return;
+
+        byte[] queueKey = queue.getQueueName().getBytes(StandardCharsets.UTF_8);
+        byte[][] values = new byte[messages.size()][];
+        byte[][] metadataKeys = new byte[messages.size()][];
+        byte[][] metadataValues = new byte[messages.size()][];
+        for (int m = 0; m < messages.size(); m++) {
+            values[m] = serializer.serialize(messages.get(m));
+            MessageMetadata metadata = new MessageMetadata(messages.get(m), MessageStatus.ENQUEUED);
+            metadataKeys[m] = metadata.getId().getBytes(StandardCharsets.UTF_8);
+            metadataValues[m] = serializer.serialize(metadata);
+        }
+        Expiration metadataTtl = Expiration.from(rqueueConfig.getMessageDurability(null));
+
+        List<Object> replies;
+        try {
+            replies = messageTemplate.getTemplate().executePipelined((RedisCallback<Object>) connection -> {
+                connection.listCommands().rPush(queueKey, values);
+                for (int m = 0; m < metadataKeys.length; m++) {
+                    connection.stringCommands().set(metadataKeys[m], metadataValues[m], metadataTtl, SetOption.upsert());
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // executePipelined throws if any command in the pipeline failed, the RPUSH included
+            log.error("Bulk enqueue of {} messages to {} failed", messages.size(), queue.getName(), e);
+            for (int m = 0; m < messages.size(); m++) {
+                results[indexes.get(m)] = new EnqueueResult(indexes.get(m), messages.get(m).getId(), false, e.getMessage());
+            }
+            return;
+        }
+
+        // Reply 0 is the RPUSH, then one SET reply per message. A metadata write that did not
+        // store does not lose the message, Rqueue recreates it on pickup.
+        for (int m = 0; m < messages.size(); m++) {
+            Object metadataReply = replies.get(m + 1);
+            String error = Boolean.TRUE.equals(metadataReply) ? null : "metadata not stored: " + metadataReply;
+            results[indexes.get(m)] = new EnqueueResult(indexes.get(m), messages.get(m).getId(), true, error);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        lanes.shutdownNow();
+    }
+}
@@ -0,0 +1,44 @@
+package org.rqueue.producer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.sharedLib.BodyStore;
+import org.sharedLib.EmailDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+
+/**
+ * Moves large bodies out of the message: with email.claimcheck.enabled, a body of at least
+ * email.claimcheck.threshold characters goes into the BodyStore under email.claimcheck.dir and
+ * the EmailDTO only carries its reference. Identical bodies are stored once.
+ */
+@Component
+@Slf4j
+public class ClaimCheck {
+
+    private final BodyStore store; // null = bodies always inline
+    private final int threshold;
+
+    public ClaimCheck(@Value("${email.claimcheck.enabled:false}") boolean enabled,
+                      @Value("${email.claimcheck.dir:claimcheck}") String dir,
+                      @Value("${email.claimcheck.threshold:4096}") int threshold,
+                      @Value("${email.claimcheck.segment-mb:64}") int segmentMb) {
+        this.store = enabled ? BodyStore.open(Path.of(dir), segmentMb * 1024 * 1024) : null;
+        this.threshold = threshold;
+        if (enabled) log.info("Claim check on: bodies of {}+ chars go to {}", threshold, dir);
+    }
+
+    /** Swaps a large body for its reference, in place. */
+    public EmailDTO apply(EmailDTO email) {
+        if (store != null && email.getBody() != null && email.getBody().length() >= threshold) {
+            email.setBodyRef(store.put(email.getBody()));
+            email.setBody(null);
+        }
+        return email;
+    }
+
+    public int storedBodies() {
+        return store != null ? store.storedBodies() : 0;
+    }
+}
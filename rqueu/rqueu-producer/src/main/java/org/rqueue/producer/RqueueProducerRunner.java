@@ -5,12 +5,15 @@ import com.github.sonus21.rqueue.core.RqueueMessageEnqueuer;
 import com.github.sonus21.rqueue.core.RqueueEndpointManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -24,6 +27,21 @@ public class RqueueProducerRunner implements CommandLineRunner {
     private final RqueueMessageEnqueuer rqueueEnqueuer;
     private final RqueueEndpointManager rqueueEndpointManager;
     private final ConfigurableApplicationContext context;
+    private final BulkEnqueuer bulkEnqueuer;
+    private final ClaimCheck claimCheck;
+
+    // Off by default so runs stay comparable with the one enqueue() call per message baseline
+    @Value("${email.producer.bulk.enabled:false}")
+    private boolean bulkEnabled;
+
+    // > 0: message i goes to user-(i % recipients), so recipients repeat and the consumer's digest
+    // mode has mail to merge. 0 = every message to its own recipient
+    @Value("${email.producer.recipients:0}")
+    private int recipients;
+
+    // > 0: every body is padded to this many characters, the same campaign body for all messages
+    @Value("${email.producer.body-bytes:0}")
+    private int bodyBytes;
 
     private static final String HIGH_PRIORITY_QUEUE = "high-priority-mails";
     private static final String LOW_PRIORITY_QUEUE = "low-priority-mails";
@@ -39,7 +57,7 @@ public class RqueueProducerRunner implements CommandLineRunner {
 
         executor.submit(() -> {
             try {
-                sendOneByOne(HIGH_PRIORITY_QUEUE, 1000, Subject.VIP.name());
+                send(HIGH_PRIORITY_QUEUE, 1000, Subject.VIP.name());
             } catch (Exception e) {
                 log.error("Error in High Priority", e);
             }
@@ -47,7 +65,7 @@ public class RqueueProducerRunner implements CommandLineRunner {
 
         executor.submit(() -> {
             try {
-                sendOneByOne(LOW_PRIORITY_QUEUE, 10000, Subject.STANDARD.name());
+                send(LOW_PRIORITY_QUEUE, 10000, Subject.STANDARD.name());
             } catch (Exception e) {
                 log.error("Error in Low Priority", e);
             }
@@ -61,6 +79,7 @@ public class RqueueProducerRunner implements CommandLineRunner {
             log.error("Timed out waiting for messages to send.");
         }
 
+        if (claimCheck.storedBodies() > 0) log.info("Claim check stored {} distinct bodies", claimCheck.storedBodies());
         log.info("=== WORKER FINISHED - SHUTTING DOWN ===");
 
         // This closes Redis connections and kills the app gracefully
@@ -68,22 +87,67 @@ public class RqueueProducerRunner implements CommandLineRunner {
         System.exit(0);
     }
 
+    private void send(String queueName, int count, String subject) throws InterruptedException {
+        if (bulkEnabled) sendBulk(queueName, count, subject);
+        else sendOneByOne(queueName, count, subject);
+    }
+
+    private void sendBulk(String queueName, int count, String subject) throws InterruptedException {
+        List<EmailDTO> payloads = new ArrayList<>(count);
+        String body = body();
+        for (int i = 0; i < count; i++) {
+            payloads.add(claimCheck.apply(new EmailDTO(
+                    "noreply@hitract.se",
+                    recipient(i),
+                    subject,
+                    body,
+                    new Date()
+            )));
+        }
+
+        long start = System.nanoTime();
+        List<BulkEnqueuer.EnqueueResult> results = bulkEnqueuer.enqueueAll(queueName, payloads);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        int failed = 0;
+        for (BulkEnqueuer.EnqueueResult result : results) {
+            if (result.enqueued()) continue;
+            failed++;
+            log.warn("Not enqueued: {} ({})", payloads.get(result.index()).getTo(), result.error());
+        }
+        log.info("Sent {}/{} messages to {} in {} ms", count - failed, count, queueName, elapsedMs);
+    }
+
     private void sendOneByOne(String queueName, int count, String subject) {
         Date createdAt;
+        String body = body();
 
         for (int i = 0; i < count; i++) {
             createdAt = new Date();
-            EmailDTO payload = new EmailDTO(
+            EmailDTO payload = claimCheck.apply(new EmailDTO(
                     "noreply@hitract.se",
-                    "user-" + i + "@student.com",
+                    recipient(i),
                     subject,
-                    "Please process immediately.",
+                    body,
                     createdAt
-            );
+            ));
 
             rqueueEnqueuer.enqueue(queueName, payload);
 
             if (i % 10 == 0) log.info("Sent {}/{} messages to {}", i, count, queueName);
         }
     }
-}
\ No newline at end of file
+
+    private String body() {
+        String text = "Please process immediately.";
+        if (bodyBytes <= text.length()) return text;
+        StringBuilder body = new StringBuilder(bodyBytes).append(text).append('\n');
+        while (body.length() < bodyBytes) body.append("<p>Campaign content line ").append(body.length()).append("</p>\n");
+        body.setLength(bodyBytes);
+        return body.toString();
+    }
+
+    private String recipient(int i) {
+        return "user-" + (recipients > 0 ? i % recipients : i) + "@student.com";
+    }
+}
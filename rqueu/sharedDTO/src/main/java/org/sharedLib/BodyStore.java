@@ -0,0 +1,165 @@
+package org.sharedLib;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Claim-check store for large email bodies: the body goes into a local, content-addressed store
+ * and only a reference travels through the queue.
+ *
+ * Bodies are appended to memory-mapped segment files <writer>-<n>.seg in the store directory as
+ * [32-byte SHA-256][int length][UTF-8 bytes]. A reference names the record directly,
+ * "<sha256 hex>:<segment>:<offset>:<length>", so a reader in another process needs no index: it maps
+ * the segment read-only and checks the hash. The writer keeps hash -> reference in memory (rebuilt
+ * from the existing segments on open), so identical bodies, like one campaign's HTML, are stored once.
+ * Every writing process appends to its own segments, nothing is locked across processes.
+ *
+ * Segments are never deleted here: clear the directory once nothing queued still references it.
+ */
+public final class BodyStore {
+
+    private static final int HEADER = 32 + Integer.BYTES;
+    private static final Map<Path, BodyStore> OPEN = new ConcurrentHashMap<>();
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final String writerId = Long.toString(System.currentTimeMillis(), 36) + "-" + ProcessHandle.current().pid();
+
+    // Writer side, under the lock except for lookups
+    private final Map<String, String> refsByHash = new ConcurrentHashMap<>();
+    private MappedByteBuffer segment;
+    private String segmentName;
+    private int segmentSeq = 0;
+    private int position;
+
+    // Reader side: segments mapped read-only on first use
+    private final Map<String, MappedByteBuffer> mapped = new ConcurrentHashMap<>();
+
+    private BodyStore(Path directory, int segmentBytes) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        try {
+            Files.createDirectories(directory);
+            indexExisting();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can not open body store " + directory, e);
+        }
+    }
+
+    /** One store per directory and process, shared by the producer and consumer beans that use it. */
+    public static BodyStore open(Path directory, int segmentBytes) {
+        return OPEN.computeIfAbsent(directory.toAbsolutePath().normalize(), dir -> new BodyStore(dir, segmentBytes));
+    }
+
+    /** Stores the body unless the same content already is, and returns its reference. */
+    public String put(String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        byte[] hash = SHA256.get().digest(bytes);
+        String hex = HexFormat.of().formatHex(hash);
+        String ref = refsByHash.get(hex);
+        if (ref != null) return ref;
+
+        synchronized (this) {
+            ref = refsByHash.get(hex);
+            if (ref != null) return ref;
+            int needed = HEADER + bytes.length;
+            if (segment == null || position + needed > segment.capacity()) nextSegment(needed);
+
+            // Length last: a reader scanning the segment sees either nothing or the whole record
+            segment.put(position + HEADER, bytes);
+            segment.put(position, hash);
+            segment.putInt(position + 32, bytes.length);
+            ref = hex + ":" + segmentName + ":" + position + ":" + bytes.length;
+            position += needed;
+            refsByHash.put(hex, ref);
+            return ref;
+        }
+    }
+
+    /** The body behind a reference from any writer sharing the directory. */
+    public String get(String ref) {
+        String[] parts = ref.split(":");
+        if (parts.length != 4) throw new IllegalArgumentException("Not a body reference: " + ref);
+        int offset = Integer.parseInt(parts[2]);
+        int length = Integer.parseInt(parts[3]);
+
+        MappedByteBuffer buffer = mapped.computeIfAbsent(parts[1], this::mapReadOnly);
+        byte[] bytes = new byte[length];
+        buffer.get(offset + HEADER, bytes);
+        if (!HexFormat.of().formatHex(SHA256.get().digest(bytes)).equals(parts[0])) {
+            throw new IllegalStateException("Body " + parts[0] + " in " + parts[1] + " does not match its hash");
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** The content hash a reference starts with, the same for every copy of a body. */
+    public static String hashOf(String ref) {
+        int end = ref.indexOf(':');
+        return end > 0 ? ref.substring(0, end) : ref;
+    }
+
+    public int storedBodies() {
+        return refsByHash.size();
+    }
+
+    private void nextSegment(int needed) {
+        segmentName = writerId + "-" + segmentSeq++ + ".seg";
+        // A body larger than a segment gets a segment of its own
+        int size = Math.max(segmentBytes, needed);
+        try (FileChannel channel = FileChannel.open(directory.resolve(segmentName),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can not create body segment " + segmentName, e);
+        }
+        mapped.put(segmentName, segment);
+        position = 0;
+    }
+
+    private MappedByteBuffer mapReadOnly(String name) {
+        try (FileChannel channel = FileChannel.open(directory.resolve(name), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can not map body segment " + name, e);
+        }
+    }
+
+    // Bodies other (or earlier) writers stored are reused instead of written again
+    private void indexExisting() throws IOException {
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(directory, "*.seg")) {
+            for (Path file : segments) {
+                String name = file.getFileName().toString();
+                MappedByteBuffer buffer = mapped.computeIfAbsent(name, this::mapReadOnly);
+                byte[] hash = new byte[32];
+                int pos = 0;
+                while (pos + HEADER <= buffer.capacity()) {
+                    int length = buffer.getInt(pos + 32);
+                    if (length <= 0 || pos + HEADER + length > buffer.capacity()) break;
+                    buffer.get(pos, hash);
+                    String hex = HexFormat.of().formatHex(hash);
+                    refsByHash.putIfAbsent(hex, hex + ":" + name + ":" + pos + ":" + length);
+                    pos += HEADER + length;
+                }
+            }
+        }
+    }
+}
@@ -5,6 +5,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.util.Date;
+import java.util.UUID;
 
 @Data
 @AllArgsConstructor
@@ -15,4 +16,12 @@ public class EmailDTO {
     private String subject;
     private String body;
     private Date createdAt = new Date();
+    // Stable across Rqueue retries, consumers skip ids they already delivered. Null on old messages
+    private String messageId;
+    // Claim check: the body is in the BodyStore under this reference and body is null. Null on old messages
+    private String bodyRef;
+
+    public EmailDTO(String from, String to, String subject, String body, Date createdAt) {
+        this(from, to, subject, body, createdAt, UUID.randomUUID().toString(), null);
+    }
 }
\ No newline at end of file
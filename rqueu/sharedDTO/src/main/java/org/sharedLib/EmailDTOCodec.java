@@ -0,0 +1,214 @@
+package org.sharedLib;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4Exception;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Versioned binary layout for EmailDTO:
+ *
+ *   [MAGIC][VERSION][FLAGS] then repeated [tag][varint length][bytes]
+ *
+ * Every field is tagged and length-prefixed, null fields are left out, and a reader skips tags it
+ * does not know, so fields can be added without bumping VERSION. createdAt is 8 bytes of epoch
+ * millis. With FLAG_LZ4 the fields are one LZ4 block instead, preceded by their varint raw length;
+ * the encoder only sets it when the fields are at least compressThreshold bytes and it saves space.
+ */
+public final class EmailDTOCodec {
+
+    public static final byte MAGIC = (byte) 0xE8;
+    public static final byte VERSION = 1;
+
+    static final byte FLAG_LZ4 = 1;
+
+    // Field tags, never reuse a number
+    static final byte TAG_FROM = 1;
+    static final byte TAG_TO = 2;
+    static final byte TAG_SUBJECT = 3;
+    static final byte TAG_BODY = 4;
+    static final byte TAG_CREATED_AT = 5;
+    static final byte TAG_MESSAGE_ID = 6;
+    static final byte TAG_BODY_REF = 7;
+
+    // Largest LZ4 raw length decode accepts; bigger field blocks are sent uncompressed
+    static final int MAX_RAW_LENGTH = 16 * 1024 * 1024;
+
+    private static final LZ4Factory LZ4 = LZ4Factory.fastestInstance();
+
+    private EmailDTOCodec() { }
+
+    public static boolean isBinary(byte[] data) {
+        return data != null && data.length >= 3 && data[0] == MAGIC;
+    }
+
+    /** compressThreshold <= 0: never compress. */
+    public static byte[] encode(EmailDTO email, int compressThreshold) {
+        byte[] from = utf8(email.getFrom());
+        byte[] to = utf8(email.getTo());
+        byte[] subject = utf8(email.getSubject());
+        byte[] body = utf8(email.getBody());
+        byte[] messageId = utf8(email.getMessageId());
+        byte[] bodyRef = utf8(email.getBodyRef());
+
+        int size = fieldSize(from) + fieldSize(to) + fieldSize(subject) + fieldSize(body)
+                + (email.getCreatedAt() != null ? 2 + Long.BYTES : 0)
+                + fieldSize(messageId) + fieldSize(bodyRef);
+
+        byte[] fields = new byte[size];
+        int pos = 0;
+        pos = writeField(fields, pos, TAG_FROM, from);
+        pos = writeField(fields, pos, TAG_TO, to);
+        pos = writeField(fields, pos, TAG_SUBJECT, subject);
+        pos = writeField(fields, pos, TAG_BODY, body);
+        if (email.getCreatedAt() != null) {
+            fields[pos++] = TAG_CREATED_AT;
+            fields[pos++] = Long.BYTES;
+            writeLong(fields, pos, email.getCreatedAt().getTime());
+            pos += Long.BYTES;
+        }
+        pos = writeField(fields, pos, TAG_MESSAGE_ID, messageId);
+        writeField(fields, pos, TAG_BODY_REF, bodyRef);
+
+        if (compressThreshold > 0 && size >= compressThreshold && size <= MAX_RAW_LENGTH) {
+            LZ4Compressor compressor = LZ4.fastCompressor();
+            int header = 3 + varintSize(size);
+            byte[] out = new byte[header + compressor.maxCompressedLength(size)];
+            int compressed = compressor.compress(fields, 0, size, out, header);
+            if (header + compressed < 3 + size) {
+                out[0] = MAGIC;
+                out[1] = VERSION;
+                out[2] = FLAG_LZ4;
+                writeVarint(out, 3, size);
+                return Arrays.copyOf(out, header + compressed);
+            }
+        }
+
+        byte[] out = new byte[3 + size];
+        out[0] = MAGIC;
+        out[1] = VERSION;
+        System.arraycopy(fields, 0, out, 3, size);
+        return out;
+    }
+
+    /** Throws IllegalArgumentException for anything that is not a well-formed EmailDTO, truncated or corrupt input included. */
+    public static EmailDTO decode(byte[] data) {
+        if (!isBinary(data)) throw new IllegalArgumentException("Not a binary EmailDTO");
+        if (data[1] > VERSION) throw new IllegalArgumentException("Unsupported EmailDTO version " + data[1]);
+
+        byte[] fields = data;
+        int[] pos = {3};
+        int end = data.length;
+        if ((data[2] & FLAG_LZ4) != 0) {
+            int rawLength = readVarint(data, pos, end);
+            int compressed = end - pos[0];
+            // LZ4 expands at most ~255x, anything beyond that (or the cap) is a corrupt length, not a big mail
+            if (rawLength > MAX_RAW_LENGTH || rawLength > 255L * compressed) {
+                throw new IllegalArgumentException("Bad EmailDTO raw length " + rawLength);
+            }
+            fields = new byte[rawLength];
+            try {
+                int written = LZ4.safeDecompressor().decompress(data, pos[0], compressed, fields, 0, rawLength);
+                if (written != rawLength) throw new IllegalArgumentException("Truncated EmailDTO");
+            } catch (LZ4Exception e) {
+                throw new IllegalArgumentException("Corrupt EmailDTO", e);
+            }
+            pos[0] = 0;
+            end = rawLength;
+        }
+
+        EmailDTO email = new EmailDTO();
+        email.setCreatedAt(null);
+        while (pos[0] < end) {
+            byte tag = fields[pos[0]++];
+            int len = readVarint(fields, pos, end);
+            int at = pos[0];
+            if (len > end - at) throw new IllegalArgumentException("Truncated EmailDTO");
+
+            switch (tag) {
+                case TAG_FROM -> email.setFrom(string(fields, at, len));
+                case TAG_TO -> email.setTo(string(fields, at, len));
+                case TAG_SUBJECT -> email.setSubject(string(fields, at, len));
+                case TAG_BODY -> email.setBody(string(fields, at, len));
+                case TAG_CREATED_AT -> {
+                    if (len != Long.BYTES) throw new IllegalArgumentException("Bad EmailDTO createdAt length " + len);
+                    email.setCreatedAt(new Date(readLong(fields, at)));
+                }
+                case TAG_MESSAGE_ID -> email.setMessageId(string(fields, at, len));
+                case TAG_BODY_REF -> email.setBodyRef(new String(fields, at, len, StandardCharsets.US_ASCII));
+                default -> { } // newer field, skip it
+            }
+            pos[0] = at + len;
+        }
+        return email;
+    }
+
+    // --- HELPERS ---
+
+    // Unsigned LEB128 int, advances pos[0]; at most 5 bytes and never past end
+    private static int readVarint(byte[] data, int[] pos, int end) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (pos[0] >= end) throw new IllegalArgumentException("Truncated EmailDTO");
+            byte b = data[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                if (value < 0) throw new IllegalArgumentException("Bad EmailDTO length");
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Bad EmailDTO varint");
+    }
+
+    private static String string(byte[] data, int pos, int len) {
+        return new String(data, pos, len, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Null fields are not written at all
+    private static int fieldSize(byte[] value) {
+        return value == null ? 0 : 1 + varintSize(value.length) + value.length;
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) size++;
+        return size;
+    }
+
+    private static int writeField(byte[] out, int pos, byte tag, byte[] value) {
+        if (value == null) return pos;
+        out[pos++] = tag;
+        pos = writeVarint(out, pos, value.length);
+        System.arraycopy(value, 0, out, pos, value.length);
+        return pos + value.length;
+    }
+
+    private static int writeVarint(byte[] out, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            out[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[pos++] = (byte) value;
+        return pos;
+    }
+
+    private static void writeLong(byte[] out, int pos, long value) {
+        for (int i = 7; i >= 0; i--) {
+            out[pos + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static long readLong(byte[] data, int pos) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) value = (value << 8) | (data[pos + i] & 0xFF);
+        return value;
+    }
+}
@@ -0,0 +1,47 @@
+package org.sharedLib;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.Base64;
+
+/**
+ * Rqueue converter for EmailDTO in EmailDTOCodec's binary layout instead of Jackson JSON.
+ *
+ * Rqueue keeps the payload as a String inside its own JSON envelope, so the bytes go in as Base64:
+ * raw bytes would be mangled by the String conversion or blown up by JSON escaping. Anything that
+ * is not an EmailDTO, and payloads that are JSON (enqueued before the switch), return null so the
+ * next converter in EmailDTOMessageConverterProvider's chain handles them.
+ */
+public class EmailDTOMessageConverter implements MessageConverter {
+
+    private final int compressThreshold;
+
+    public EmailDTOMessageConverter(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    @Override
+    public Message<?> toMessage(Object payload, MessageHeaders headers) {
+        if (!(payload instanceof EmailDTO email)) return null;
+        String encoded = Base64.getEncoder().encodeToString(EmailDTOCodec.encode(email, compressThreshold));
+        return headers != null ? MessageBuilder.createMessage(encoded, headers) : new GenericMessage<>(encoded);
+    }
+
+    @Override
+    public Object fromMessage(Message<?> message, Class<?> targetClass) {
+        if (targetClass != null && !targetClass.isAssignableFrom(EmailDTO.class)) return null;
+        if (!(message.getPayload() instanceof String payload) || payload.isEmpty() || payload.charAt(0) == '{') {
+            return null;
+        }
+        try {
+            byte[] data = Base64.getDecoder().decode(payload);
+            return EmailDTOCodec.isBinary(data) ? EmailDTOCodec.decode(data) : null;
+        } catch (IllegalArgumentException e) {
+            return null; // not Base64, or a truncated/corrupt EmailDTO: decode reports both this way
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package org.sharedLib;
+
+import com.github.sonus21.rqueue.converter.DefaultMessageConverterProvider;
+import com.github.sonus21.rqueue.converter.MessageConverterProvider;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+
+import java.util.List;
+
+/**
+ * Set rqueue.message.converter.provider.class=org.sharedLib.EmailDTOMessageConverterProvider on the
+ * producer and the consumer to store EmailDTO in binary. Other payloads and messages still in
+ * Redis as JSON go through Rqueue's default converter.
+ *
+ * Rqueue instantiates providers by class name, so the LZ4 threshold is a JVM property:
+ * -Demail.converter.lz4-threshold=N compresses payloads of N+ bytes, 0 turns compression off.
+ */
+public class EmailDTOMessageConverterProvider implements MessageConverterProvider {
+
+    public static final String LZ4_THRESHOLD_PROPERTY = "email.converter.lz4-threshold";
+
+    @Override
+    public MessageConverter getConverter() {
+        int threshold = Integer.getInteger(LZ4_THRESHOLD_PROPERTY, 1024);
+        return new CompositeMessageConverter(List.of(
+                new EmailDTOMessageConverter(threshold),
+                new DefaultMessageConverterProvider().getConverter()));
+    }
+}
@@ -0,0 +1,100 @@
+package org.sharedLib;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EmailDTOCodecTest {
+
+    @Test
+    void roundTripUncompressed() {
+        EmailDTO email = email("Body content here...");
+        byte[] data = EmailDTOCodec.encode(email, 0);
+
+        assertEquals(0, data[2]);
+        assertEquals(email, EmailDTOCodec.decode(data));
+    }
+
+    @Test
+    void roundTripWithLz4() {
+        EmailDTO email = email("<p>Campaign body</p>".repeat(200));
+        byte[] data = EmailDTOCodec.encode(email, 64);
+
+        assertEquals(EmailDTOCodec.FLAG_LZ4, data[2]);
+        assertEquals(email, EmailDTOCodec.decode(data));
+    }
+
+    @Test
+    void unknownTagIsSkipped() {
+        EmailDTO email = email("Body content here...");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(EmailDTOCodec.encode(email, 0));
+        out.write(99); // a field from a newer producer
+        out.write(3);
+        out.writeBytes("new".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(email, EmailDTOCodec.decode(out.toByteArray()));
+    }
+
+    @Test
+    void truncatedFieldIsRejected() {
+        String body = "x".repeat(100);
+        byte[] data = EmailDTOCodec.encode(email(body), 0);
+        int bodyStart = indexOf(data, body.getBytes(StandardCharsets.UTF_8));
+
+        byte[] truncated = Arrays.copyOf(data, bodyStart + 10);
+        assertThrows(IllegalArgumentException.class, () -> EmailDTOCodec.decode(truncated));
+    }
+
+    @Test
+    void truncatedVarintIsRejected() {
+        // TAG_TO, then a length byte that says more follow
+        byte[] data = {EmailDTOCodec.MAGIC, EmailDTOCodec.VERSION, 0, EmailDTOCodec.TAG_TO, (byte) 0x80};
+        assertThrows(IllegalArgumentException.class, () -> EmailDTOCodec.decode(data));
+
+        byte[] endless = {EmailDTOCodec.MAGIC, EmailDTOCodec.VERSION, 0, EmailDTOCodec.TAG_TO,
+                (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 1};
+        assertThrows(IllegalArgumentException.class, () -> EmailDTOCodec.decode(endless));
+    }
+
+    @Test
+    void truncatedLz4BlockIsRejected() {
+        byte[] data = EmailDTOCodec.encode(email("<p>Campaign body</p>".repeat(200)), 64);
+        for (int length = 3; length < data.length; length++) {
+            byte[] truncated = Arrays.copyOf(data, length);
+            assertThrows(IllegalArgumentException.class, () -> EmailDTOCodec.decode(truncated), "length " + length);
+        }
+    }
+
+    @Test
+    void lz4RawLengthIsCapped() {
+        // Claims 2 GB of fields behind a few compressed bytes, must not be allocated
+        byte[] data = {EmailDTOCodec.MAGIC, EmailDTOCodec.VERSION, EmailDTOCodec.FLAG_LZ4,
+                (byte) 0xFE, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 0x10, 'a'};
+        assertThrows(IllegalArgumentException.class, () -> EmailDTOCodec.decode(data));
+    }
+
+    @Test
+    void createdAtMustBeEightBytes() {
+        byte[] data = {EmailDTOCodec.MAGIC, EmailDTOCodec.VERSION, 0, EmailDTOCodec.TAG_CREATED_AT, 4, 0, 0, 0, 1};
+        assertThrows(IllegalArgumentException.class, () -> EmailDTOCodec.decode(data));
+    }
+
+    static EmailDTO email(String body) {
+        return new EmailDTO("sender@example.com", "user-1@standard.com", "Standard Update #1", body,
+                new Date(1_700_000_000_123L), "msg-1", null);
+    }
+
+    private static int indexOf(byte[] data, byte[] part) {
+        for (int i = 0; i + part.length <= data.length; i++) {
+            if (Arrays.equals(data, i, i + part.length, part, 0, part.length)) return i;
+        }
+        throw new AssertionError("not found");
+    }
+}
@@ -0,0 +1,38 @@
+package org.sharedLib;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.GenericMessage;
+
+import java.util.Arrays;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class EmailDTOMessageConverterTest {
+
+    private final EmailDTOMessageConverter converter = new EmailDTOMessageConverter(64);
+
+    @Test
+    void roundTrip() {
+        EmailDTO email = EmailDTOCodecTest.email("<p>Campaign body</p>".repeat(200));
+        Message<?> message = converter.toMessage(email, null);
+
+        assertEquals(email, converter.fromMessage(message, EmailDTO.class));
+    }
+
+    @Test
+    void jsonPayloadFallsThroughToTheNextConverter() {
+        String json = "{\"from\":\"sender@example.com\",\"to\":\"user-1@standard.com\",\"subject\":\"Hi\"}";
+        assertNull(converter.fromMessage(new GenericMessage<>(json), EmailDTO.class));
+    }
+
+    @Test
+    void corruptBinaryPayloadIsNotDecoded() {
+        byte[] data = EmailDTOCodec.encode(EmailDTOCodecTest.email("Body content here..."), 0);
+        String truncated = Base64.getEncoder().encodeToString(Arrays.copyOf(data, data.length - 5));
+
+        assertNull(converter.fromMessage(new GenericMessage<>(truncated), EmailDTO.class));
+    }
+}